@@ -0,0 +1,30 @@
+package org.est.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试入口：在 JMH 命令行参数前补上默认选项后交给 JMH。
+ * <p>
+ * 默认输出 JSON 结果到 jmh-result.json，便于比较两次运行；默认开启 -prof gc 报告每次操作的分配字节数。
+ * 命令行中显式给出 -rf / -rff / -prof 时以命令行为准。
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(0, List.of("-rf", "json"));
+        }
+        if (!options.contains("-rff")) {
+            options.addAll(0, List.of("-rff", "jmh-result.json"));
+        }
+        if (!options.contains("-prof")) {
+            options.addAll(0, List.of("-prof", "gc"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
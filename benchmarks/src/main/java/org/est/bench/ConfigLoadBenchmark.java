@@ -0,0 +1,53 @@
+package org.est.bench;
+
+import org.est.config.AppConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AppConfig.load 读取随程序发布的配置模板（注释较多，接近用户实际使用的配置文件）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigLoadBenchmark {
+    private Path configPath;
+
+    @Setup
+    public void setUp() throws Exception {
+        configPath = Files.createTempFile("bench-config", ".yaml");
+        try (InputStream template = AppConfig.class.getClassLoader().getResourceAsStream("config.yaml")) {
+            if (template == null) {
+                throw new IllegalStateException("找不到配置模板 config.yaml");
+            }
+            Files.write(configPath, template.readAllBytes());
+        }
+    }
+
+    @Benchmark
+    public AppConfig load() {
+        return AppConfig.load(configPath);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(configPath);
+    }
+}
@@ -0,0 +1,67 @@
+package org.est.bench;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.est.ConditionalPatternEncoder;
+import org.est.ConditionalPatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConditionalPatternLayout.doLayout 与 ConditionalPatternEncoder.encode：INFO 使用简化格式，DEBUG 使用详细格式，
+ * 消息与转发器的“客户端连接”日志相同
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+    private ConditionalPatternLayout layout;
+    private ConditionalPatternEncoder encoder;
+    private LoggingEvent info;
+    private LoggingEvent debug;
+
+    @Setup
+    public void setUp() {
+        LoggerContext context = new LoggerContext();
+        layout = new ConditionalPatternLayout();
+        layout.setContext(context);
+        layout.start();
+        encoder = new ConditionalPatternEncoder();
+        encoder.setContext(context);
+        encoder.start();
+        Logger logger = context.getLogger("org.est.forward.Forwarder");
+        Object[] args = {"192.168.1.20", 53124, "mc.example.com", 25565};
+        info = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "客户端连接: {}:{} -> {}:{}", null, args);
+        debug = new LoggingEvent(Logger.class.getName(), logger, Level.DEBUG, "客户端连接: {}:{} -> {}:{}", null, args);
+    }
+
+    @Benchmark
+    public String layoutInfo() {
+        return layout.doLayout(info);
+    }
+
+    @Benchmark
+    public String layoutDebug() {
+        return layout.doLayout(debug);
+    }
+
+    @Benchmark
+    public byte[] encodeInfo() {
+        return encoder.encode(info);
+    }
+}
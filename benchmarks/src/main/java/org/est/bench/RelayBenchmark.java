@@ -0,0 +1,143 @@
+package org.est.bench;
+
+import org.est.config.AppConfig;
+import org.est.forward.Forwarder;
+import org.est.net.IpWhitelist;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经 Forwarder 转发到本机回环 echo 服务器的往返：每次操作在一个会话上写出 payload 字节并读回。
+ * <p>
+ * sessions 个会话同时保持连接，操作依次轮转使用，用于观察大量会话下转发引擎的开销。
+ * Throughput 模式下 ops/s 乘以 payload 即为每个方向的吞吐；SampleTime 模式给出往返延迟的分位数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelayBenchmark {
+    @Param({"classic", "nio"})
+    public String engine;
+
+    @Param({"1", "100", "1000"})
+    public int sessions;
+
+    @Param({"64", "65536"})
+    public int payload;
+
+    private ServerSocket echoServer;
+    private ExecutorService echoExecutor;
+    private Forwarder forwarder;
+    private Socket[] clients;
+    private OutputStream[] outputs;
+    private InputStream[] inputs;
+    private byte[] data;
+    private byte[] received;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        echoServer = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        echoExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        echoExecutor.submit(this::echoLoop);
+
+        int listenPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            listenPort = probe.getLocalPort();
+        }
+        AppConfig.Remote remote = new AppConfig.Remote("127.0.0.1", echoServer.getLocalPort());
+        forwarder = new Forwarder(remote, new AppConfig.Local(listenPort, engine, 2),
+                IpWhitelist.from(Collections.emptyList()));
+        forwarder.start();
+
+        data = new byte[payload];
+        received = new byte[payload];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        clients = new Socket[sessions];
+        outputs = new OutputStream[sessions];
+        inputs = new InputStream[sessions];
+        for (int i = 0; i < sessions; i++) {
+            clients[i] = new Socket(InetAddress.getLoopbackAddress(), listenPort);
+            clients[i].setTcpNoDelay(true);
+            outputs[i] = clients[i].getOutputStream();
+            inputs[i] = clients[i].getInputStream();
+            // 先完成一次往返，确保会话已经连到远程
+            roundTrip(i);
+        }
+    }
+
+    private void echoLoop() {
+        while (!echoServer.isClosed()) {
+            try {
+                Socket socket = echoServer.accept();
+                socket.setTcpNoDelay(true);
+                echoExecutor.submit(() -> {
+                    try (Socket s = socket) {
+                        s.getInputStream().transferTo(s.getOutputStream());
+                    } catch (IOException ignored) {
+                    }
+                });
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        int session = next;
+        next = session + 1 == sessions ? 0 : session + 1;
+        return roundTrip(session);
+    }
+
+    private int roundTrip(int session) throws IOException {
+        outputs[session].write(data);
+        int read = 0;
+        while (read < payload) {
+            int n = inputs[session].read(received, read, payload - read);
+            if (n < 0) {
+                throw new IOException("会话 " + session + " 已被关闭");
+            }
+            read += n;
+        }
+        return received[payload - 1];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (Socket client : clients) {
+            if (client != null) {
+                client.close();
+            }
+        }
+        forwarder.close();
+        echoServer.close();
+        echoExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,110 @@
+package org.est.bench;
+
+import org.est.config.AppConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷启动耗时：启动一个新的 JVM 运行 org.est.Main，计时到输出 "TCP转发已启动" 为止。
+ * <p>
+ * config=subset 使用随程序发布的配置模板（由内置的简单解析器读取）；
+ * config=snakeyaml 在模板末尾加一行流式写法，迫使配置改由 SnakeYAML 解析，用于对比。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    private static final String READY = "TCP转发已启动";
+
+    @Param({"subset", "snakeyaml"})
+    public String config;
+
+    private Path directory;
+    private Path configPath;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("bench-startup");
+        configPath = directory.resolve("config.yaml");
+        String template;
+        try (InputStream in = AppConfig.class.getClassLoader().getResourceAsStream("config.yaml")) {
+            if (in == null) {
+                throw new IllegalStateException("找不到配置模板 config.yaml");
+            }
+            template = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String text = template.replace("listenPort: 9099", "listenPort: " + freePort())
+                .replace("broadcastAddress: 255.255.255.255", "broadcastAddress: 127.0.0.1");
+        if ("snakeyaml".equals(config)) {
+            text += "\nbenchmarkFlowStyle: []\n";
+        }
+        Files.writeString(configPath, text, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void launchUntilListening() throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "org.est.Main",
+                configPath.toString())
+                .redirectErrorStream(true)
+                .start();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.contains(READY)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("进程退出前没有输出 " + READY + "，退出码 " + process.waitFor());
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopProcess() throws InterruptedException {
+        if (process != null) {
+            process.destroyForcibly();
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path path : List.of(configPath, directory)) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
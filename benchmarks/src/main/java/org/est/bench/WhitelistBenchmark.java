@@ -0,0 +1,84 @@
+package org.est.bench;
+
+import org.est.net.IpWhitelist;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IpWhitelist.isAllowed：几条规则的普通白名单，以及十万条规则的大名单。
+ * 查询地址在启动时随机生成，约一半命中规则。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhitelistBenchmark {
+    private static final int LOOKUPS = 4096;
+
+    @Param({"8", "100000"})
+    public int entries;
+
+    private IpWhitelist whitelist;
+    private InetAddress[] addresses;
+    private int[] ipv4;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        List<String> ranges = new ArrayList<>(entries);
+        int[] networks = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            int prefix = 16 + random.nextInt(13);
+            int network = random.nextInt() & (-1 << (32 - prefix));
+            networks[i] = network;
+            ranges.add(toAddress(network) + "/" + prefix);
+        }
+        whitelist = IpWhitelist.from(ranges);
+
+        addresses = new InetAddress[LOOKUPS];
+        ipv4 = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int ip = random.nextBoolean() ? networks[random.nextInt(entries)] | random.nextInt(16) : random.nextInt();
+            ipv4[i] = ip;
+            addresses[i] = InetAddress.getByName(toAddress(ip));
+        }
+    }
+
+    private static String toAddress(int ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (index + 1) & (LOOKUPS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public boolean isAllowedAddress() {
+        return whitelist.isAllowed(addresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean isAllowedInt() {
+        return whitelist.isAllowed(ipv4[nextIndex()]);
+    }
+}
@@ -0,0 +1,14 @@
+package org.est.forward;
+
+/**
+ * 基准测试用的远程服务器状态（ServerStatus 的构造只对转发包可见）
+ */
+public final class StatusFixtures {
+    private StatusFixtures() {
+    }
+
+    public static ServerStatus sample() {
+        return ServerStatus.parse("{\"version\":{\"name\":\"Velocity 1.21.10\",\"protocol\":773},"
+                + "\"players\":{\"max\":200,\"online\":37},\"description\":{\"text\":\"A Minecraft Server\"}}");
+    }
+}
@@ -0,0 +1,50 @@
+package org.est.lan;
+
+import org.est.forward.ServerStatus;
+import org.est.forward.StatusFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LAN 广播数据包的生成：固定 MOTD，以及带 {online}/{max}/{version} 占位符的 MOTD。
+ * 放在 org.est.lan 包中以便调用包内可见的 LanAnnouncer.render。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanPayloadBenchmark {
+    private LanAnnouncer.Announcement plain;
+    private LanAnnouncer.Announcement placeholders;
+    private ServerStatus status;
+
+    @Setup
+    public void setUp() {
+        status = StatusFixtures.sample();
+        plain = new LanAnnouncer.Announcement("&a远程Velocity代理", 25570, () -> status);
+        placeholders = new LanAnnouncer.Announcement("&a远程服务器 &7{online}/{max} &8{version}", 25570, () -> status);
+    }
+
+    @Benchmark
+    public ByteBuffer renderPlain() {
+        return LanAnnouncer.render(plain, status);
+    }
+
+    @Benchmark
+    public ByteBuffer renderPlaceholders() {
+        return LanAnnouncer.render(placeholders, status);
+    }
+}
@@ -0,0 +1,110 @@
+package org.est;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * 使用 {@link ConditionalPatternLayout} 格式的编码器：格式化到线程复用的 StringBuilder 后直接编码为字节，
+ * 不经过中间的 String。
+ * <p>
+ * logback 的 Encoder 接口要求返回 byte[]，因此每条日志仍会分配一次与输出等长的数组，
+ * 其余的字符与字节缓冲区都按线程复用。
+ */
+public class ConditionalPatternEncoder extends EncoderBase<ILoggingEvent> {
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 16384;
+
+    private final ConditionalPatternLayout layout = new ConditionalPatternLayout();
+    private Charset charset = Charset.defaultCharset();
+    private ThreadLocal<Buffers> buffers;
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public void start() {
+        layout.setContext(getContext());
+        layout.start();
+        Charset resolved = charset;
+        buffers = ThreadLocal.withInitial(() -> new Buffers(resolved));
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        layout.stop();
+        super.stop();
+    }
+
+    @Override
+    public byte[] headerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        StringBuilder text = ConditionalPatternLayout.buffer();
+        layout.appendTo(text, event);
+        Buffers local = buffers.get();
+        return local.encode(text);
+    }
+
+    /**
+     * 每个线程的编码状态
+     */
+    private static final class Buffers {
+        private final CharsetEncoder encoder;
+        private char[] chars = new char[INITIAL_CAPACITY];
+        private CharBuffer charView = CharBuffer.wrap(chars);
+        private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_CAPACITY * 2);
+
+        Buffers(Charset charset) {
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        byte[] encode(StringBuilder text) {
+            int length = text.length();
+            if (length > chars.length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                charView = CharBuffer.wrap(chars);
+            }
+            text.getChars(0, length, chars, 0);
+            charView.clear().limit(length);
+            int estimate = (int) Math.ceil(length * (double) encoder.maxBytesPerChar());
+            if (estimate > bytes.capacity()) {
+                bytes = ByteBuffer.allocate(estimate);
+            }
+            bytes.clear();
+            encoder.reset();
+            // 容量按最大字节数估算，一次即可编码完成
+            encoder.encode(charView, bytes, true);
+            encoder.flush(bytes);
+            byte[] result = Arrays.copyOf(bytes.array(), bytes.position());
+            if (chars.length > MAX_RETAINED_CAPACITY) {
+                chars = new char[INITIAL_CAPACITY];
+                charView = CharBuffer.wrap(chars);
+                bytes = ByteBuffer.allocate(INITIAL_CAPACITY * 2);
+            }
+            return result;
+        }
+    }
+}
@@ -1,43 +1,86 @@
 package org.est;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.pattern.PatternLayoutEncoderBase;
 
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * INFO 及以上级别输出 [HH:mm:ss LEVEL] 内容，DEBUG 及以下输出 时间戳 [线程名] LEVEL 类名 - 内容。
+ * <p>
+ * 每条日志都经过这里，连接风暴时每秒可能有上万条，因此不使用 String.format 和 SimpleDateFormat：
+ * HH:mm:ss 按秒缓存，内容追加到每个线程复用的 StringBuilder 中。
+ */
 public class ConditionalPatternLayout extends PatternLayout {
-    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int INITIAL_CAPACITY = 256;
+    /** 超过这个容量的缓冲区（异常长的消息）用完后不保留 */
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+    private volatile CachedTime cachedTime = new CachedTime(Long.MIN_VALUE, "");
+
     @Override
     public String doLayout(ILoggingEvent event) {
-        // 根据日志级别选择不同的格式
-        if (event.getLevel().isGreaterOrEqual(ch.qos.logback.classic.Level.INFO)) {
+        StringBuilder out = buffer();
+        appendTo(out, event);
+        return out.toString();
+    }
+
+    /**
+     * 当前线程复用的缓冲区，已清空
+     */
+    static StringBuilder buffer() {
+        StringBuilder out = BUFFER.get();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(INITIAL_CAPACITY);
+            BUFFER.set(out);
+        }
+        out.setLength(0);
+        return out;
+    }
+
+    /**
+     * 把一条日志按格式追加到 out，结果与 doLayout 相同
+     */
+    void appendTo(StringBuilder out, ILoggingEvent event) {
+        Level level = event.getLevel();
+        if (level.isGreaterOrEqual(Level.INFO)) {
             // INFO、WARN、ERROR级别使用简化格式：[HH:mm:ss INFO] 内容
-            return String.format("[%s %s] %s%n", 
-                formatTime(event.getTimeStamp()),
-                event.getLevel(),
-                event.getFormattedMessage());
+            out.append('[').append(formatTime(event.getTimeStamp())).append(' ').append(level.levelStr)
+                    .append("] ").append(event.getFormattedMessage()).append(LINE_SEPARATOR);
         } else {
-            // DEBUG级别使用详细格式：时间戳[线程名]DEBUG类名 - 内容
-            return String.format("%d [%s] %s %s - %s%n",
-                event.getTimeStamp(),
-                event.getThreadName(),
-                event.getLevel(),
-                event.getLoggerName(),
-                event.getFormattedMessage());
+            // DEBUG级别使用详细格式：时间戳 [线程名] DEBUG 类名 - 内容
+            out.append(event.getTimeStamp()).append(" [").append(event.getThreadName()).append("] ")
+                    .append(level.levelStr).append(' ').append(event.getLoggerName()).append(" - ")
+                    .append(event.getFormattedMessage()).append(LINE_SEPARATOR);
         }
     }
-    
+
+    /**
+     * 将时间戳转换为 HH:mm:ss 格式（系统默认时区），同一秒内的日志复用同一个字符串
+     */
     private String formatTime(long timestamp) {
-        // 将时间戳转换为 HH:mm:ss 格式
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("HH:mm:ss");
-        return sdf.format(new java.util.Date(timestamp));
-    }
-    
-    private String formatTimestamp(long timestamp) {
-        // 将时间戳转换为可读格式：yyyy-MM-dd HH:mm:ss.SSS
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        return sdf.format(new java.util.Date(timestamp));
+        long second = Math.floorDiv(timestamp, 1000L);
+        CachedTime cached = cachedTime;
+        if (cached.second == second) {
+            return cached.text;
+        }
+        LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+        char[] text = {
+                (char) ('0' + time.getHour() / 10), (char) ('0' + time.getHour() % 10), ':',
+                (char) ('0' + time.getMinute() / 10), (char) ('0' + time.getMinute() % 10), ':',
+                (char) ('0' + time.getSecond() / 10), (char) ('0' + time.getSecond() % 10)
+        };
+        cached = new CachedTime(second, new String(text));
+        cachedTime = cached;
+        return cached.text;
     }
-    
+
     // 重写start方法以确保正确初始化
     @Override
     public void start() {
@@ -48,4 +91,14 @@ public class ConditionalPatternLayout extends PatternLayout {
         }
         super.start();
     }
+
+    private static final class CachedTime {
+        private final long second;
+        private final String text;
+
+        CachedTime(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
 }
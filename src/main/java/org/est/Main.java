@@ -1,45 +1,116 @@
 package org.est;
 
 import org.est.config.AppConfig;
+import org.est.config.ConfigWatcher;
 import org.est.forward.Forwarder;
+import org.est.forward.RelayEngine;
+import org.est.forward.ServerStatus;
 import org.est.lan.LanAnnouncer;
+import org.est.metrics.MetricRegistry;
+import org.est.metrics.MetricsServer;
+import org.est.net.CachedResolver;
+import org.est.net.ConnectionLimiter;
 import org.est.net.IpWhitelist;
+import org.est.tunnel.TunnelClient;
+import org.est.tunnel.TunnelServer;
+import org.est.util.HandoffControl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public final class Main {
     
     public static void main(String[] args) throws Exception {
         configureLoggingDefaults();
-        AppConfig config = loadConfig(args);
+        Path configPath = findConfig(args);
+        AppConfig config = AppConfig.load(configPath);
         applyLogLevel(config.logging().level());
         Logger logger = LoggerFactory.getLogger(Main.class);
         
-        IpWhitelist whitelist = IpWhitelist.from(config.security().whitelist());
+        CachedResolver.configure(config.local());
+        if (config.tunnel().server()) {
+            runTunnelServer(logger, config);
+            return;
+        }
+        List<AppConfig> listeners = config.listeners();
+        checkDistinctPorts(listeners);
         printStartupHints(logger, config);
 
-        try (Forwarder forwarder = new Forwarder(config.remote(), config.local(), whitelist);
-             LanAnnouncer announcer = new LanAnnouncer(config.lan(), config.local())) {
+        // 所有监听端口共用一套线程池和 nio 事件循环，按顶层 local 配置创建
+        RelayEngine engine = new RelayEngine(config.local());
+        TunnelClient tunnel = config.tunnel().client() ? new TunnelClient(config.tunnel(), config.credentials()) : null;
+        if (tunnel != null) {
+            // 先建立隧道再创建转发器，转发器据此不再创建直连远程服务器的连接池和状态缓存
+            tunnel.start();
+            engine.setTunnel(tunnel);
+        }
+        int primaryPort = config.local().listenPort();
+        List<Forwarder> forwarders = new ArrayList<>();
+        List<Supplier<ServerStatus>> statuses = new ArrayList<>();
+        for (AppConfig listener : listeners) {
+            Forwarder forwarder = new Forwarder(listener.remote(), listener.routes(), listener.local(),
+                    IpWhitelist.from(listener.security()), ConnectionLimiter.from(listener.security()), engine);
+            forwarder.setHandoffPort(primaryPort);
+            forwarders.add(forwarder);
+            statuses.add(forwarder::status);
+        }
+
+        try (LanAnnouncer announcer = new LanAnnouncer(listeners, statuses);
+             MetricsServer metricsServer = new MetricsServer(config.metrics(), MetricRegistry.shared());
+             ConfigWatcher watcher = new ConfigWatcher(configPath, config,
+                     (previous, updated) -> applyReload(logger, previous, updated, forwarders, announcer))) {
             logger.info("正在启动 TCP 转发器...");
-            forwarder.start();
-            logger.info("TCP 转发器已启动，监听端口 {}。", config.local().listenPort());
+            for (Forwarder forwarder : forwarders) {
+                forwarder.start();
+            }
+            if (config.local().handoff()) {
+                // 所有端口都已绑定（与旧实例同时监听），再让旧实例停止接受连接
+                HandoffControl.requestHandoff(primaryPort);
+            }
+            logger.info("TCP 转发器已启动，监听端口 {}（进程启动后 {} ms）。", listenPorts(listeners),
+                    millisSinceLaunch());
 
             logger.info("正在启动 LAN 广播线程...");
             announcer.start();
             logger.info("LAN 广播线程运行中，Minecraft 客户端应能在 LAN 列表看到伪装服务器。");
 
+            if (config.metrics().enabled()) {
+                startMetrics(logger, config, metricsServer);
+            }
+            watcher.start();
+
+            HandoffControl handoff = config.local().handoff()
+                    ? HandoffControl.listen(primaryPort, () -> drainAndExit(logger, config,
+                            forwarders, announcer, metricsServer, watcher))
+                    : null;
+
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 logger.info("收到关闭信号，正在清理资源...");
                 try {
-                    forwarder.close();
+                    if (handoff != null) {
+                        handoff.close();
+                    }
+                    watcher.close();
+                    closeForwarders(forwarders, engine, tunnel);
                     announcer.close();
+                    metricsServer.close();
                 } catch (Exception ignored) {
                 }
             }));
@@ -47,13 +118,147 @@ public final class Main {
             waitForever();
         } catch (Exception ex) {
             logger.error("启动过程中发生异常：{}", ex.getMessage(), ex);
+            closeForwarders(forwarders, engine, tunnel);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 同一进程中的监听端口不能重复，否则后绑定的一个会和前一个冲突
+     */
+    private static void checkDistinctPorts(List<AppConfig> listeners) {
+        Set<Integer> ports = new HashSet<>();
+        for (AppConfig listener : listeners) {
+            if (!ports.add(listener.local().listenPort())) {
+                throw new IllegalStateException("监听端口 " + listener.local().listenPort() + " 重复，"
+                        + "请检查 local.listenPort 和 mappings 中的 listenPort");
+            }
+        }
+    }
+
+    private static String listenPorts(List<AppConfig> listeners) {
+        return listeners.stream()
+                .map(listener -> String.valueOf(listener.local().listenPort()))
+                .collect(Collectors.joining(", "));
+    }
+
+    private static void closeForwarders(List<Forwarder> forwarders, RelayEngine engine, TunnelClient tunnel) {
+        forwarders.forEach(Forwarder::close);
+        if (tunnel != null) {
+            tunnel.close();
+        }
+        engine.close();
+    }
+
+    /**
+     * 隧道 server 模式：不监听玩家端口也不广播，只接受 client 端的隧道连接并替它连接远程服务器
+     */
+    private static void runTunnelServer(Logger logger, AppConfig config) {
+        try (TunnelServer server = new TunnelServer(config);
+             MetricsServer metricsServer = new MetricsServer(config.metrics(), MetricRegistry.shared())) {
+            server.start();
+            if (config.metrics().enabled()) {
+                startMetrics(logger, config, metricsServer);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                logger.info("收到关闭信号，正在清理资源...");
+                server.close();
+                metricsServer.close();
+            }));
+            logger.info("隧道服务端已启动，监听端口 {}，按 Ctrl+C 退出。", config.tunnel().listenPort());
+            waitForever();
+        } catch (Exception ex) {
+            logger.error("启动隧道服务端时发生异常：{}", ex.getMessage(), ex);
             System.exit(1);
         }
     }
 
+    /**
+     * 交接模式下新实例启动时旧实例的指标端口可能还没释放，此时不影响转发
+     */
+    private static void startMetrics(Logger logger, AppConfig config, MetricsServer metricsServer)
+            throws IOException {
+        try {
+            metricsServer.start();
+        } catch (IOException e) {
+            if (!config.local().handoff()) {
+                throw e;
+            }
+            logger.warn("指标接口启动失败，本次运行不提供指标: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 新实例已接管监听端口：停止接受连接和广播，等已连接的玩家断开后退出
+     */
+    private static void drainAndExit(Logger logger, AppConfig config, List<Forwarder> forwarders,
+                                     LanAnnouncer announcer, MetricsServer metricsServer, ConfigWatcher watcher) {
+        logger.info("新实例已接管端口 {}，本实例不再接受新连接", listenPorts(config.listeners()));
+        watcher.close();
+        forwarders.forEach(Forwarder::stopAccepting);
+        announcer.close();
+        metricsServer.close();
+        int timeout = config.local().drainTimeoutSeconds();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        try {
+            boolean drained = true;
+            for (Forwarder forwarder : forwarders) {
+                // 所有监听端口共用同一个等待期限
+                Duration remaining = Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+                drained &= forwarder.awaitDrain(remaining);
+            }
+            if (drained) {
+                logger.info("所有会话已结束，退出");
+            } else {
+                logger.warn("等待 {} 秒后仍有 {} 个会话，强制退出", timeout,
+                        forwarders.stream().mapToInt(Forwarder::openSessions).sum());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 配置文件修改后生效：转发器和 LAN 广播各自替换快照，已连接的玩家不受影响。
+     * mappings 按顺序对应已启动的转发器，增减映射需要重启
+     */
+    private static void applyReload(Logger logger, AppConfig previous, AppConfig updated,
+                                    List<Forwarder> forwarders, LanAnnouncer announcer) {
+        logger.info("检测到配置文件修改，正在重新加载...");
+        if (previous.local().dnsTtlSeconds() != updated.local().dnsTtlSeconds()
+                || !Objects.equals(previous.local().dnsServer(), updated.local().dnsServer())) {
+            CachedResolver.configure(updated.local());
+        }
+        List<AppConfig> listeners = updated.listeners();
+        if (listeners.size() != forwarders.size()) {
+            logger.warn("mappings 数量的修改需要重启后生效");
+        }
+        for (int i = 0; i < Math.min(listeners.size(), forwarders.size()); i++) {
+            forwarders.get(i).reload(listeners.get(i));
+        }
+        announcer.reload(listeners.subList(0, Math.min(listeners.size(), forwarders.size())));
+        if (updated.metrics().enabled() != previous.metrics().enabled()
+                || !updated.metrics().bind().equals(previous.metrics().bind())
+                || updated.metrics().port() != previous.metrics().port()) {
+            logger.warn("metrics 的修改需要重启后生效");
+        }
+        if (!updated.tunnel().toString().equals(previous.tunnel().toString())) {
+            logger.warn("tunnel 的修改需要重启后生效");
+        }
+    }
+
     private static void printStartupHints(Logger logger, AppConfig config) {
-        logger.info("即将把本地端口 {} 转发至远程 {}:{}",
-                config.local().listenPort(), config.remote().host(), config.remote().port());
+        logger.info("即将把本地端口 {} 转发至远程 {}",
+                config.local().listenPort(), config.remote());
+        config.routes().forEach((host, remote) ->
+                logger.info("按域名路由：{} -> {}", host, remote));
+        for (AppConfig mapping : config.mappings()) {
+            logger.info("端口映射：{}{} -> {}{}", mapping.local().listenPort(),
+                    mapping.local().bindAddress() != null ? "（" + mapping.local().bindAddress() + "）" : "",
+                    mapping.remote(),
+                    mapping.local().maxSessions() > 0 ? "，最多 " + mapping.local().maxSessions() + " 个会话" : "");
+        }
         logger.info("LAN 广播：MOTD='{}' 广播地址={}:{} 每 {}ms",
                 config.lan().motd(),
                 config.lan().broadcastAddress(), config.lan().broadcastPort(), config.lan().announceIntervalMillis());
@@ -62,7 +267,14 @@ public final class Main {
         } else {
             logger.info("IP 白名单生效，允许范围：{}", String.join(", ", config.security().whitelist()));
         }
-        if (config.credentials().enabled()) {
+        if (!config.security().blocklist().isEmpty() || !config.security().blocklistFiles().isEmpty()) {
+            logger.info("IP 黑名单生效：{} 个地址段，{} 个列表文件",
+                    config.security().blocklist().size(), config.security().blocklistFiles().size());
+        }
+        if (config.tunnel().client()) {
+            logger.info("隧道模式：所有会话经 {} 条隧道连接转发至 {}:{}，使用 credentials.token 认证",
+                    config.tunnel().connections(), config.tunnel().host(), config.tunnel().port());
+        } else if (config.credentials().enabled()) {
             logger.info("远程代理启用了凭证，已携带 token。");
         } else {
             logger.info("未配置远程凭证，如远端需要鉴权请在 credentials 中启用。");
@@ -70,6 +282,15 @@ public final class Main {
         logger.info("如需修改配置，可编辑 config.yaml 或在启动时传入自定义路径。");
     }
 
+    /**
+     * 从进程启动到现在的毫秒数，取不到进程启动时间时返回 -1
+     */
+    private static long millisSinceLaunch() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+
     private static void waitForever() throws InterruptedException {
         while (true) {
             Thread.sleep(Long.MAX_VALUE);
@@ -87,7 +308,7 @@ public final class Main {
         // 如果需要动态修改日志级别，可以使用其他方法
     }
 
-    private static AppConfig loadConfig(String[] args) throws Exception {
+    private static Path findConfig(String[] args) throws Exception {
         Path configPath;
         
         // 如果命令行参数提供了路径，直接使用
@@ -98,7 +319,7 @@ public final class Main {
                 System.exit(0);
             }
             System.out.println("从指定路径读取配置: " + configPath.toAbsolutePath());
-            return AppConfig.load(configPath);
+            return configPath;
         }
         
         // 自动查找配置文件，按优先级顺序
@@ -106,14 +327,14 @@ public final class Main {
         Path jarDirConfig = getJarDirectory().resolve("config.yaml");
         if (Files.exists(jarDirConfig)) {
             System.out.println("从 jar 同目录读取配置: " + jarDirConfig.toAbsolutePath());
-            return AppConfig.load(jarDirConfig);
+            return jarDirConfig;
         }
         
         // 2. 工作目录下的 config.yaml
         Path cwdConfig = Paths.get("config.yaml");
         if (Files.exists(cwdConfig)) {
             System.out.println("从工作目录读取配置: " + cwdConfig.toAbsolutePath());
-            return AppConfig.load(cwdConfig);
+            return cwdConfig;
         }
         
         // 3. 都找不到，生成模板到 jar 文件同目录
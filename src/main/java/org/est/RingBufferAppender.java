@@ -0,0 +1,323 @@
+package org.est;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+import org.est.metrics.Counter;
+import org.est.metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步输出日志：记录日志的线程只把事件放进定长的无锁环形队列，由一个后台线程批量编码并写出。
+ * <p>
+ * 控制台很慢（Windows 控制台、被暂停的终端、服务管理器的管道）时，转发和接受连接的线程也不会阻塞在写出上。
+ * 队列剩余空间不足 discardingThreshold 时丢弃 DEBUG/TRACE，队列满时丢弃所有级别；
+ * 丢弃的条数计入指标，并在队列恢复后输出一行汇总。
+ * <pre>
+ * &lt;appender name="CONSOLE" class="org.est.RingBufferAppender"&gt;
+ *     &lt;capacity&gt;8192&lt;/capacity&gt;
+ *     &lt;discardingThreshold&gt;1638&lt;/discardingThreshold&gt;
+ *     &lt;encoder class="org.est.ConditionalPatternEncoder" /&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long STOP_TIMEOUT_MS = 1000;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final Counter DROPPED_DEBUG = MetricRegistry.shared().counter("log_events_dropped_total",
+            "日志队列拥塞时丢弃的日志条数", "level=\"debug\"");
+    private static final Counter DROPPED_OTHER = MetricRegistry.shared().counter("log_events_dropped_total",
+            "日志队列拥塞时丢弃的日志条数", "level=\"info_and_above\"");
+
+    private Encoder<ILoggingEvent> encoder;
+    private int capacity = DEFAULT_CAPACITY;
+    private int discardingThreshold = -1;
+    private String target = "System.out";
+
+    private Ring ring;
+    private OutputStream out;
+    private Thread drainThread;
+    private volatile boolean draining;
+    private volatile boolean drainParked;
+    private final LongAdder droppedDebug = new LongAdder();
+    private final LongAdder droppedOther = new LongAdder();
+    // 以下字段只在写出线程上访问
+    private long reportedDebug;
+    private long reportedOther;
+
+    public void setEncoder(Encoder<ILoggingEvent> encoder) {
+        this.encoder = encoder;
+    }
+
+    public Encoder<ILoggingEvent> getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * 队列长度，向上取整为 2 的幂
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * 剩余空间低于该值时开始丢弃 DEBUG/TRACE，默认为队列长度的 1/5，0 表示只在队列满时丢弃
+     */
+    public void setDiscardingThreshold(int discardingThreshold) {
+        this.discardingThreshold = discardingThreshold;
+    }
+
+    /**
+     * System.out 或 System.err
+     */
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (encoder == null) {
+            addError("RingBufferAppender \"" + getName() + "\" 未配置 encoder");
+            return;
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        if (discardingThreshold < 0) {
+            discardingThreshold = size / 5;
+        }
+        ring = new Ring(size);
+        PrintStream stream = "System.err".equalsIgnoreCase(target) ? System.err : System.out;
+        out = stream;
+        draining = true;
+        drainThread = new Thread(this::drainLoop, "log-drain-" + getName());
+        drainThread.setDaemon(true);
+        drainThread.start();
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        boolean debug = !event.getLevel().isGreaterOrEqual(Level.INFO);
+        if (debug && ring.remaining() <= discardingThreshold) {
+            droppedDebug.increment();
+            DROPPED_DEBUG.increment();
+            return;
+        }
+        // 线程名、格式化后的消息等在入队前确定，之后由写出线程读取
+        event.prepareForDeferredProcessing();
+        if (!ring.offer(event)) {
+            if (debug) {
+                droppedDebug.increment();
+                DROPPED_DEBUG.increment();
+            } else {
+                droppedOther.increment();
+                DROPPED_OTHER.increment();
+            }
+            return;
+        }
+        if (drainParked) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private void drainLoop() {
+        byte[] batch = new byte[BATCH_BYTES];
+        while (true) {
+            int length = 0;
+            ILoggingEvent event;
+            while ((event = ring.poll()) != null) {
+                length = appendBytes(batch, length, encode(event));
+            }
+            length = appendBytes(batch, length, dropSummary());
+            if (length > 0) {
+                write(batch, 0, length);
+                flush();
+                continue;
+            }
+            if (!draining) {
+                break;
+            }
+            drainParked = true;
+            if (ring.isEmpty() && draining) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            drainParked = false;
+        }
+    }
+
+    private byte[] encode(ILoggingEvent event) {
+        try {
+            return encoder.encode(event);
+        } catch (RuntimeException e) {
+            addError("日志编码失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 追加到批量缓冲区，放不下时先写出已有内容
+     */
+    private int appendBytes(byte[] batch, int length, byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return length;
+        }
+        if (length + bytes.length > batch.length) {
+            write(batch, 0, length);
+            length = 0;
+            if (bytes.length > batch.length) {
+                write(bytes, 0, bytes.length);
+                return 0;
+            }
+        }
+        System.arraycopy(bytes, 0, batch, length, bytes.length);
+        return length + bytes.length;
+    }
+
+    /**
+     * 上次汇总之后有丢弃时生成一行说明
+     */
+    private byte[] dropSummary() {
+        long totalDebug = droppedDebug.sum();
+        long totalOther = droppedOther.sum();
+        long debug = totalDebug - reportedDebug;
+        long other = totalOther - reportedOther;
+        if (debug == 0 && other == 0) {
+            return null;
+        }
+        reportedDebug = totalDebug;
+        reportedOther = totalOther;
+        String line = "[" + LocalTime.now().format(TIME) + " WARN] 日志输出过慢，已丢弃 " + (debug + other)
+                + " 条日志（DEBUG/TRACE " + debug + " 条）" + System.lineSeparator();
+        Charset charset = encoder instanceof ConditionalPatternEncoder
+                ? ((ConditionalPatternEncoder) encoder).getCharset() : Charset.defaultCharset();
+        return line.getBytes(charset);
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        try {
+            out.write(bytes, offset, length);
+        } catch (IOException e) {
+            addError("写出日志失败", e);
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            addError("写出日志失败", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        // 写出线程把队列中剩余的日志写完后退出
+        draining = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (drainThread.isAlive()) {
+            addWarn("日志队列未能在 " + STOP_TIMEOUT_MS + " ms 内写完，剩余约 " + ring.size() + " 条");
+        }
+    }
+
+    public long droppedDebug() {
+        return droppedDebug.sum();
+    }
+
+    public long droppedOther() {
+        return droppedOther.sum();
+    }
+
+    /**
+     * 多生产者单消费者的定长环形队列（Vyukov 算法）：每个槽位带序号，生产者 CAS 抢占写入位置，
+     * 写完后发布序号；消费者只有一个，不需要 CAS。
+     */
+    static final class Ring {
+        private final int mask;
+        private final AtomicReferenceArray<ILoggingEvent> items;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        Ring(int size) {
+            this.mask = size - 1;
+            this.items = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(ILoggingEvent event) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long sequence = sequences.get(index);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        items.lazySet(index, event);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (sequence < position) {
+                    // 该槽位上一轮的事件还没被取走，队列已满
+                    return false;
+                }
+            }
+        }
+
+        ILoggingEvent poll() {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return null;
+            }
+            ILoggingEvent event = items.get(index);
+            items.lazySet(index, null);
+            sequences.set(index, position + mask + 1);
+            head = position + 1;
+            return event;
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+
+        int remaining() {
+            return mask + 1 - size();
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+    }
+}
@@ -1,23 +1,39 @@
 package org.est.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 
 public final class AppConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppConfig.class);
+
     private Remote remote;
     private Local local;
     private Lan lan;
     private Security security;
     private Credentials credentials;
     private Logging logging;
+    private Map<String, Remote> routes;
+    private Metrics metrics;
+    private List<AppConfig> mappings;
+    private Tunnel tunnel;
 
     public AppConfig() {
     }
@@ -27,19 +43,23 @@ public final class AppConfig {
                       Lan lan,
                       Security security,
                       Credentials credentials,
-                      Logging logging) {
+                      Logging logging,
+                      Map<String, Remote> routes,
+                      Metrics metrics) {
         this.remote = remote;
         this.local = local;
         this.lan = lan;
         this.security = security;
         this.credentials = credentials;
         this.logging = logging;
+        this.routes = routes;
+        this.metrics = metrics;
     }
 
     public static AppConfig load(Path configPath) {
         Objects.requireNonNull(configPath, "configPath");
-        try (InputStream in = Files.newInputStream(configPath)) {
-            return load(in);
+        try {
+            return load(Files.readAllBytes(configPath));
         } catch (Exception e) {
             throw new IllegalStateException("无法读取配置文件: " + configPath, e);
         }
@@ -47,11 +67,38 @@ public final class AppConfig {
 
     public static AppConfig load(InputStream inputStream) {
         Objects.requireNonNull(inputStream, "inputStream");
-        Yaml yaml = new Yaml();
-        Object raw = yaml.load(inputStream);
+        try {
+            return load(inputStream.readAllBytes());
+        } catch (IOException e) {
+            throw new IllegalStateException("无法读取配置", e);
+        }
+    }
+
+    /**
+     * 先用只支持简单写法的 {@link SimpleYamlParser} 解析，省去 SnakeYAML 的加载和初始化；
+     * 文件中用到它不支持的写法时（或不是 UTF-8 编码）再交给 SnakeYAML
+     */
+    private static AppConfig load(byte[] bytes) {
+        Object raw;
+        try {
+            String text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+            raw = SimpleYamlParser.parse(text);
+        } catch (SimpleYamlParser.UnsupportedException | CharacterCodingException e) {
+            LOGGER.debug("配置文件改用 SnakeYAML 解析: {}", e.getMessage());
+            raw = loadWithSnakeYaml(bytes);
+        }
         return asConfig(raw).withDefaults();
     }
 
+    private static Object loadWithSnakeYaml(byte[] bytes) {
+        Yaml yaml = new Yaml();
+        return yaml.load(new ByteArrayInputStream(bytes));
+    }
+
     @SuppressWarnings("unchecked")
     private static AppConfig asConfig(Object raw) {
         if (!(raw instanceof Map)) {
@@ -64,7 +111,58 @@ public final class AppConfig {
         Security security = parseSecurity(root.get("security"));
         Credentials credentials = parseCredentials(root.get("credentials"));
         Logging logging = parseLogging(root.get("logging"));
-        return new AppConfig(remote, local, lan, security, credentials, logging);
+        Map<String, Remote> routes = parseRoutes(root.get("routes"));
+        Metrics metrics = parseMetrics(root.get("metrics"));
+        attachProxyToken(remote, routes, credentials);
+        AppConfig config = new AppConfig(remote, local, lan, security, credentials, logging, routes, metrics);
+        config.mappings = parseMappings(root);
+        config.tunnel = parseTunnel(root.get("tunnel"));
+        return config;
+    }
+
+    /**
+     * mappings 中的每一项生成一份完整的配置：在顶层配置的基础上替换 remote、routes，
+     * 以及 local 中的 listenPort、bindAddress、maxSessions，security 中的 whitelist，lan 中的 motd
+     */
+    private static List<AppConfig> parseMappings(Map<String, Object> root) {
+        List<AppConfig> mappings = new ArrayList<>();
+        if (!(root.get("mappings") instanceof List)) {
+            return mappings;
+        }
+        for (Object item : (List<?>) root.get("mappings")) {
+            Map<String, Object> mapping = asMap(item);
+            if (mapping == null || asInteger(mapping.get("listenPort")) == null) {
+                continue;
+            }
+            Map<String, Object> merged = new LinkedHashMap<>(root);
+            merged.remove("mappings");
+            // remote 和 routes 一起决定转发目标，映射只写了其中一个时另一个不沿用顶层配置
+            if (mapping.containsKey("remote") || mapping.containsKey("routes")) {
+                merged.put("remote", mapping.get("remote"));
+                merged.put("routes", mapping.get("routes"));
+            }
+            merged.put("local", override(root.get("local"), mapping, "listenPort", "bindAddress", "maxSessions"));
+            merged.put("security", override(root.get("security"), mapping, "whitelist"));
+            Map<String, Object> lan = override(root.get("lan"), mapping, "motd");
+            lan.remove("entries");
+            merged.put("lan", lan);
+            AppConfig config = asConfig(merged).withDefaults();
+            // 未配置 motd 的映射不出现在 LAN 列表中
+            config.lan().setListed(mapping.get("motd") != null);
+            mappings.add(config);
+        }
+        return mappings;
+    }
+
+    private static Map<String, Object> override(Object section, Map<String, Object> mapping, String... keys) {
+        Map<String, Object> base = asMap(section);
+        Map<String, Object> result = base != null ? new LinkedHashMap<>(base) : new LinkedHashMap<String, Object>();
+        for (String key : keys) {
+            if (mapping.containsKey(key)) {
+                result.put(key, mapping.get(key));
+            }
+        }
+        return result;
     }
 
     private static Remote parseRemote(Object value) {
@@ -74,10 +172,110 @@ public final class AppConfig {
         }
         String host = asString(map.get("host"));
         Integer port = asInteger(map.get("port"));
-        if (host == null && port == null) {
+        List<Remote> backends = parseBackends(map.get("backends"));
+        if (host == null && port == null && backends.isEmpty()) {
+            return null;
+        }
+        Remote remote = new Remote(host != null ? host : "localhost", port != null ? port : 25565);
+        remote.setRewriteAddress(asString(map.get("rewriteAddress")));
+        String proxyProtocol = asString(map.get("proxyProtocol"));
+        remote.setProxyProtocol(proxyProtocol);
+        if (proxyProtocol != null && remote.proxyProtocol() == null
+                && !"off".equalsIgnoreCase(proxyProtocol.trim()) && !"false".equalsIgnoreCase(proxyProtocol.trim())) {
+            LOGGER.warn("未知的 proxyProtocol: {}（可选 v1、v2），不发送 PROXY 头", proxyProtocol);
+        }
+        Integer poolSize = asInteger(map.get("poolSize"));
+        if (poolSize != null) {
+            remote.setPoolSize(poolSize);
+        }
+        Long poolMaxIdle = asLong(map.get("poolMaxIdleMs"));
+        if (poolMaxIdle != null) {
+            remote.setPoolMaxIdleMs(poolMaxIdle);
+        }
+        Integer weight = asInteger(map.get("weight"));
+        if (weight != null) {
+            remote.setWeight(weight);
+        }
+        remote.setBalance(asString(map.get("balance")));
+        Boolean srv = asBoolean(map.get("srv"));
+        if (srv != null) {
+            remote.setSrv(srv);
+        }
+        for (Remote backend : backends) {
+            // 后端未单独配置的项沿用所在分组的配置
+            if (backend.rewriteAddress == null) {
+                backend.setRewriteAddress(remote.rewriteAddress);
+            }
+            if (backend.proxyProtocol == null) {
+                backend.setProxyProtocol(remote.proxyProtocol);
+            }
+            if (backend.poolSize == null) {
+                backend.setPoolSize(remote.poolSize());
+            }
+            if (backend.poolMaxIdleMs == null) {
+                backend.setPoolMaxIdleMs(remote.poolMaxIdleMs());
+            }
+            if (backend.srv == null) {
+                backend.setSrv(remote.srv());
+            }
+        }
+        remote.setBackends(backends);
+        return remote;
+    }
+
+    /**
+     * 启用了 credentials 时，发送 PROXY v2 头的远程在头中携带 token
+     */
+    private static void attachProxyToken(Remote remote, Map<String, Remote> routes, Credentials credentials) {
+        if (credentials == null || !credentials.enabled() || credentials.token() == null
+                || credentials.token().isEmpty()) {
+            return;
+        }
+        List<Remote> remotes = new ArrayList<>();
+        if (remote != null) {
+            remotes.add(remote);
+        }
+        if (routes != null) {
+            remotes.addAll(routes.values());
+        }
+        for (Remote group : remotes) {
+            for (Remote backend : group.backends()) {
+                backend.proxyToken = credentials.token();
+            }
+        }
+    }
+
+    private static List<Remote> parseBackends(Object value) {
+        List<Remote> backends = new ArrayList<>();
+        if (!(value instanceof List)) {
+            return backends;
+        }
+        for (Object item : (List<?>) value) {
+            Map<String, Object> map = asMap(item);
+            if (map == null || map.get("backends") != null) {
+                continue;
+            }
+            Remote backend = parseRemote(map);
+            if (backend != null) {
+                backends.add(backend);
+            }
+        }
+        return backends;
+    }
+
+    private static Map<String, Remote> parseRoutes(Object value) {
+        Map<String, Object> map = asMap(value);
+        if (map == null) {
             return null;
         }
-        return new Remote(host != null ? host : "localhost", port != null ? port : 25565);
+        Map<String, Remote> routes = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Remote remote = parseRemote(entry.getValue());
+            if (entry.getKey() != null && remote != null) {
+                routes.put(entry.getKey().trim().toLowerCase(Locale.ROOT), remote);
+            }
+        }
+        return routes;
     }
 
     private static Local parseLocal(Object value) {
@@ -89,7 +287,53 @@ public final class AppConfig {
         if (listen == null) {
             return null;
         }
-        return new Local(listen);
+        String engine = asString(map.get("engine"));
+        Integer ioThreads = asInteger(map.get("ioThreads"));
+        Boolean virtualThreads = asBoolean(map.get("virtualThreads"));
+        Local local = new Local(listen, engine, ioThreads != null ? ioThreads : 0);
+        local.setVirtualThreads(virtualThreads != null && virtualThreads);
+        local.setFlushPolicy(asString(map.get("flushPolicy")));
+        Long flushMaxDelay = asLong(map.get("flushMaxDelayMicros"));
+        if (flushMaxDelay != null) {
+            local.setFlushMaxDelayMicros(flushMaxDelay);
+        }
+        Boolean corkBulk = asBoolean(map.get("corkBulk"));
+        local.setCorkBulk(corkBulk != null && corkBulk);
+        Integer dnsTtl = asInteger(map.get("dnsTtlSeconds"));
+        if (dnsTtl != null) {
+            local.setDnsTtlSeconds(dnsTtl);
+        }
+        local.setDnsServer(asString(map.get("dnsServer")));
+        Long statusCache = asLong(map.get("statusCacheMs"));
+        if (statusCache != null) {
+            local.setStatusCacheMs(statusCache);
+        }
+        local.setBindAddress(asString(map.get("bindAddress")));
+        Integer maxSessions = asInteger(map.get("maxSessions"));
+        if (maxSessions != null) {
+            local.setMaxSessions(maxSessions);
+        }
+        Long bandwidthPerSession = asLong(map.get("bandwidthPerSession"));
+        if (bandwidthPerSession != null) {
+            local.setBandwidthPerSession(bandwidthPerSession);
+        }
+        Long bandwidthPerSubnet = asLong(map.get("bandwidthPerSubnet"));
+        if (bandwidthPerSubnet != null) {
+            local.setBandwidthPerSubnet(bandwidthPerSubnet);
+        }
+        Long bandwidthTotal = asLong(map.get("bandwidthTotal"));
+        if (bandwidthTotal != null) {
+            local.setBandwidthTotal(bandwidthTotal);
+        }
+        Boolean trafficPriority = asBoolean(map.get("trafficPriority"));
+        local.setTrafficPriority(trafficPriority != null && trafficPriority);
+        Boolean handoff = asBoolean(map.get("handoff"));
+        local.setHandoff(handoff != null && handoff);
+        Integer drainTimeout = asInteger(map.get("drainTimeoutSeconds"));
+        if (drainTimeout != null) {
+            local.setDrainTimeoutSeconds(drainTimeout);
+        }
+        return local;
     }
 
     private static Lan parseLan(Object value) {
@@ -101,12 +345,33 @@ public final class AppConfig {
         Long interval = asLong(map.get("announceIntervalMs"));
         Integer broadcastPort = asInteger(map.get("broadcastPort"));
         String broadcastAddress = asString(map.get("broadcastAddress"));
-        return new Lan(
+        Lan lan = new Lan(
                 motd != null ? motd : "Minecraft Proxy",
                 interval != null ? interval : 1000L,
                 broadcastPort != null ? broadcastPort : 4445,
                 broadcastAddress != null ? broadcastAddress : "255.255.255.255"
         );
+        lan.setEntries(parseLanEntries(map.get("entries")));
+        return lan;
+    }
+
+    private static List<Lan.Entry> parseLanEntries(Object value) {
+        List<Lan.Entry> entries = new ArrayList<>();
+        if (!(value instanceof List)) {
+            return entries;
+        }
+        for (Object item : (List<?>) value) {
+            Map<String, Object> map = asMap(item);
+            if (map == null) {
+                continue;
+            }
+            String motd = asString(map.get("motd"));
+            Integer port = asInteger(map.get("port"));
+            if (motd != null && port != null) {
+                entries.add(new Lan.Entry(motd, port));
+            }
+        }
+        return entries;
     }
 
     private static Security parseSecurity(Object value) {
@@ -115,7 +380,39 @@ public final class AppConfig {
             return null;
         }
         List<String> whitelist = asStringList(map.get("whitelist"));
-        return new Security(whitelist != null ? whitelist : new ArrayList<String>());
+        Security security = new Security(whitelist != null ? whitelist : new ArrayList<String>());
+        security.setBlocklist(asStringList(map.get("blocklist")));
+        security.setBlocklistFiles(asStringList(map.get("blocklistFiles")));
+        security.setCompiledCache(asString(map.get("compiledCache")));
+        Double connectionRate = asDouble(map.get("connectionRate"));
+        if (connectionRate != null) {
+            security.setConnectionRate(connectionRate);
+        }
+        Integer connectionBurst = asInteger(map.get("connectionBurst"));
+        if (connectionBurst != null) {
+            security.setConnectionBurst(connectionBurst);
+        }
+        Double subnetConnectionRate = asDouble(map.get("subnetConnectionRate"));
+        if (subnetConnectionRate != null) {
+            security.setSubnetConnectionRate(subnetConnectionRate);
+        }
+        Integer subnetConnectionBurst = asInteger(map.get("subnetConnectionBurst"));
+        if (subnetConnectionBurst != null) {
+            security.setSubnetConnectionBurst(subnetConnectionBurst);
+        }
+        Integer subnetPrefix = asInteger(map.get("subnetPrefix"));
+        if (subnetPrefix != null) {
+            security.setSubnetPrefix(subnetPrefix);
+        }
+        Integer subnetPrefixV6 = asInteger(map.get("subnetPrefixV6"));
+        if (subnetPrefixV6 != null) {
+            security.setSubnetPrefixV6(subnetPrefixV6);
+        }
+        Integer maxSessionsPerIp = asInteger(map.get("maxSessionsPerIp"));
+        if (maxSessionsPerIp != null) {
+            security.setMaxSessionsPerIp(maxSessionsPerIp);
+        }
+        return security;
     }
 
     private static Credentials parseCredentials(Object value) {
@@ -128,6 +425,42 @@ public final class AppConfig {
         return new Credentials(enabled != null && enabled, token != null ? token : "");
     }
 
+    private static Metrics parseMetrics(Object value) {
+        Map<String, Object> map = asMap(value);
+        if (map == null) {
+            return null;
+        }
+        Boolean enabled = asBoolean(map.get("enabled"));
+        String bind = asString(map.get("bind"));
+        Integer port = asInteger(map.get("port"));
+        return new Metrics(enabled != null && enabled, bind != null ? bind : "127.0.0.1", port != null ? port : 9225);
+    }
+
+    private static Tunnel parseTunnel(Object value) {
+        Map<String, Object> map = asMap(value);
+        if (map == null) {
+            return null;
+        }
+        Tunnel tunnel = new Tunnel();
+        tunnel.setMode(asString(map.get("mode")));
+        tunnel.setHost(asString(map.get("host")));
+        Integer port = asInteger(map.get("port"));
+        if (port != null) {
+            tunnel.setPort(port);
+        }
+        Integer listenPort = asInteger(map.get("listenPort"));
+        if (listenPort != null) {
+            tunnel.setListenPort(listenPort);
+        }
+        Integer connections = asInteger(map.get("connections"));
+        if (connections != null) {
+            tunnel.setConnections(connections);
+        }
+        Boolean compression = asBoolean(map.get("compression"));
+        tunnel.setCompression(compression != null && compression);
+        return tunnel;
+    }
+
     private static Logging parseLogging(Object value) {
         Map<String, Object> map = asMap(value);
         if (map == null) {
@@ -148,7 +481,13 @@ public final class AppConfig {
         Security resolvedSecurity = security != null ? security : new Security(new ArrayList<String>());
         Credentials resolvedCredentials = credentials != null ? credentials : new Credentials(false, "");
         Logging resolvedLogging = logging != null ? logging : new Logging("INFO");
-        return new AppConfig(resolvedRemote, resolvedLocal, resolvedLan, resolvedSecurity, resolvedCredentials, resolvedLogging);
+        Map<String, Remote> resolvedRoutes = routes != null ? routes : new LinkedHashMap<String, Remote>();
+        Metrics resolvedMetrics = metrics != null ? metrics : new Metrics(false, "127.0.0.1", 9225);
+        AppConfig resolved = new AppConfig(resolvedRemote, resolvedLocal, resolvedLan, resolvedSecurity,
+                resolvedCredentials, resolvedLogging, resolvedRoutes, resolvedMetrics);
+        resolved.mappings = mappings != null ? mappings : new ArrayList<AppConfig>();
+        resolved.tunnel = tunnel != null ? tunnel : new Tunnel();
+        return resolved;
     }
 
     public Remote remote() {
@@ -175,9 +514,56 @@ public final class AppConfig {
         return logging;
     }
 
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    public Tunnel tunnel() {
+        return tunnel;
+    }
+
+    /**
+     * mappings 中配置的其他监听端口，每一项都是一份完整的配置（未单独配置的项沿用顶层配置）
+     */
+    public List<AppConfig> mappings() {
+        return mappings != null ? mappings : Collections.<AppConfig>emptyList();
+    }
+
+    /**
+     * 本进程的所有监听端口：顶层配置在前，其后是 mappings 中的各项
+     */
+    public List<AppConfig> listeners() {
+        List<AppConfig> listeners = new ArrayList<>();
+        listeners.add(this);
+        listeners.addAll(mappings());
+        return listeners;
+    }
+
+    /**
+     * 按握手包中的服务器地址选择远程服务器，键为小写域名，支持 "*.example.com" 通配
+     */
+    public Map<String, Remote> routes() {
+        return routes != null ? routes : Collections.<String, Remote>emptyMap();
+    }
+
     public static final class Remote {
+        public static final String BALANCE_LEAST_CONNECTIONS = "least-connections";
+        public static final String BALANCE_ROUND_ROBIN = "round-robin";
+        public static final String BALANCE_IP_HASH = "ip-hash";
+        public static final String PROXY_V1 = "v1";
+        public static final String PROXY_V2 = "v2";
+
         private String host;
         private int port;
+        private String rewriteAddress;
+        private String proxyProtocol;
+        private String proxyToken;
+        private Integer poolSize;
+        private Long poolMaxIdleMs;
+        private int weight = 1;
+        private String balance;
+        private Boolean srv;
+        private List<Remote> backends;
 
         public Remote() {
         }
@@ -202,16 +588,177 @@ public final class AppConfig {
         public void setPort(int port) {
             this.port = port;
         }
+
+        /**
+         * 转发握手包时改写的服务器地址；配置为 true 时使用 host，未配置时原样转发
+         */
+        public String rewriteAddress() {
+            if (rewriteAddress == null || rewriteAddress.trim().isEmpty()
+                    || "false".equalsIgnoreCase(rewriteAddress.trim())) {
+                return null;
+            }
+            if ("true".equalsIgnoreCase(rewriteAddress.trim())) {
+                return host;
+            }
+            return rewriteAddress.trim();
+        }
+
+        public void setRewriteAddress(String rewriteAddress) {
+            this.rewriteAddress = rewriteAddress;
+        }
+
+        /**
+         * 连接建立后先发送的 PROXY 协议头版本：v1（文本）或 v2（二进制），未配置时不发送
+         */
+        public String proxyProtocol() {
+            if (proxyProtocol == null) {
+                return null;
+            }
+            String version = proxyProtocol.trim().toLowerCase(Locale.ROOT);
+            if (PROXY_V1.equals(version) || PROXY_V2.equals(version)) {
+                return version;
+            }
+            return null;
+        }
+
+        public void setProxyProtocol(String proxyProtocol) {
+            this.proxyProtocol = proxyProtocol;
+        }
+
+        /**
+         * PROXY v2 头中携带的 credentials.token，未启用 credentials 时为 null
+         */
+        public String proxyToken() {
+            return proxyToken;
+        }
+
+        /**
+         * 预先建立并保持空闲的远程连接数，0 表示不使用连接池
+         */
+        public int poolSize() {
+            return poolSize != null ? Math.max(0, poolSize) : 0;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        /**
+         * 空闲连接的最长保留时间（毫秒），需小于远程服务器等待握手的超时时间
+         */
+        public long poolMaxIdleMs() {
+            return poolMaxIdleMs != null && poolMaxIdleMs > 0 ? poolMaxIdleMs : 10_000L;
+        }
+
+        public void setPoolMaxIdleMs(long poolMaxIdleMs) {
+            this.poolMaxIdleMs = poolMaxIdleMs;
+        }
+
+        /**
+         * 作为 backends 中的一员时的权重，至少为 1
+         */
+        public int weight() {
+            return Math.max(1, weight);
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        /**
+         * 多个后端之间的负载均衡方式：least-connections（默认）、round-robin 或 ip-hash
+         */
+        public String balance() {
+            if (balance == null || balance.trim().isEmpty()) {
+                return BALANCE_LEAST_CONNECTIONS;
+            }
+            return balance.trim().toLowerCase(Locale.ROOT);
+        }
+
+        public void setBalance(String balance) {
+            this.balance = balance;
+        }
+
+        /**
+         * 是否像原版客户端一样先查询 _minecraft._tcp SRV 记录，查到时使用记录中的主机和端口
+         */
+        public boolean srv() {
+            return srv != null && srv;
+        }
+
+        public void setSrv(boolean srv) {
+            this.srv = srv;
+        }
+
+        /**
+         * 配置的后端列表；未配置 backends 时只有自身一个后端
+         */
+        public List<Remote> backends() {
+            if (backends == null || backends.isEmpty()) {
+                return Collections.singletonList(this);
+            }
+            return backends;
+        }
+
+        public void setBackends(List<Remote> backends) {
+            this.backends = backends;
+        }
+
+        @Override
+        public String toString() {
+            if (backends == null || backends.isEmpty()) {
+                return host + ":" + port;
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for (Remote backend : backends) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(backend.host).append(':').append(backend.port);
+                if (backend.weight() > 1) {
+                    sb.append(" x").append(backend.weight());
+                }
+            }
+            return sb.append("] ").append(balance()).toString();
+        }
     }
 
     public static final class Local {
+        public static final String ENGINE_CLASSIC = "classic";
+        public static final String ENGINE_NIO = "nio";
+        public static final String FLUSH_IMMEDIATE = "immediate";
+        public static final String FLUSH_COALESCE = "coalesce";
+
         private int listenPort;
+        private String engine;
+        private int ioThreads;
+        private boolean virtualThreads;
+        private String flushPolicy;
+        private long flushMaxDelayMicros = 500L;
+        private boolean corkBulk;
+        private int dnsTtlSeconds = 60;
+        private String dnsServer;
+        private long statusCacheMs;
+        private String bindAddress;
+        private int maxSessions;
+        private long bandwidthPerSession;
+        private long bandwidthPerSubnet;
+        private long bandwidthTotal;
+        private boolean trafficPriority;
+        private boolean handoff;
+        private int drainTimeoutSeconds = 300;
 
         public Local() {
         }
 
         public Local(int listenPort) {
+            this(listenPort, ENGINE_CLASSIC, 0);
+        }
+
+        public Local(int listenPort, String engine, int ioThreads) {
             this.listenPort = listenPort;
+            this.engine = engine;
+            this.ioThreads = ioThreads;
         }
 
         public int listenPort() {
@@ -221,6 +768,209 @@ public final class AppConfig {
         public void setListenPort(int listenPort) {
             this.listenPort = listenPort;
         }
+
+        /**
+         * 转发引擎：classic 为每个方向一个阻塞线程，nio 为基于 Selector 的事件循环
+         */
+        public String engine() {
+            if (engine == null || engine.trim().isEmpty()) {
+                return ENGINE_CLASSIC;
+            }
+            return engine.trim().toLowerCase(Locale.ROOT);
+        }
+
+        public void setEngine(String engine) {
+            this.engine = engine;
+        }
+
+        public boolean nioEngine() {
+            return ENGINE_NIO.equals(engine());
+        }
+
+        /**
+         * nio 引擎的事件循环数量，未配置或小于 1 时取 CPU 核心数
+         */
+        public int ioThreads() {
+            if (ioThreads <= 0) {
+                return Runtime.getRuntime().availableProcessors();
+            }
+            return ioThreads;
+        }
+
+        public void setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+        }
+
+        /**
+         * 是否在虚拟线程上运行 acceptLoop、会话处理和 pipe
+         */
+        public boolean virtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        /**
+         * 写出策略：immediate 每次读取后立即写出，coalesce 先合并输入中已到达的数据再一次写出
+         */
+        public String flushPolicy() {
+            if (flushPolicy == null || flushPolicy.trim().isEmpty()) {
+                return FLUSH_IMMEDIATE;
+            }
+            return flushPolicy.trim().toLowerCase(Locale.ROOT);
+        }
+
+        public void setFlushPolicy(String flushPolicy) {
+            this.flushPolicy = flushPolicy;
+        }
+
+        /**
+         * coalesce 策略在大块传输时为等待后续数据最多增加的延迟（微秒）
+         */
+        public long flushMaxDelayMicros() {
+            return Math.max(0L, flushMaxDelayMicros);
+        }
+
+        public void setFlushMaxDelayMicros(long flushMaxDelayMicros) {
+            this.flushMaxDelayMicros = flushMaxDelayMicros;
+        }
+
+        /**
+         * 大块传输期间是否暂时关闭 TCP_NODELAY，让内核合并小分段
+         */
+        public boolean corkBulk() {
+            return corkBulk;
+        }
+
+        public void setCorkBulk(boolean corkBulk) {
+            this.corkBulk = corkBulk;
+        }
+
+        /**
+         * DNS 解析结果的缓存时间（秒），到期前在后台刷新
+         */
+        public int dnsTtlSeconds() {
+            return dnsTtlSeconds > 0 ? dnsTtlSeconds : 60;
+        }
+
+        public void setDnsTtlSeconds(int dnsTtlSeconds) {
+            this.dnsTtlSeconds = dnsTtlSeconds;
+        }
+
+        /**
+         * 指定的 DNS 服务器，如 "223.5.5.5" 或 "127.0.0.1:5353"；未配置时使用系统解析
+         */
+        public String dnsServer() {
+            if (dnsServer == null || dnsServer.trim().isEmpty()) {
+                return null;
+            }
+            return dnsServer.trim();
+        }
+
+        public void setDnsServer(String dnsServer) {
+            this.dnsServer = dnsServer;
+        }
+
+        /**
+         * 服务器列表状态缓存的刷新间隔（毫秒），0 表示不缓存，每次状态查询都转发给远程服务器
+         */
+        public long statusCacheMs() {
+            return Math.max(0L, statusCacheMs);
+        }
+
+        public void setStatusCacheMs(long statusCacheMs) {
+            this.statusCacheMs = statusCacheMs;
+        }
+
+        /**
+         * 监听的本机地址，未配置时监听所有地址
+         */
+        public String bindAddress() {
+            return bindAddress == null || bindAddress.trim().isEmpty() ? null : bindAddress.trim();
+        }
+
+        public void setBindAddress(String bindAddress) {
+            this.bindAddress = bindAddress;
+        }
+
+        /**
+         * 这个监听端口同时转发的会话数上限，0 表示不限制；多个监听端口时避免一个端口占满线程和连接
+         */
+        public int maxSessions() {
+            return Math.max(0, maxSessions);
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        /**
+         * 每个会话的带宽上限（KB/s，上下行合计），0 表示不限制
+         */
+        public long bandwidthPerSession() {
+            return Math.max(0L, bandwidthPerSession);
+        }
+
+        public void setBandwidthPerSession(long bandwidthPerSession) {
+            this.bandwidthPerSession = bandwidthPerSession;
+        }
+
+        /**
+         * 同一网段（客户端命中的白名单条目）所有会话合计的带宽上限（KB/s），0 表示不限制
+         */
+        public long bandwidthPerSubnet() {
+            return Math.max(0L, bandwidthPerSubnet);
+        }
+
+        public void setBandwidthPerSubnet(long bandwidthPerSubnet) {
+            this.bandwidthPerSubnet = bandwidthPerSubnet;
+        }
+
+        /**
+         * 整个进程所有会话合计的带宽上限（KB/s），0 表示不限制
+         */
+        public long bandwidthTotal() {
+            return Math.max(0L, bandwidthTotal);
+        }
+
+        public void setBandwidthTotal(long bandwidthTotal) {
+            this.bandwidthTotal = bandwidthTotal;
+        }
+
+        /**
+         * 限速时小包（移动、心跳）不排队，只让大块传输等待
+         */
+        public boolean trafficPriority() {
+            return trafficPriority;
+        }
+
+        public void setTrafficPriority(boolean trafficPriority) {
+            this.trafficPriority = trafficPriority;
+        }
+
+        /**
+         * 无缝重启：新实例与旧实例共用监听端口（SO_REUSEPORT），并通知旧实例停止接受连接、等待已有会话结束后退出
+         */
+        public boolean handoff() {
+            return handoff;
+        }
+
+        public void setHandoff(boolean handoff) {
+            this.handoff = handoff;
+        }
+
+        /**
+         * 交接后旧实例等待已有会话结束的最长时间（秒），超时后关闭剩余会话
+         */
+        public int drainTimeoutSeconds() {
+            return Math.max(0, drainTimeoutSeconds);
+        }
+
+        public void setDrainTimeoutSeconds(int drainTimeoutSeconds) {
+            this.drainTimeoutSeconds = drainTimeoutSeconds;
+        }
     }
 
     public static final class Lan {
@@ -228,6 +978,8 @@ public final class AppConfig {
         private Long announceIntervalMs;
         private int broadcastPort;
         private String broadcastAddress;
+        private List<Entry> entries;
+        private boolean listed = true;
 
         public Lan() {
         }
@@ -275,6 +1027,35 @@ public final class AppConfig {
             this.broadcastAddress = broadcastAddress;
         }
 
+        /**
+         * 同时广播的其他条目（MOTD 和端口），每个条目在客户端 LAN 列表中显示为一个服务器
+         */
+        public List<Entry> entries() {
+            return entries != null ? entries : Collections.<Entry>emptyList();
+        }
+
+        public void setEntries(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * 是否在 LAN 列表中显示这个监听端口
+         */
+        public boolean listed() {
+            return listed;
+        }
+
+        public void setListed(boolean listed) {
+            this.listed = listed;
+        }
+
+        /**
+         * 255.255.255.255 表示向每个网卡所在网段的广播地址分别广播
+         */
+        public boolean broadcastAllInterfaces() {
+            return broadcastAddress == null || "255.255.255.255".equals(broadcastAddress.trim());
+        }
+
         public long announceIntervalMillis() {
             if (announceIntervalMs == null || announceIntervalMs <= 0) {
                 return 1000L;
@@ -294,10 +1075,38 @@ public final class AppConfig {
         private void applyDefaults() {
             ensureDefaults();
         }
+
+        public static final class Entry {
+            private final String motd;
+            private final int port;
+
+            public Entry(String motd, int port) {
+                this.motd = motd;
+                this.port = port;
+            }
+
+            public String motd() {
+                return motd;
+            }
+
+            public int port() {
+                return port;
+            }
+        }
     }
 
     public static final class Security {
         private List<String> whitelist;
+        private List<String> blocklist;
+        private List<String> blocklistFiles;
+        private String compiledCache;
+        private double connectionRate;
+        private int connectionBurst = 10;
+        private double subnetConnectionRate;
+        private int subnetConnectionBurst = 50;
+        private int subnetPrefix = 24;
+        private int subnetPrefixV6 = 48;
+        private int maxSessionsPerIp;
 
         public Security() {
         }
@@ -313,6 +1122,110 @@ public final class AppConfig {
         public void setWhitelist(List<String> whitelist) {
             this.whitelist = whitelist;
         }
+
+        /**
+         * 拒绝的地址段；与白名单重叠时按最长前缀决定，前缀相同时拒绝优先
+         */
+        public List<String> blocklist() {
+            return blocklist != null ? blocklist : Collections.<String>emptyList();
+        }
+
+        public void setBlocklist(List<String> blocklist) {
+            this.blocklist = blocklist;
+        }
+
+        /**
+         * 拒绝地址段列表文件，每行一个 CIDR，# 开头为注释
+         */
+        public List<String> blocklistFiles() {
+            return blocklistFiles != null ? blocklistFiles : Collections.<String>emptyList();
+        }
+
+        public void setBlocklistFiles(List<String> blocklistFiles) {
+            this.blocklistFiles = blocklistFiles;
+        }
+
+        /**
+         * 编译后的地址段查找树的缓存文件，来源未变化时启动直接映射该文件；未配置时每次启动重新编译
+         */
+        public String compiledCache() {
+            if (compiledCache == null || compiledCache.trim().isEmpty()) {
+                return null;
+            }
+            return compiledCache.trim();
+        }
+
+        public void setCompiledCache(String compiledCache) {
+            this.compiledCache = compiledCache;
+        }
+
+        /**
+         * 每个 IP 每秒允许的新连接数，0 表示不限制
+         */
+        public double connectionRate() {
+            return Math.max(0.0, connectionRate);
+        }
+
+        public void setConnectionRate(double connectionRate) {
+            this.connectionRate = connectionRate;
+        }
+
+        /**
+         * 每个 IP 允许的突发连接数
+         */
+        public int connectionBurst() {
+            return Math.max(1, connectionBurst);
+        }
+
+        public void setConnectionBurst(int connectionBurst) {
+            this.connectionBurst = connectionBurst;
+        }
+
+        /**
+         * 每个网段每秒允许的新连接数，0 表示不限制；网段大小由 subnetPrefix/subnetPrefixV6 决定
+         */
+        public double subnetConnectionRate() {
+            return Math.max(0.0, subnetConnectionRate);
+        }
+
+        public void setSubnetConnectionRate(double subnetConnectionRate) {
+            this.subnetConnectionRate = subnetConnectionRate;
+        }
+
+        public int subnetConnectionBurst() {
+            return Math.max(1, subnetConnectionBurst);
+        }
+
+        public void setSubnetConnectionBurst(int subnetConnectionBurst) {
+            this.subnetConnectionBurst = subnetConnectionBurst;
+        }
+
+        public int subnetPrefix() {
+            return Math.min(32, Math.max(0, subnetPrefix));
+        }
+
+        public void setSubnetPrefix(int subnetPrefix) {
+            this.subnetPrefix = subnetPrefix;
+        }
+
+        public int subnetPrefixV6() {
+            return Math.min(128, Math.max(0, subnetPrefixV6));
+        }
+
+        public void setSubnetPrefixV6(int subnetPrefixV6) {
+            this.subnetPrefixV6 = subnetPrefixV6;
+        }
+
+        /**
+         * 每个 IP 同时存在的最大会话数，0 表示不限制
+         */
+        public int maxSessionsPerIp() {
+            return Math.max(0, maxSessionsPerIp);
+        }
+
+        public void setMaxSessionsPerIp(int maxSessionsPerIp) {
+            this.maxSessionsPerIp = maxSessionsPerIp;
+        }
     }
 
     public static final class Credentials {
@@ -344,6 +1257,145 @@ public final class AppConfig {
         }
     }
 
+    public static final class Metrics {
+        private boolean enabled;
+        private String bind;
+        private int port;
+
+        public Metrics() {
+        }
+
+        public Metrics(boolean enabled, String bind, int port) {
+            this.enabled = enabled;
+            this.bind = bind;
+            this.port = port;
+        }
+
+        public boolean enabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * 指标接口监听的地址，默认只监听本机
+         */
+        public String bind() {
+            return bind != null && !bind.trim().isEmpty() ? bind.trim() : "127.0.0.1";
+        }
+
+        public void setBind(String bind) {
+            this.bind = bind;
+        }
+
+        public int port() {
+            return port > 0 ? port : 9225;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+    }
+
+    /**
+     * 两个实例之间的多路复用隧道：client 端把所有会话复用到少量到 server 端的长连接上，
+     * server 端部署在远程服务器附近，替 client 连接 remote
+     */
+    public static final class Tunnel {
+        public static final String MODE_OFF = "off";
+        public static final String MODE_CLIENT = "client";
+        public static final String MODE_SERVER = "server";
+
+        private String mode;
+        private String host;
+        private int port;
+        private int listenPort;
+        private int connections = 2;
+        private boolean compression;
+
+        public Tunnel() {
+        }
+
+        public String mode() {
+            if (mode == null || mode.trim().isEmpty()) {
+                return MODE_OFF;
+            }
+            return mode.trim().toLowerCase(Locale.ROOT);
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public boolean client() {
+            return MODE_CLIENT.equals(mode());
+        }
+
+        public boolean server() {
+            return MODE_SERVER.equals(mode());
+        }
+
+        /**
+         * client 模式下 server 端的地址
+         */
+        public String host() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int port() {
+            return port > 0 ? port : 25600;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        /**
+         * server 模式下监听的端口
+         */
+        public int listenPort() {
+            return listenPort > 0 ? listenPort : 25600;
+        }
+
+        public void setListenPort(int listenPort) {
+            this.listenPort = listenPort;
+        }
+
+        /**
+         * client 端保持的隧道连接数
+         */
+        public int connections() {
+            return Math.max(1, connections);
+        }
+
+        public void setConnections(int connections) {
+            this.connections = connections;
+        }
+
+        /**
+         * 是否压缩隧道上的数据（两端协商，以 client 端的设置为准）
+         */
+        public boolean compression() {
+            return compression;
+        }
+
+        public void setCompression(boolean compression) {
+            this.compression = compression;
+        }
+
+        @Override
+        public String toString() {
+            return mode() + (client() ? " -> " + host + ":" + port() + " x" + connections() : "")
+                    + (server() ? " :" + listenPort() : "") + (compression ? ", 压缩" : "");
+        }
+    }
+
     public static final class Logging {
         private String level;
 
@@ -407,6 +1459,19 @@ public final class AppConfig {
         return null;
     }
 
+    private static Double asDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return null;
+    }
+
     private static Boolean asBoolean(Object value) {
         if (value instanceof Boolean) {
             return (Boolean) value;
@@ -0,0 +1,140 @@
+package org.est.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监视配置文件，内容变化后重新解析并通知监听器。
+ * <p>
+ * 监视的是配置文件所在目录（编辑器保存时常常是写临时文件再改名），事件停止 {@value #QUIET_MS} ms 后才读取，
+ * 避免读到写了一半的文件。内容与上次相同、文件为空或解析失败时不通知，继续使用当前配置。
+ */
+public final class ConfigWatcher implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+    private static final long QUIET_MS = 500L;
+
+    /**
+     * 配置重新加载的回调，抛出异常时视为应用失败，下次文件变化时再试
+     */
+    public interface Listener {
+        void onReload(AppConfig previous, AppConfig updated) throws Exception;
+    }
+
+    private final Path configPath;
+    private final Listener listener;
+    private AppConfig current;
+    private byte[] currentBytes;
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(Path configPath, AppConfig current, Listener listener) {
+        this.configPath = configPath.toAbsolutePath().normalize();
+        this.current = Objects.requireNonNull(current);
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    public void start() throws IOException {
+        currentBytes = readQuietly();
+        Path directory = configPath.getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watchLoop, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("正在监视配置文件 {}，修改后自动生效", configPath);
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+                // 等到一段时间内不再有新事件，编辑器的多次写入合并为一次重新加载
+                while (true) {
+                    WatchKey next = watchService.poll(QUIET_MS, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    changed |= drain(next);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("配置文件监视已停止");
+        }
+    }
+
+    /**
+     * 取出一个 WatchKey 上的事件，返回其中是否有配置文件本身的变化
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+            } else if (configPath.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        byte[] bytes = readQuietly();
+        if (bytes == null || bytes.length == 0 || Arrays.equals(bytes, currentBytes)) {
+            return;
+        }
+        AppConfig updated;
+        try {
+            updated = AppConfig.load(configPath);
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            LOGGER.error("配置文件解析失败，继续使用当前配置: {}", cause.getMessage());
+            return;
+        }
+        try {
+            listener.onReload(current, updated);
+            current = updated;
+            currentBytes = bytes;
+        } catch (Exception e) {
+            LOGGER.error("应用新配置失败，继续使用当前配置: {}", e.getMessage(), e);
+        }
+    }
+
+    private byte[] readQuietly() {
+        try {
+            return Files.readAllBytes(configPath);
+        } catch (IOException e) {
+            LOGGER.debug("读取配置文件失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
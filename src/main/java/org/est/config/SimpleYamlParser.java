@@ -0,0 +1,389 @@
+package org.est.config;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 只支持本项目配置文件所用 YAML 子集的解析器，启动时代替 SnakeYAML，省去它的类加载和初始化。
+ * <p>
+ * 支持：缩进的映射和序列（含 "- key: value" 形式的映射列表）、单/双引号和普通标量、行尾注释。
+ * 普通标量按 SnakeYAML 默认的 YAML 1.1 规则识别为 null、布尔、整数、浮点数或字符串，结果与 SnakeYAML 一致。
+ * 遇到其他写法（流式 [] {}、锚点和别名、标签、多行标量、多文档、特殊数字格式等）时抛出
+ * {@link UnsupportedException}，由调用方改用 SnakeYAML 解析。
+ */
+final class SimpleYamlParser {
+    private static final Pattern BOOL = Pattern.compile(
+            "yes|Yes|YES|no|No|NO|true|True|TRUE|false|False|FALSE|on|On|ON|off|Off|OFF");
+    private static final Pattern NULL = Pattern.compile("~|null|Null|NULL|");
+    private static final Pattern SIMPLE_INT = Pattern.compile("[-+]?(?:0|[1-9][0-9]*)");
+    private static final Pattern SIMPLE_FLOAT = Pattern.compile("[-+]?(?:\\.[0-9]+|[0-9]+(?:\\.[0-9]*)?)(?:[eE][-+]?[0-9]+)?");
+    /** SnakeYAML 识别为数字、时间戳、合并键等，但这里不处理的写法 */
+    private static final Pattern OTHER_IMPLICIT = Pattern.compile(
+            "[-+]?0b[0-1_]+|[-+]?0[0-7_]+|[-+]?[0-9][0-9_]*|[-+]?0x[0-9a-fA-F_]+|[-+]?[1-9][0-9_]*(?::[0-5]?[0-9])+"
+                    + "|[-+]?(?:\\.[0-9]+|[0-9_]+(?:\\.[0-9_]*)?)(?:[eE][-+]?[0-9]+)?"
+                    + "|[-+]?[0-9][0-9_]*(?::[0-5]?[0-9])+\\.[0-9_]*|[-+]?\\.(?:inf|Inf|INF)|\\.(?:nan|NaN|NAN)"
+                    + "|[0-9]{4}-[0-9]{1,2}-[0-9]{1,2}.*|<<|=");
+
+    /**
+     * 无法用本解析器处理，需要改用完整的 YAML 解析
+     */
+    static final class UnsupportedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException(String message, int line) {
+            super("第 " + line + " 行: " + message, null, false, false);
+        }
+    }
+
+    private static final class Line {
+        final int number;
+        final int indent;
+        final String content;
+
+        Line(int number, int indent, String content) {
+            this.number = number;
+            this.indent = indent;
+            this.content = content;
+        }
+    }
+
+    private final List<Line> lines;
+    private int pos;
+
+    private SimpleYamlParser(List<Line> lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * 解析整个文档，返回 Map、List、标量或 null（空文档），与 SnakeYAML 的 Yaml.load 结果相同
+     */
+    static Object parse(String text) throws UnsupportedException {
+        SimpleYamlParser parser = new SimpleYamlParser(split(text));
+        if (parser.lines.isEmpty()) {
+            return null;
+        }
+        Object root = parser.parseBlock(parser.lines.get(0).indent);
+        if (parser.pos < parser.lines.size()) {
+            throw parser.unsupported("缩进不一致");
+        }
+        return root;
+    }
+
+    /**
+     * 拆分为有内容的行，去掉空行和整行注释
+     */
+    private static List<Line> split(String text) throws UnsupportedException {
+        if (!text.isEmpty() && text.charAt(0) == '\uFEFF') {
+            text = text.substring(1);
+        }
+        List<Line> lines = new ArrayList<>();
+        int number = 0;
+        int start = 0;
+        while (start <= text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            number++;
+            String raw = text.substring(start, end);
+            start = end + 1;
+            if (raw.endsWith("\r")) {
+                raw = raw.substring(0, raw.length() - 1);
+            }
+            int indent = 0;
+            while (indent < raw.length() && raw.charAt(indent) == ' ') {
+                indent++;
+            }
+            String content = stripTrailing(raw.substring(indent));
+            if (content.isEmpty() || content.charAt(0) == '#') {
+                continue;
+            }
+            if (content.charAt(0) == '\t') {
+                throw new UnsupportedException("缩进中含有制表符", number);
+            }
+            if (indent == 0 && (content.startsWith("---") || content.startsWith("...") || content.charAt(0) == '%')) {
+                throw new UnsupportedException("文档标记或指令", number);
+            }
+            lines.add(new Line(number, indent, content));
+        }
+        return lines;
+    }
+
+    private Object parseBlock(int indent) throws UnsupportedException {
+        return isSequenceItem(lines.get(pos).content) ? parseSequence(indent) : parseMapping(indent);
+    }
+
+    private Map<String, Object> parseMapping(int indent) throws UnsupportedException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (pos < lines.size()) {
+            Line line = lines.get(pos);
+            if (line.indent != indent || isSequenceItem(line.content)) {
+                break;
+            }
+            int colon = entryColon(line.content, line.number);
+            if (colon < 0) {
+                throw unsupported("不是 key: value 形式");
+            }
+            String key = parseKey(line.content.substring(0, colon), line.number);
+            String rest = line.content.substring(colon + 1);
+            pos++;
+            if (isBlank(rest)) {
+                map.put(key, parseNested(indent));
+            } else {
+                map.put(key, parseScalar(rest, line.number));
+            }
+        }
+        if (pos < lines.size() && lines.get(pos).indent > indent) {
+            throw unsupported("多行标量或缩进不一致");
+        }
+        return map;
+    }
+
+    private List<Object> parseSequence(int indent) throws UnsupportedException {
+        List<Object> list = new ArrayList<>();
+        while (pos < lines.size()) {
+            Line line = lines.get(pos);
+            if (line.indent != indent || !isSequenceItem(line.content)) {
+                break;
+            }
+            String rest = line.content.substring(1);
+            String item = rest.stripLeading();
+            pos++;
+            if (isBlank(item)) {
+                list.add(pos < lines.size() && lines.get(pos).indent > indent
+                        ? parseBlock(lines.get(pos).indent) : null);
+            } else if (isSequenceItem(item)) {
+                throw unsupported("嵌套的序列");
+            } else if (entryColon(item, line.number) >= 0) {
+                // "- key: value"：映射的第一项与短横线在同一行，后续项与它对齐
+                int itemIndent = indent + 1 + (rest.length() - item.length());
+                pos--;
+                lines.set(pos, new Line(line.number, itemIndent, item));
+                list.add(parseMapping(itemIndent));
+            } else {
+                list.add(parseScalar(item, line.number));
+            }
+        }
+        if (pos < lines.size() && lines.get(pos).indent > indent) {
+            throw unsupported("缩进不一致");
+        }
+        return list;
+    }
+
+    /**
+     * key: 之后没有值时，值是下一行开始的缩进更深的块，或与 key 对齐的序列
+     */
+    private Object parseNested(int parentIndent) throws UnsupportedException {
+        if (pos >= lines.size()) {
+            return null;
+        }
+        Line next = lines.get(pos);
+        if (next.indent > parentIndent) {
+            return parseBlock(next.indent);
+        }
+        if (next.indent == parentIndent && isSequenceItem(next.content)) {
+            return parseSequence(parentIndent);
+        }
+        return null;
+    }
+
+    private static boolean isSequenceItem(String content) {
+        return content.charAt(0) == '-' && (content.length() == 1 || content.charAt(1) == ' ');
+    }
+
+    /**
+     * 映射项中分隔键和值的冒号位置（其后为空白或行尾），不是映射项时返回 -1
+     */
+    private static int entryColon(String content, int number) throws UnsupportedException {
+        int from = 0;
+        char first = content.charAt(0);
+        if (first == '"' || first == '\'') {
+            from = quotedEnd(content, 0, number);
+        }
+        for (int i = from; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '#' && i > 0 && content.charAt(i - 1) == ' ') {
+                return -1;
+            }
+            if (c == ':' && (i + 1 == content.length() || content.charAt(i + 1) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String parseKey(String text, int number) throws UnsupportedException {
+        Object key = parseScalar(text, number);
+        if (!(key instanceof String) || ((String) key).isEmpty()) {
+            // SnakeYAML 会得到非字符串的键，交给它处理
+            throw new UnsupportedException("非字符串的键: " + text.trim(), number);
+        }
+        return (String) key;
+    }
+
+    /**
+     * 解析一个标量及其后可选的注释
+     */
+    private static Object parseScalar(String text, int number) throws UnsupportedException {
+        String value = text.strip();
+        if (value.isEmpty()) {
+            return null;
+        }
+        char first = value.charAt(0);
+        if (first == '"' || first == '\'') {
+            int end = quotedEnd(value, 0, number);
+            String tail = value.substring(end).strip();
+            if (!tail.isEmpty() && tail.charAt(0) != '#') {
+                throw new UnsupportedException("引号之后还有内容", number);
+            }
+            return first == '"' ? unescapeDouble(value.substring(1, end - 1), number)
+                    : value.substring(1, end - 1).replace("''", "'");
+        }
+        int comment = value.indexOf(" #");
+        if (comment >= 0) {
+            value = value.substring(0, comment).strip();
+        }
+        if ("[{&*!|>%@`".indexOf(first) >= 0 || value.contains(": ") || value.endsWith(":")
+                || value.startsWith("? ") || value.startsWith("- ") || value.equals("-") || value.equals("?")) {
+            throw new UnsupportedException("不支持的写法: " + value, number);
+        }
+        return resolve(value, number);
+    }
+
+    /**
+     * 按 YAML 1.1 的隐式类型规则识别普通标量
+     */
+    private static Object resolve(String value, int number) throws UnsupportedException {
+        if (NULL.matcher(value).matches()) {
+            return null;
+        }
+        if (BOOL.matcher(value).matches()) {
+            char c = value.charAt(0);
+            return c == 'y' || c == 'Y' || c == 't' || c == 'T' || value.equalsIgnoreCase("on");
+        }
+        if (SIMPLE_INT.matcher(value).matches()) {
+            BigInteger integer = new BigInteger(value.charAt(0) == '+' ? value.substring(1) : value);
+            if (integer.bitLength() < 32) {
+                return integer.intValue();
+            }
+            if (integer.bitLength() < 64) {
+                return integer.longValue();
+            }
+            return integer;
+        }
+        if (SIMPLE_FLOAT.matcher(value).matches() && value.indexOf('.') >= 0) {
+            return Double.valueOf(value);
+        }
+        if (OTHER_IMPLICIT.matcher(value).matches()) {
+            throw new UnsupportedException("特殊格式的标量: " + value, number);
+        }
+        return value;
+    }
+
+    /**
+     * 从 start 处的引号开始，返回闭合引号之后的位置；引号未在本行闭合（多行标量）时不支持
+     */
+    private static int quotedEnd(String text, int start, int number) throws UnsupportedException {
+        char quote = text.charAt(start);
+        int i = start + 1;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (quote == '"' && c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                if (quote == '\'' && i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        throw new UnsupportedException("引号未闭合", number);
+    }
+
+    private static String unescapeDouble(String text, int number) throws UnsupportedException {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char e = text.charAt(++i);
+            switch (e) {
+                case '\\':
+                case '"':
+                    out.append(e);
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case '0':
+                    out.append('\0');
+                    break;
+                case 'x':
+                    out.append((char) Integer.parseInt(hex(text, i + 1, 2, number), 16));
+                    i += 2;
+                    break;
+                case 'u':
+                    out.append((char) Integer.parseInt(hex(text, i + 1, 4, number), 16));
+                    i += 4;
+                    break;
+                case 'U':
+                    out.appendCodePoint(Integer.parseInt(hex(text, i + 1, 8, number), 16));
+                    i += 8;
+                    break;
+                default:
+                    // 包括 YAML 1.2 才有的 "\/"：SnakeYAML 按 1.1 解析会报错，交给它报告
+                    throw new UnsupportedException("转义字符 \\" + e, number);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String hex(String text, int start, int length, int number) throws UnsupportedException {
+        if (start + length > text.length()) {
+            throw new UnsupportedException("转义字符不完整", number);
+        }
+        String digits = text.substring(start, start + length);
+        for (int i = 0; i < digits.length(); i++) {
+            if (Character.digit(digits.charAt(i), 16) < 0) {
+                throw new UnsupportedException("转义字符不完整", number);
+            }
+        }
+        return digits;
+    }
+
+    private static boolean isBlank(String rest) {
+        String value = rest.strip();
+        return value.isEmpty() || value.charAt(0) == '#';
+    }
+
+    private static String stripTrailing(String text) {
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == ' ' || text.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private UnsupportedException unsupported(String message) {
+        return new UnsupportedException(message, lines.get(Math.min(pos, lines.size() - 1)).number);
+    }
+}
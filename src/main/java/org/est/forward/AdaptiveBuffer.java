@@ -0,0 +1,77 @@
+package org.est.forward;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 单个转发方向的缓冲区，按观察到的读取大小在 {@link BufferPool} 的档位之间升降：
+ * 连续读满说明在传区块等大块数据，升一档；长期只有心跳这类小包，降一档。
+ * 只在缓冲区没有待写数据时换挡。
+ */
+final class AdaptiveBuffer {
+    private static final int GROW_AFTER = 2;
+    private static final int SHRINK_AFTER = 64;
+
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private int sizeClass;
+    private int fullReads;
+    private int smallReads;
+
+    AdaptiveBuffer(BufferPool pool) {
+        this.pool = pool;
+        this.sizeClass = BufferPool.SMALL;
+        this.buffer = pool.acquire(sizeClass);
+    }
+
+    /**
+     * 当前缓冲区，处于写入（fill）模式
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * 记录一次读取的字节数，须在 flip 之前调用
+     */
+    void record(int bytesRead) {
+        if (!buffer.hasRemaining()) {
+            fullReads++;
+            smallReads = 0;
+        } else if (sizeClass > BufferPool.SMALL && bytesRead <= BufferPool.capacity(sizeClass - 1) / 2) {
+            smallReads++;
+            fullReads = 0;
+        } else {
+            fullReads = 0;
+            smallReads = 0;
+        }
+    }
+
+    /**
+     * 缓冲区已清空时按统计结果换挡
+     */
+    void adapt() {
+        if (buffer.position() != 0) {
+            return;
+        }
+        if (fullReads >= GROW_AFTER && sizeClass < BufferPool.largestClass()) {
+            swap(sizeClass + 1);
+        } else if (smallReads >= SHRINK_AFTER && sizeClass > BufferPool.SMALL) {
+            swap(sizeClass - 1);
+        }
+    }
+
+    void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void swap(int newClass) {
+        pool.release(buffer);
+        buffer = pool.acquire(newClass);
+        sizeClass = newClass;
+        fullReads = 0;
+        smallReads = 0;
+    }
+}
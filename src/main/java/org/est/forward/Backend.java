@@ -0,0 +1,83 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个后端的实时状态：当前活跃会话数和累计转发字节，供负载均衡和统计使用。
+ * 重新加载配置时同一 host:port 的后端沿用原来的计数，旧快照上仍在进行的会话结束时也计入同一份计数。
+ */
+public final class Backend {
+    private final AppConfig.Remote remote;
+    private final int weight;
+    private final AtomicInteger activeSessions;
+    private final LongAdder totalSessions;
+    private final LongAdder upstreamBytes;
+    private final LongAdder downstreamBytes;
+
+    Backend(AppConfig.Remote remote) {
+        this(remote, null);
+    }
+
+    /**
+     * @param previous 上一份配置中 host:port 相同的后端，没有时为 null；权重等配置取自新的 remote
+     */
+    Backend(AppConfig.Remote remote, Backend previous) {
+        this.remote = remote;
+        this.weight = remote.weight();
+        this.activeSessions = previous != null ? previous.activeSessions : new AtomicInteger();
+        this.totalSessions = previous != null ? previous.totalSessions : new LongAdder();
+        this.upstreamBytes = previous != null ? previous.upstreamBytes : new LongAdder();
+        this.downstreamBytes = previous != null ? previous.downstreamBytes : new LongAdder();
+    }
+
+    public AppConfig.Remote remote() {
+        return remote;
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    /**
+     * 重新加载配置时用来对应新旧后端的 host:port
+     */
+    String key() {
+        return remote.host() + ":" + remote.port();
+    }
+
+    void sessionOpened() {
+        activeSessions.incrementAndGet();
+        totalSessions.increment();
+    }
+
+    void sessionClosed(long upstream, long downstream) {
+        activeSessions.decrementAndGet();
+        upstreamBytes.add(upstream);
+        downstreamBytes.add(downstream);
+    }
+
+    public int activeSessions() {
+        return activeSessions.get();
+    }
+
+    public long totalSessions() {
+        return totalSessions.sum();
+    }
+
+    public long upstreamBytes() {
+        return upstreamBytes.sum();
+    }
+
+    public long downstreamBytes() {
+        return downstreamBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return key() + "{活跃=" + activeSessions() + ", 累计=" + totalSessions()
+                + ", 上行=" + upstreamBytes() + ", 下行=" + downstreamBytes() + "}";
+    }
+}
@@ -0,0 +1,152 @@
+package org.est.forward;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * classic 引擎的单向转发：阻塞地把 in 的数据搬到 out。
+ * <p>
+ * 缓冲区来自共享的堆外缓冲池，写 socket 时不需要再拷贝到本地内存。coalesce 策略下，
+ * 读满缓冲区后继续读入输入中已经到达的数据，必要时追加缓冲区，最后一次聚集写出；
+ * 只有这种大块传输才会在 maxDelay 内短暂等待后续数据，没读满的小包立即写出。
+ * in 读到 EOF 后关闭 out 的写方向，让另一端感知到半关闭。
+ * <p>
+ * 开启带宽整形时每批数据写出后扣除令牌，欠账达到 1 毫秒以上才在下一次读取前挂起一次，
+ * 期间内核接收缓冲区填满，TCP 流控让发送方放慢。
+ */
+final class BlockingPipe {
+    private static final int MAX_BATCH = 4;
+    private static final long POLL_NANOS = 50_000L;
+
+    private final SocketChannel in;
+    private final SocketChannel out;
+    private final FlushPolicy policy;
+    private final TrafficShaper.Lease shaping;
+    private final boolean upstream;
+    private final BufferPool pool = BufferPool.shared();
+    private final RelayStats stats = RelayStats.shared();
+    private final ByteBuffer[] batch;
+
+    /**
+     * @param shaping  会话的限速句柄，未开启限速时为 null
+     * @param upstream true 表示客户端到远程方向，用于按方向统计字节数
+     */
+    BlockingPipe(SocketChannel in, SocketChannel out, FlushPolicy policy, TrafficShaper.Lease shaping,
+                 boolean upstream) {
+        this.in = in;
+        this.out = out;
+        this.policy = policy;
+        this.shaping = shaping;
+        this.upstream = upstream;
+        this.batch = new ByteBuffer[policy.coalesce() ? MAX_BATCH : 1];
+    }
+
+    /**
+     * @return 转发的字节数
+     */
+    long run() {
+        AdaptiveBuffer adaptive = new AdaptiveBuffer(pool);
+        long totalBytes = 0;
+        boolean corked = false;
+        try {
+            InputStream probe = policy.coalesce() ? in.socket().getInputStream() : null;
+            boolean eof = false;
+            int len;
+            while (!eof && (len = in.read(adaptive.buffer())) >= 0) {
+                stats.recordRead(len, upstream);
+                adaptive.record(len);
+                batch[0] = adaptive.buffer();
+                int count = 1;
+                long batchBytes = len;
+                boolean bulk = !batch[0].hasRemaining();
+                if (probe != null) {
+                    long deadline = System.nanoTime() + policy.maxDelayNanos();
+                    while (true) {
+                        ByteBuffer tail = batch[count - 1];
+                        if (!tail.hasRemaining()) {
+                            if (count == batch.length) {
+                                break;
+                            }
+                            tail = pool.acquire(BufferPool.LARGE);
+                            batch[count++] = tail;
+                        } else if (!bulk) {
+                            // 上一次读取没有读满，输入里已经没有更多数据，小包不等待
+                            break;
+                        }
+                        stats.recordProbe();
+                        if (probe.available() > 0) {
+                            int n = in.read(tail);
+                            stats.recordRead(n, upstream);
+                            if (n < 0) {
+                                eof = true;
+                                break;
+                            }
+                            batchBytes += n;
+                            continue;
+                        }
+                        if (System.nanoTime() >= deadline) {
+                            break;
+                        }
+                        LockSupport.parkNanos(POLL_NANOS);
+                    }
+                }
+                if (policy.cork() && bulk != corked) {
+                    out.socket().setTcpNoDelay(!bulk);
+                    corked = bulk;
+                }
+                writeBatch(count);
+                adaptive.adapt();
+                totalBytes += batchBytes;
+                if (shaping != null && batchBytes > 0) {
+                    pause(shaping.charge((int) batchBytes));
+                }
+            }
+            if (corked) {
+                out.socket().setTcpNoDelay(true);
+            }
+            out.shutdownOutput();
+        } catch (IOException ignored) {
+        } finally {
+            for (int i = 1; i < batch.length; i++) {
+                pool.release(batch[i]);
+                batch[i] = null;
+            }
+            adaptive.release();
+        }
+        return totalBytes;
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        // 被中断（关闭线程池）时立即返回，随后的读取会因通道被关闭而结束
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * 写出 batch[0..count)。按剩余字节总数判断是否写完：读满缓冲区后追加的尾部缓冲区
+     * 在等待期内可能一个字节也没有读到
+     */
+    private void writeBatch(int count) throws IOException {
+        long remaining = 0;
+        for (int i = 0; i < count; i++) {
+            batch[i].flip();
+            remaining += batch[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= count == 1 ? out.write(batch[0]) : out.write(batch, 0, count);
+            stats.recordWrite();
+        }
+        batch[0].clear();
+        for (int i = 1; i < count; i++) {
+            pool.release(batch[i]);
+            batch[i] = null;
+        }
+    }
+}
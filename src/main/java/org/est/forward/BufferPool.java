@@ -0,0 +1,167 @@
+package org.est.forward;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分级的堆外缓冲池：2 KB / 16 KB / 64 KB 三档 direct ByteBuffer。
+ * <p>
+ * 平台线程优先使用线程本地缓存，取还都不需要同步；虚拟线程随任务创建和销毁，
+ * 线程本地缓存无法复用，因此直接走共享队列。共享队列每档最多保留 {@link #RETAINED_BYTES_PER_CLASS} 字节。
+ */
+public final class BufferPool {
+    public static final int SMALL = 0;
+    public static final int MEDIUM = 1;
+    public static final int LARGE = 2;
+
+    private static final int[] CAPACITIES = {2 * 1024, 16 * 1024, 64 * 1024};
+    private static final int THREAD_CACHE_DEPTH = 8;
+    private static final int RETAINED_BYTES_PER_CLASS = 4 * 1024 * 1024;
+    private static final BufferPool SHARED = new BufferPool();
+
+    private final SharedStack[] shared = new SharedStack[CAPACITIES.length];
+    private final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ThreadCache::new);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong bytesOutstanding = new AtomicLong();
+
+    private BufferPool() {
+        for (int i = 0; i < CAPACITIES.length; i++) {
+            shared[i] = new SharedStack(RETAINED_BYTES_PER_CLASS / CAPACITIES[i]);
+        }
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    public static int capacity(int sizeClass) {
+        return CAPACITIES[sizeClass];
+    }
+
+    public static int largestClass() {
+        return CAPACITIES.length - 1;
+    }
+
+    /**
+     * 取出指定档位的缓冲区，返回时已 clear
+     */
+    public ByteBuffer acquire(int sizeClass) {
+        ByteBuffer buffer = null;
+        if (!Thread.currentThread().isVirtual()) {
+            buffer = threadCache.get().poll(sizeClass);
+        }
+        if (buffer == null) {
+            buffer = shared[sizeClass].poll();
+        }
+        if (buffer != null) {
+            hits.increment();
+            buffer.clear();
+        } else {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect(CAPACITIES[sizeClass]);
+        }
+        bytesOutstanding.addAndGet(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区；容量不属于任何档位的缓冲区直接丢弃
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int sizeClass = classOf(buffer.capacity());
+        if (sizeClass < 0 || !buffer.isDirect()) {
+            return;
+        }
+        bytesOutstanding.addAndGet(-buffer.capacity());
+        if (!Thread.currentThread().isVirtual() && threadCache.get().offer(sizeClass, buffer)) {
+            return;
+        }
+        shared[sizeClass].offer(buffer);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long bytesOutstanding() {
+        return bytesOutstanding.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{命中=" + hits() + ", 未命中=" + misses() + ", 借出字节=" + bytesOutstanding() + "}";
+    }
+
+    private static int classOf(int capacity) {
+        for (int i = 0; i < CAPACITIES.length; i++) {
+            if (CAPACITIES[i] == capacity) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class ThreadCache {
+        private final ByteBuffer[][] stacks = new ByteBuffer[CAPACITIES.length][THREAD_CACHE_DEPTH];
+        private final int[] sizes = new int[CAPACITIES.length];
+
+        ByteBuffer poll(int sizeClass) {
+            int size = sizes[sizeClass];
+            if (size == 0) {
+                return null;
+            }
+            ByteBuffer buffer = stacks[sizeClass][--size];
+            stacks[sizeClass][size] = null;
+            sizes[sizeClass] = size;
+            return buffer;
+        }
+
+        boolean offer(int sizeClass, ByteBuffer buffer) {
+            int size = sizes[sizeClass];
+            if (size == THREAD_CACHE_DEPTH) {
+                return false;
+            }
+            stacks[sizeClass][size] = buffer;
+            sizes[sizeClass] = size + 1;
+            return true;
+        }
+    }
+
+    private static final class SharedStack {
+        private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxRetained;
+
+        SharedStack(int maxRetained) {
+            this.maxRetained = maxRetained;
+        }
+
+        ByteBuffer poll() {
+            ByteBuffer buffer = queue.poll();
+            if (buffer != null) {
+                size.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        void offer(ByteBuffer buffer) {
+            if (size.incrementAndGet() > maxRetained) {
+                size.decrementAndGet();
+                return;
+            }
+            queue.offer(buffer);
+        }
+    }
+}
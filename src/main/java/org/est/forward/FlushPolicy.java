@@ -0,0 +1,49 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 转发写出策略：是否合并读取、大块传输时最多为等待数据增加的延迟、是否在大块传输时“塞住”连接。
+ * <p>
+ * Java 没有暴露 TCP_CORK，塞住通过暂时关闭 TCP_NODELAY 实现：Nagle 算法会合并未满的分段，
+ * 突发结束后重新开启 TCP_NODELAY，内核会立即发出剩余数据。
+ */
+final class FlushPolicy {
+    private final boolean coalesce;
+    private final long maxDelayNanos;
+    private final boolean cork;
+
+    private FlushPolicy(boolean coalesce, long maxDelayNanos, boolean cork) {
+        this.coalesce = coalesce;
+        this.maxDelayNanos = maxDelayNanos;
+        this.cork = cork;
+    }
+
+    static FlushPolicy from(AppConfig.Local localConfig) {
+        return new FlushPolicy(
+                AppConfig.Local.FLUSH_COALESCE.equals(localConfig.flushPolicy()),
+                TimeUnit.MICROSECONDS.toNanos(localConfig.flushMaxDelayMicros()),
+                localConfig.corkBulk());
+    }
+
+    boolean coalesce() {
+        return coalesce;
+    }
+
+    long maxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    boolean cork() {
+        return cork;
+    }
+
+    @Override
+    public String toString() {
+        return (coalesce ? AppConfig.Local.FLUSH_COALESCE : AppConfig.Local.FLUSH_IMMEDIATE)
+                + (coalesce ? ", 最大等待 " + TimeUnit.NANOSECONDS.toMicros(maxDelayNanos) + "us" : "")
+                + (cork ? ", 大块传输时塞住连接" : "");
+    }
+}
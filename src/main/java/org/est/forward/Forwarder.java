@@ -1,66 +1,216 @@
 package org.est.forward;
 
 import org.est.config.AppConfig;
+import org.est.metrics.Counter;
+import org.est.metrics.Gauge;
+import org.est.metrics.Histogram;
+import org.est.metrics.MetricRegistry;
+import org.est.net.CachedResolver;
+import org.est.net.ConnectionLimiter;
 import org.est.net.IpWhitelist;
+import org.est.tunnel.TunnelClient;
+import org.est.tunnel.TunnelStream;
+import org.est.util.HandoffControl;
 import org.est.util.ProcessKiller;
 import org.est.util.ResourceManager;
+import org.est.util.SampledLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.BindException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class Forwarder implements AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger(Forwarder.class);
-    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration HANDSHAKE_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration HANDOFF_BIND_WAIT = Duration.ofSeconds(2);
+    private static final Duration KILLED_BIND_WAIT = Duration.ofSeconds(3);
+    private static final Duration CONFLICT_BIND_WAIT = Duration.ofSeconds(10);
+    private static final long DRAIN_POLL_MS = 200L;
+    private static final long DRAIN_REPORT_NANOS = TimeUnit.SECONDS.toNanos(30);
 
-    private final AppConfig.Remote remoteConfig;
-    private final AppConfig.Local localConfig;
-    private final IpWhitelist whitelist;
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // 指标在类加载时注册一次，热路径上只做 LongAdder 累加
+    private static final MetricRegistry METRICS = MetricRegistry.shared();
+    private static final Counter ACCEPTED = METRICS.counter("connections_accepted_total", "通过白名单和限流检查的连接数");
+    private static final Counter REJECTED_WHITELIST = rejected("whitelist");
+    private static final Counter REJECTED_IP_RATE = rejected("ip_rate");
+    private static final Counter REJECTED_SUBNET_RATE = rejected("subnet_rate");
+    private static final Counter REJECTED_CONCURRENT = rejected("concurrent");
+    private static final Counter REJECTED_CONNECT = rejected("connect_failure");
+    private static final Counter REJECTED_LISTENER_FULL = rejected("listener_full");
+    private static final Gauge ACTIVE_SESSIONS = METRICS.gauge("sessions_active", "正在转发的会话数");
+    private static final Histogram CONNECT_LATENCY = METRICS.histogram("upstream_connect_seconds",
+            "取得上游连接的耗时（含从连接池取出）", MetricRegistry.LATENCY_BUCKETS);
+    private static final Histogram SESSION_DURATION = METRICS.histogram("session_duration_seconds",
+            "转发会话从接受到关闭的时长", MetricRegistry.DURATION_BUCKETS);
+
+    static {
+        RelayStats stats = RelayStats.shared();
+        METRICS.register("bytes_total", "转发的字节数", "counter", "direction=\"upstream\"", stats::upstreamBytes);
+        METRICS.register("bytes_total", "转发的字节数", "counter", "direction=\"downstream\"", stats::downstreamBytes);
+    }
+
+    /** 线程池和事件循环，多个监听端口时由所有转发器共用 */
+    private final RelayEngine engine;
+    private final boolean ownsEngine;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final SampledLog rejectLog = new SampledLog(10, TimeUnit.SECONDS);
     private final AtomicBoolean running = new AtomicBoolean(false);
-    private ServerSocket serverSocket;
+    /** 已接受、尚未结束的会话数（含还在握手、连接后端的），交接时据此等待会话结束 */
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private volatile ServerSocket serverSocket;
+    /** 交接控制通道所用的端口，多个监听端口时统一使用第一个；0 表示使用本转发器的监听端口 */
+    private int handoffPort;
+    private long generation;
 
     public Forwarder(AppConfig.Remote remoteConfig,
                      AppConfig.Local localConfig,
                      IpWhitelist whitelist) {
-        this.remoteConfig = Objects.requireNonNull(remoteConfig);
-        this.localConfig = Objects.requireNonNull(localConfig);
-        this.whitelist = Objects.requireNonNull(whitelist);
+        this(remoteConfig, Collections.<String, AppConfig.Remote>emptyMap(), localConfig, whitelist);
     }
 
+    public Forwarder(AppConfig.Remote remoteConfig,
+                     Map<String, AppConfig.Remote> routes,
+                     AppConfig.Local localConfig,
+                     IpWhitelist whitelist) {
+        this(remoteConfig, routes, localConfig, whitelist, ConnectionLimiter.disabled());
+    }
+
+    public Forwarder(AppConfig.Remote remoteConfig,
+                     Map<String, AppConfig.Remote> routes,
+                     AppConfig.Local localConfig,
+                     IpWhitelist whitelist,
+                     ConnectionLimiter limiter) {
+        this(remoteConfig, routes, localConfig, whitelist, limiter, new RelayEngine(localConfig), true);
+    }
+
+    /**
+     * 使用共用的线程资源，关闭转发器时不关闭 engine
+     */
+    public Forwarder(AppConfig.Remote remoteConfig,
+                     Map<String, AppConfig.Remote> routes,
+                     AppConfig.Local localConfig,
+                     IpWhitelist whitelist,
+                     ConnectionLimiter limiter,
+                     RelayEngine engine) {
+        this(remoteConfig, routes, localConfig, whitelist, limiter, engine, false);
+    }
+
+    private Forwarder(AppConfig.Remote remoteConfig,
+                      Map<String, AppConfig.Remote> routes,
+                      AppConfig.Local localConfig,
+                      IpWhitelist whitelist,
+                      ConnectionLimiter limiter,
+                      RelayEngine engine,
+                      boolean ownsEngine) {
+        this.engine = Objects.requireNonNull(engine);
+        this.ownsEngine = ownsEngine;
+        this.snapshot.set(compile(Objects.requireNonNull(remoteConfig), Objects.requireNonNull(routes),
+                Objects.requireNonNull(localConfig), Objects.requireNonNull(whitelist),
+                Objects.requireNonNull(limiter),
+                TrafficShaper.from(localConfig, engine.totalBandwidth(localConfig.bandwidthTotal())), null));
+    }
+
+    /**
+     * 由一份配置生成快照，连接池在这里创建但尚未启动；隧道模式下不直接连接远程服务器，不创建连接池和状态缓存。
+     * 重新加载时传入上一份路由表，后端的活跃会话数和统计沿用下来
+     */
+    private Snapshot compile(AppConfig.Remote remote, Map<String, AppConfig.Remote> routes,
+                             AppConfig.Local local, IpWhitelist whitelist, ConnectionLimiter limiter,
+                             TrafficShaper shaper, RouteTable previousRoutes) {
+        RouteTable routeTable = RouteTable.from(remote, routes, previousRoutes);
+        Map<AppConfig.Remote, UpstreamPool> pools = new IdentityHashMap<>();
+        Map<LoadBalancer, StatusCache> statusCaches = new IdentityHashMap<>();
+        boolean direct = engine.tunnel() == null;
+        for (LoadBalancer group : routeTable.groups()) {
+            if (!direct) {
+                continue;
+            }
+            for (Backend backend : group.backends()) {
+                AppConfig.Remote target = backend.remote();
+                if (target.poolSize() > 0 && !pools.containsKey(target)) {
+                    pools.put(target, new UpstreamPool(target, engine.poolScheduler()));
+                }
+            }
+            if (local.statusCacheMs() > 0) {
+                statusCaches.put(group, new StatusCache(group, local.statusCacheMs(), engine.executor()));
+            }
+        }
+        return new Snapshot(++generation, remote, local, routeTable, whitelist, limiter, FlushPolicy.from(local),
+                shaper, pools, statusCaches);
+    }
+
+    /**
+     * 多个监听端口时由 Main 设置为第一个监听端口，端口冲突时通过它请求旧实例交出所有端口
+     */
+    public void setHandoffPort(int handoffPort) {
+        this.handoffPort = handoffPort;
+    }
+
+    /**
+     * 绑定监听端口并开始接受连接。
+     * <p>
+     * 交接模式下端口以 SO_REUSEPORT 绑定，与旧实例同时监听；通知旧实例停止接受连接由调用方在
+     * 所有监听端口都绑定之后进行，避免旧实例先关闭了其他端口。绑定失败（系统不支持 SO_REUSEPORT）时
+     * 这里直接请求交接，再等待旧实例释放端口。
+     */
     public void start() throws IOException {
         if (!running.compareAndSet(false, true)) {
             throw new IllegalStateException("转发器已经在运行中");
         }
 
-        int port = localConfig.listenPort();
+        Snapshot current = snapshot.get();
+        int port = current.local.listenPort();
+        String bindAddress = current.local.bindAddress();
         
         // 清理可能存在的旧资源
         cleanupResources("启动前");
 
-        // 步骤 1: 尝试直接绑定端口
         try {
-            this.serverSocket = ResourceManager.createServerSocket(port);
+            engine.start();
+        } catch (IOException e) {
+            running.set(false);
+            throw e;
+        }
+
+        // 步骤 0: 启动方已经传入了监听套接字（套接字激活），直接使用
+        ServerSocket inherited = ResourceManager.inheritedServerSocket(port);
+        if (inherited != null) {
+            this.serverSocket = inherited;
+            startAcceptLoop();
+            LOGGER.info("TCP转发已启动，监听端口 {} -> {}", port, current.remote);
+            return;
+        }
+
+        // 步骤 1: 尝试直接绑定端口；交接模式下与旧实例同时监听（SO_REUSEPORT）
+        boolean handoff = current.local.handoff();
+        long conflictStart;
+        try {
+            this.serverSocket = ResourceManager.createServerSocket(bindAddress, port, handoff);
             startAcceptLoop();
-            LOGGER.info("TCP转发已启动，监听端口 {} -> {}:{}", port, remoteConfig.host(), remoteConfig.port());
+            LOGGER.info("TCP转发已启动，监听端口 {} -> {}", port, current.remote);
             return;
         } catch (BindException e) {
             LOGGER.info("端口 {} 被占用，开始处理...", port);
+            conflictStart = System.nanoTime();
             // 继续到步骤 2
         } catch (IOException e) {
             running.set(false);
@@ -68,13 +218,27 @@ public final class Forwarder implements AutoCloseable {
             throw e;
         }
 
+        // 不支持 SO_REUSEPORT 的系统上旧实例会先关闭监听端口，这里紧接着绑定；
+        // 旧实例也可能已经因为本进程另一个监听端口的请求而正在交出端口
+        if (handoff) {
+            HandoffControl.requestHandoff(handoffPort > 0 ? handoffPort : port);
+            ServerSocket handedOver = ResourceManager.bindWithBackoff(bindAddress, port, HANDOFF_BIND_WAIT, true);
+            if (handedOver != null) {
+                this.serverSocket = handedOver;
+                startAcceptLoop();
+                LOGGER.info("TCP转发已启动，监听端口 {} -> {}（接管端口耗时 {} ms）", port, current.remote,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - conflictStart));
+                return;
+            }
+        }
+
         // 步骤 2: 尝试终止同名进程
         LOGGER.info("尝试自动终止占用端口 {} 的同名进程...", port);
         boolean killed = ProcessKiller.killProcessOnPort(port);
         
-        // 步骤 3: 等待端口释放并重试
-        int maxRetries = killed ? 3 : 5; // 如果杀死了进程，少重试几次
-        long retryDelay = killed ? 1000 : 2000; // 如果没杀死进程，等待更久（可能是 TIME_WAIT）
+        // 步骤 3: 等待端口释放并重试，间隔逐渐加长
+        // 进程退出后端口通常立即可用；没杀死进程时等待更久（可能是 TIME_WAIT）
+        Duration maxWait = killed ? KILLED_BIND_WAIT : CONFLICT_BIND_WAIT;
         
         if (killed) {
             LOGGER.info("同名进程已终止，等待端口释放...");
@@ -82,12 +246,13 @@ public final class Forwarder implements AutoCloseable {
             LOGGER.info("未检测到占用端口的进程，可能是 TIME_WAIT 状态，等待端口释放...");
         }
 
-        ServerSocket retrySocket = ResourceManager.bindWithRetry(port, maxRetries, retryDelay);
+        ServerSocket retrySocket = ResourceManager.bindWithBackoff(bindAddress, port, maxWait, handoff);
         
         if (retrySocket != null) {
             this.serverSocket = retrySocket;
             startAcceptLoop();
-            LOGGER.info("TCP转发已启动，监听端口 {} -> {}:{}", port, remoteConfig.host(), remoteConfig.port());
+            LOGGER.info("TCP转发已启动，监听端口 {} -> {}（处理端口冲突耗时 {} ms）", port, current.remote,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - conflictStart));
             return;
         }
 
@@ -110,7 +275,76 @@ public final class Forwarder implements AutoCloseable {
      * 启动接受连接的循环
      */
     private void startAcceptLoop() {
-        executor.submit(this::acceptLoop);
+        activate(snapshot.get());
+        ServerSocket listener = serverSocket;
+        engine.executor().submit(() -> acceptLoop(listener));
+    }
+
+    /**
+     * 预解析快照中的所有后端并启动连接池；隧道模式下由 server 端解析
+     */
+    private void activate(Snapshot current) {
+        for (LoadBalancer group : engine.tunnel() == null ? current.routeTable.groups()
+                : Collections.<LoadBalancer>emptyList()) {
+            for (Backend backend : group.backends()) {
+                CachedResolver.shared().prefetch(backend.remote());
+            }
+        }
+        current.pools.values().forEach(UpstreamPool::start);
+    }
+
+    /**
+     * 应用重新加载的配置：生成新快照并原子地替换，已建立的会话继续使用旧快照直到结束，新连接使用新快照。
+     * 监听端口变化时先绑定新端口、启动新的接受循环，再关闭旧端口；新端口绑定失败时放弃本次重新加载。
+     * 转发引擎、I/O 线程数和虚拟线程只在启动时生效。
+     */
+    public synchronized void reload(AppConfig config) {
+        Snapshot previous = snapshot.get();
+        AppConfig.Local local = config.local();
+        AppConfig.Local startupConfig = engine.config();
+        if (local.nioEngine() != startupConfig.nioEngine() || local.ioThreads() != startupConfig.ioThreads()
+                || local.virtualThreads() != startupConfig.virtualThreads()) {
+            LOGGER.warn("engine、ioThreads、virtualThreads 的修改需要重启后生效");
+        }
+        IpWhitelist whitelist = IpWhitelist.from(config.security());
+        ConnectionLimiter limiter = previous.limiter.matches(config.security())
+                ? previous.limiter : ConnectionLimiter.from(config.security());
+        TrafficShaper.Bucket totalBandwidth = engine.totalBandwidth(local.bandwidthTotal());
+        TrafficShaper shaper = previous.shaper.matches(local, totalBandwidth)
+                ? previous.shaper : TrafficShaper.from(local, totalBandwidth);
+        Snapshot next = compile(config.remote(), config.routes(), local, whitelist, limiter, shaper,
+                previous.routeTable);
+
+        ServerSocket oldListener = serverSocket;
+        ServerSocket newListener = null;
+        boolean rebind = running.get() && (local.listenPort() != previous.local.listenPort()
+                || !Objects.equals(local.bindAddress(), previous.local.bindAddress()));
+        if (rebind) {
+            try {
+                newListener = ResourceManager.createServerSocket(local.bindAddress(), local.listenPort(),
+                        local.handoff());
+            } catch (IOException e) {
+                LOGGER.error("配置重新加载失败：无法绑定新端口 {} - {}，继续使用端口 {}",
+                        local.listenPort(), e.getMessage(), previous.local.listenPort());
+                next.pools.values().forEach(UpstreamPool::close);
+                return;
+            }
+        }
+
+        snapshot.set(next);
+        if (running.get()) {
+            activate(next);
+        }
+        if (newListener != null) {
+            serverSocket = newListener;
+            ServerSocket listener = newListener;
+            engine.executor().submit(() -> acceptLoop(listener));
+            ResourceManager.closeSocket(oldListener, "切换监听端口");
+            LOGGER.info("监听端口已从 {} 切换到 {}，已有会话不受影响", previous.local.listenPort(), local.listenPort());
+        }
+        // 旧快照的空闲连接不再被取用；仍在使用旧快照的会话取不到时会直接建立连接
+        previous.pools.values().forEach(UpstreamPool::close);
+        LOGGER.info("配置已重新加载（第 {} 版）：{} -> {}", next.generation, local.listenPort(), next.remote);
     }
 
     /**
@@ -121,23 +355,42 @@ public final class Forwarder implements AutoCloseable {
         this.serverSocket = null;
     }
 
-    private void acceptLoop() {
+    private void acceptLoop(ServerSocket listener) {
         while (running.get()) {
             try {
-                if (serverSocket == null || serverSocket.isClosed()) {
-                    LOGGER.warn("ServerSocket 未初始化或已关闭，退出 acceptLoop");
+                if (listener == null || listener.isClosed()) {
+                    if (listener == serverSocket) {
+                        LOGGER.warn("ServerSocket 未初始化或已关闭，退出 acceptLoop");
+                    }
                     break;
                 }
-                Socket client = serverSocket.accept();
+                Socket client = listener.accept();
                 InetAddress address = client.getInetAddress();
-                if (!whitelist.isAllowed(address)) {
-                    LOGGER.warn("拒绝未在白名单中的连接: {}", address);
-                    client.close();
+                // 每个连接只读取一次当前快照，整个会话使用同一份配置
+                Snapshot current = snapshot.get();
+                if (!current.whitelist.isAllowed(address)) {
+                    REJECTED_WHITELIST.increment();
+                    reject(client, "未在白名单中");
+                    continue;
+                }
+                int maxSessions = current.local.maxSessions();
+                if (maxSessions > 0 && openSessions.get() >= maxSessions) {
+                    REJECTED_LISTENER_FULL.increment();
+                    reject(client, "端口 " + current.local.listenPort() + " 的会话数已达上限 " + maxSessions);
+                    continue;
+                }
+                // 在占用线程和远程连接之前检查限流
+                int ticket = current.limiter.tryAcquire(address);
+                if (ticket < 0) {
+                    rejectedCounter(ticket).increment();
+                    reject(client, ConnectionLimiter.reason(ticket));
                     continue;
                 }
-                executor.submit(() -> handleClient(client));
+                ACCEPTED.increment();
+                openSessions.incrementAndGet();
+                engine.executor().submit(() -> handleClient(client, current, ticket));
             } catch (SocketException se) {
-                if (running.get()) {
+                if (running.get() && listener == serverSocket) {
                     LOGGER.error("监听套接字错误", se);
                 }
             } catch (IOException e) {
@@ -149,53 +402,189 @@ public final class Forwarder implements AutoCloseable {
         LOGGER.debug("acceptLoop 已退出");
     }
 
-    private void handleClient(Socket client) {
+    /**
+     * 以 RST 立即关闭被拒绝的连接，不在本机留下 TIME_WAIT；日志每 10 秒最多一条
+     */
+    private void reject(Socket client, String reason) {
+        long suppressed = rejectLog.sample();
+        if (suppressed >= 0) {
+            if (suppressed > 0) {
+                LOGGER.warn("拒绝连接 {}: {}（此前 10 秒内另有 {} 次拒绝未记录）", client.getInetAddress(), reason, suppressed);
+            } else {
+                LOGGER.warn("拒绝连接 {}: {}", client.getInetAddress(), reason);
+            }
+        }
+        try {
+            client.setSoLinger(true, 0);
+        } catch (SocketException ignored) {
+        }
+        try {
+            client.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static Counter rejected(String reason) {
+        return METRICS.counter("connections_rejected_total", "被拒绝的连接数",
+                "reason=\"" + reason + "\"");
+    }
+
+    private static Counter rejectedCounter(int ticket) {
+        switch (ticket) {
+            case ConnectionLimiter.REJECTED_IP_RATE:
+                return REJECTED_IP_RATE;
+            case ConnectionLimiter.REJECTED_SUBNET_RATE:
+                return REJECTED_SUBNET_RATE;
+            default:
+                return REJECTED_CONCURRENT;
+        }
+    }
+
+    private void handleClient(Socket client, Snapshot current, int ticket) {
+        long acceptedNanos = System.nanoTime();
         InetSocketAddress clientAddress = (InetSocketAddress) client.getRemoteSocketAddress();
         String clientIP = clientAddress.getAddress().getHostAddress();
         int clientPort = clientAddress.getPort();
-        
-        LOGGER.info("客户端连接: {}:{} -> {}:{}", 
-            clientIP, clientPort, remoteConfig.host(), remoteConfig.port());
+        RouteTable routeTable = current.routeTable;
+        Map<LoadBalancer, StatusCache> statusCaches = current.statusCaches;
+        ConnectionLimiter limiter = current.limiter;
+        LoadBalancer group = routeTable.defaultGroup();
+        Backend backend = null;
+        AppConfig.Remote target = group.group();
             
         long upstreamBytes = 0;
         long downstreamBytes = 0;
+        boolean handedOff = false;
+        boolean statusServed = false;
+        boolean active = false;
+        SocketChannel remoteChannel = null;
+        TunnelStream tunnelStream = null;
+        ByteBuffer proxyHeader = null;
+        TrafficShaper.Lease shaping = null;
+        TunnelClient tunnel = engine.tunnel();
         
-        try (Socket remote = new Socket()) {
-            remote.connect(new InetSocketAddress(remoteConfig.host(), remoteConfig.port()),
-                    (int) CONNECT_TIMEOUT.toMillis());
-            remote.setTcpNoDelay(true);
-            client.setTcpNoDelay(true);
-            
-            CompletableFuture<Long> upstream = CompletableFuture.supplyAsync(() -> {
-                try {
-                    return pipe(client.getInputStream(), remote.getOutputStream());
-                } catch (IOException e) {
-                    LOGGER.error("上游数据流异常", e);
-                    return 0L;
+        try {
+            Handshake.Initial initial = null;
+            if (routeTable.needsHandshake() || !statusCaches.isEmpty()) {
+                // 先读出握手包再决定连接哪个远程服务器，读到的字节稍后原样重放
+                initial = Handshake.read(client, (int) HANDSHAKE_TIMEOUT.toMillis());
+                group = routeTable.select(initial.handshake());
+                LOGGER.debug("客户端 {}:{} 握手: {}", clientIP, clientPort, initial.handshake());
+                StatusCache statusCache = statusCaches.get(group);
+                if (statusCache != null && initial.handshake() != null
+                        && initial.handshake().nextState() == Handshake.STATE_STATUS
+                        && statusCache.serve(client, initial, (int) HANDSHAKE_TIMEOUT.toMillis())) {
+                    LOGGER.debug("客户端 {}:{} 的状态查询已由缓存应答", clientIP, clientPort);
+                    statusServed = true;
+                    return;
                 }
-            }, executor);
-            
-            CompletableFuture<Long> downstream = CompletableFuture.supplyAsync(() -> {
+            }
+
+            backend = group.select(clientAddress.getAddress());
+            backend.sessionOpened();
+            target = backend.remote();
+            for (int attempt = 1; ; attempt++) {
+                long connectStart = System.nanoTime();
                 try {
-                    return pipe(remote.getInputStream(), client.getOutputStream());
+                    if (tunnel != null) {
+                        tunnelStream = tunnel.open(target.host(), target.port(), clientAddress);
+                    } else {
+                        UpstreamPool pool = current.pools.get(target);
+                        remoteChannel = pool != null ? pool.take() : null;
+                        if (remoteChannel == null) {
+                            remoteChannel = UpstreamConnector.connect(target);
+                        }
+                    }
+                    CONNECT_LATENCY.recordNanos(System.nanoTime() - connectStart);
+                    break;
                 } catch (IOException e) {
-                    LOGGER.error("下游数据流异常", e);
-                    return 0L;
+                    CONNECT_LATENCY.recordNanos(System.nanoTime() - connectStart);
+                    if (attempt >= group.size()) {
+                        REJECTED_CONNECT.increment();
+                        throw e;
+                    }
+                    // 同一分组内还有其他后端，换下一个重试
+                    LOGGER.warn("连接后端 {}:{} 失败，尝试下一个后端 - {}", target.host(), target.port(), e.getMessage());
+                    backend.sessionClosed(0, 0);
+                    backend = group.next(backend);
+                    backend.sessionOpened();
+                    target = backend.remote();
                 }
-            }, executor);
+            }
+
+            LOGGER.info("客户端连接: {}:{} -> {}:{}", 
+                clientIP, clientPort, target.host(), target.port());
+
+            ACTIVE_SESSIONS.increment();
+            active = true;
+            client.setTcpNoDelay(true);
+            ByteBuffer[] replay = initial != null ? replayBytes(initial, target) : null;
+            int headerBytes = 0;
+            if (target.proxyProtocol() != null) {
+                proxyHeader = ProxyHeader.encode(BufferPool.shared().acquire(ProxyHeader.sizeClass(target)), target,
+                        clientAddress, (InetSocketAddress) client.getLocalSocketAddress());
+                headerBytes = proxyHeader.remaining();
+                replay = prepend(proxyHeader, replay);
+            }
+            if (tunnelStream != null) {
+                // 隧道模式：两个方向都经隧道流转发，由隧道的窗口做流量控制，不经过 nio 事件循环和带宽整形
+                long replayedBytes = replay != null ? tunnelStream.write(replay) - headerBytes : 0L;
+                TunnelStream stream = tunnelStream;
+                SocketChannel clientChannel = client.getChannel();
+                ExecutorService executor = engine.executor();
+                CompletableFuture<Long> upstream = CompletableFuture.supplyAsync(
+                        () -> stream.pumpFrom(clientChannel), executor);
+                CompletableFuture<Long> downstream = CompletableFuture.supplyAsync(
+                        () -> stream.pumpTo(clientChannel), executor);
+                upstreamBytes = replayedBytes + upstream.get();
+                downstreamBytes = downstream.get();
+                return;
+            }
+            long replayedBytes = replay != null ? writeFully(remoteChannel, replay) - headerBytes : 0L;
+            shaping = current.shaper.open(clientAddress.getAddress(), current.whitelist);
+
+            SelectorRelay relay = engine.selectorRelay();
+            if (relay != null) {
+                // nio 引擎：连接建立后交给事件循环，本线程立即返回
+                Backend chosen = backend;
+                TrafficShaper.Lease lease = shaping;
+                relay.register(client.getChannel(), remoteChannel, current.flushPolicy, lease, (up, down) -> {
+                    if (lease != null) {
+                        lease.close();
+                    }
+                    ACTIVE_SESSIONS.decrement();
+                    SESSION_DURATION.recordNanos(System.nanoTime() - acceptedNanos);
+                    limiter.release(ticket);
+                    openSessions.decrementAndGet();
+                    chosen.sessionClosed(replayedBytes + up, down);
+                    logDisconnect(clientIP, clientPort, replayedBytes + up, down);
+                });
+                handedOff = true;
+                return;
+            }
+            
+            SocketChannel clientChannel = client.getChannel();
+            SocketChannel upstreamChannel = remoteChannel;
+            FlushPolicy flushPolicy = current.flushPolicy;
+            TrafficShaper.Lease lease = shaping;
+            ExecutorService executor = engine.executor();
+            CompletableFuture<Long> upstream = CompletableFuture.supplyAsync(
+                    () -> new BlockingPipe(clientChannel, upstreamChannel, flushPolicy, lease, true).run(), executor);
+            CompletableFuture<Long> downstream = CompletableFuture.supplyAsync(
+                    () -> new BlockingPipe(upstreamChannel, clientChannel, flushPolicy, lease, false).run(), executor);
             
-            upstreamBytes = upstream.get();
+            upstreamBytes = replayedBytes + upstream.get();
             downstreamBytes = downstream.get();
             
         } catch (java.net.ConnectException e) {
             LOGGER.error("无法连接到远程服务器 {}:{} - {}", 
-                remoteConfig.host(), remoteConfig.port(), e.getMessage());
+                target.host(), target.port(), e.getMessage());
         } catch (java.net.SocketTimeoutException e) {
             LOGGER.error("连接远程服务器 {}:{} 超时 - {}", 
-                remoteConfig.host(), remoteConfig.port(), e.getMessage());
+                target.host(), target.port(), e.getMessage());
         } catch (java.net.UnknownHostException e) {
             LOGGER.error("无法解析远程服务器主机名 {} - {}", 
-                remoteConfig.host(), e.getMessage());
+                target.host(), e.getMessage());
         } catch (java.net.SocketException e) {
             LOGGER.error("网络连接异常: {}:{} - {}", 
                 clientIP, clientPort, e.getMessage());
@@ -206,29 +595,141 @@ public final class Forwarder implements AutoCloseable {
             LOGGER.error("转发会话异常: {}:{} - {}", 
                 clientIP, clientPort, e.getMessage());
         } finally {
-            try {
-                client.close();
-            } catch (IOException ignored) {
+            // 头部已随重放数据写出（或会话已失败），缓冲区可以归还
+            BufferPool.shared().release(proxyHeader);
+            if (!handedOff) {
+                if (shaping != null) {
+                    shaping.close();
+                }
+                if (tunnelStream != null) {
+                    tunnelStream.reset();
+                }
+                try {
+                    if (remoteChannel != null) {
+                        remoteChannel.close();
+                    }
+                } catch (IOException ignored) {
+                }
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                }
+                if (active) {
+                    ACTIVE_SESSIONS.decrement();
+                    SESSION_DURATION.recordNanos(System.nanoTime() - acceptedNanos);
+                }
+                limiter.release(ticket);
+                openSessions.decrementAndGet();
+                if (backend != null) {
+                    backend.sessionClosed(upstreamBytes, downstreamBytes);
+                }
+                if (!statusServed) {
+                    logDisconnect(clientIP, clientPort, upstreamBytes, downstreamBytes);
+                }
             }
-            long totalBytes = upstreamBytes + downstreamBytes;
-            LOGGER.info("客户端断开: {}:{} (上行: {} bytes, 下行: {} bytes, 总计: {} bytes)", 
-                clientIP, clientPort, upstreamBytes, downstreamBytes, totalBytes);
         }
     }
 
-    private long pipe(InputStream in, OutputStream out) {
-        byte[] buffer = new byte[16 * 1024];
-        long totalBytes = 0;
-        try {
-            int len;
-            while ((len = in.read(buffer)) >= 0) {
-                out.write(buffer, 0, len);
-                out.flush();
-                totalBytes += len;
+    /**
+     * 需要重放给远程服务器的初始字节：未配置改写时就是读到的原始数据，
+     * 否则是改写后的握手包加上握手包之后已经读到的数据
+     */
+    static ByteBuffer[] replayBytes(Handshake.Initial initial, AppConfig.Remote target) {
+        ByteBuffer bytes = initial.bytes();
+        Handshake handshake = initial.handshake();
+        String rewriteAddress = target.rewriteAddress();
+        if (handshake == null || rewriteAddress == null) {
+            return new ByteBuffer[]{bytes};
+        }
+        ByteBuffer rewritten = handshake.rewrite(rewriteAddress, target.port());
+        if (handshake.end() == bytes.limit()) {
+            // 客户端常把握手包和登录包分两次发送，这时握手包之后没有数据
+            return new ByteBuffer[]{rewritten};
+        }
+        ByteBuffer rest = bytes.duplicate();
+        rest.position(handshake.end());
+        return new ByteBuffer[]{rewritten, rest};
+    }
+
+    static ByteBuffer[] prepend(ByteBuffer header, ByteBuffer[] buffers) {
+        if (buffers == null) {
+            return new ByteBuffer[]{header};
+        }
+        ByteBuffer[] result = new ByteBuffer[buffers.length + 1];
+        result[0] = header;
+        System.arraycopy(buffers, 0, result, 1, buffers.length);
+        return result;
+    }
+
+    /**
+     * 写出全部缓冲区；按剩余字节总数判断是否写完，不依赖最后一个缓冲区（它可能本来就是空的）
+     */
+    static long writeFully(SocketChannel channel, ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        long written = 0;
+        while (written < remaining) {
+            written += channel.write(buffers);
+        }
+        return written;
+    }
+
+    /**
+     * 已接受、尚未结束的会话数
+     */
+    public int openSessions() {
+        return openSessions.get();
+    }
+
+    /**
+     * 关闭监听端口、不再接受新连接，已建立的会话继续转发
+     */
+    public void stopAccepting() {
+        ServerSocket listener = serverSocket;
+        // 先清空再关闭，接受循环据此判断是主动关闭而不是出错
+        serverSocket = null;
+        ResourceManager.closeSocket(listener, "停止接受连接");
+        LOGGER.info("已停止接受新连接，剩余 {} 个会话", openSessions.get());
+    }
+
+    /**
+     * 等待已有会话全部结束，最多等待 timeout
+     *
+     * @return 是否在期限内全部结束
+     */
+    public boolean awaitDrain(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long nextReport = System.nanoTime() + DRAIN_REPORT_NANOS;
+        int remaining;
+        while ((remaining = openSessions.get()) > 0) {
+            long now = System.nanoTime();
+            if (now - deadline >= 0) {
+                return false;
             }
-        } catch (IOException ignored) {
+            if (now - nextReport >= 0) {
+                LOGGER.info("等待 {} 个会话结束...", remaining);
+                nextReport = now + DRAIN_REPORT_NANOS;
+            }
+            Thread.sleep(Math.min(DRAIN_POLL_MS, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - now))));
         }
-        return totalBytes;
+        return true;
+    }
+
+    /**
+     * 默认远程的服务器状态，未开启状态缓存或尚未查询到时返回 null
+     */
+    public ServerStatus status() {
+        Snapshot current = snapshot.get();
+        StatusCache statusCache = current.statusCaches.get(current.routeTable.defaultGroup());
+        return statusCache != null ? statusCache.status() : null;
+    }
+
+    private void logDisconnect(String clientIP, int clientPort, long upstreamBytes, long downstreamBytes) {
+        long totalBytes = upstreamBytes + downstreamBytes;
+        LOGGER.info("客户端断开: {}:{} (上行: {} bytes, 下行: {} bytes, 总计: {} bytes)", 
+            clientIP, clientPort, upstreamBytes, downstreamBytes, totalBytes);
     }
 
     @Override
@@ -237,7 +738,8 @@ public final class Forwarder implements AutoCloseable {
             LOGGER.debug("转发器已经关闭或未启动");
             return;
         }
-        LOGGER.info("正在关闭 TCP 转发器，释放端口 {}...", localConfig.listenPort());
+        Snapshot current = snapshot.get();
+        LOGGER.info("正在关闭 TCP 转发器，释放端口 {}...", current.local.listenPort());
         if (serverSocket != null && !serverSocket.isClosed()) {
             try {
                 serverSocket.close();
@@ -246,17 +748,58 @@ public final class Forwarder implements AutoCloseable {
                 LOGGER.warn("关闭 ServerSocket 时发生异常", e);
             }
         }
-        executor.shutdownNow();
-        try {
-            // 等待线程池关闭，最多等待 5 秒
-            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                LOGGER.warn("线程池未能在 5 秒内完全关闭");
+        current.pools.values().forEach(UpstreamPool::close);
+        if (ownsEngine) {
+            engine.close();
+        }
+        LOGGER.debug("缓冲池状态: {}", BufferPool.shared());
+        LOGGER.debug("写出策略 {}: {}", current.flushPolicy, RelayStats.shared());
+        LOGGER.debug("DNS 缓存: {}", CachedResolver.shared());
+        LOGGER.debug("上游建连: {}", UpstreamConnector.summary());
+        current.statusCaches.values().forEach(statusCache -> LOGGER.debug("{}", statusCache));
+        if (current.limiter.enabled()) {
+            LOGGER.info("限流统计: {}", current.limiter);
+        }
+        if (current.shaper.enabled()) {
+            LOGGER.info("带宽整形: {}", current.shaper);
+        }
+        for (LoadBalancer group : current.routeTable.groups()) {
+            if (group.size() > 1) {
+                LOGGER.info("后端统计 {}", group);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            LOGGER.warn("等待线程池关闭时被中断");
         }
-        LOGGER.info("TCP转发已关闭，端口 {} 已释放", localConfig.listenPort());
+        LOGGER.info("TCP转发已关闭，端口 {} 已释放", current.local.listenPort());
+    }
+
+    /**
+     * 一份配置对应的全部转发设置，创建后不再修改
+     */
+    private static final class Snapshot {
+        private final long generation;
+        private final AppConfig.Remote remote;
+        private final AppConfig.Local local;
+        private final RouteTable routeTable;
+        private final IpWhitelist whitelist;
+        private final ConnectionLimiter limiter;
+        private final FlushPolicy flushPolicy;
+        private final TrafficShaper shaper;
+        private final Map<AppConfig.Remote, UpstreamPool> pools;
+        private final Map<LoadBalancer, StatusCache> statusCaches;
+
+        Snapshot(long generation, AppConfig.Remote remote, AppConfig.Local local, RouteTable routeTable,
+                 IpWhitelist whitelist, ConnectionLimiter limiter, FlushPolicy flushPolicy, TrafficShaper shaper,
+                 Map<AppConfig.Remote, UpstreamPool> pools, Map<LoadBalancer, StatusCache> statusCaches) {
+            this.generation = generation;
+            this.remote = remote;
+            this.local = local;
+            this.routeTable = routeTable;
+            this.whitelist = whitelist;
+            this.limiter = limiter;
+            this.flushPolicy = flushPolicy;
+            this.shaper = shaper;
+            this.pools = pools;
+            this.statusCaches = statusCaches;
+        }
     }
 }
 
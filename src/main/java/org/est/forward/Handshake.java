@@ -0,0 +1,308 @@
+package org.est.forward;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Minecraft 握手包（包 ID 0x00）：VarInt 长度 + VarInt 包 ID + VarInt 协议版本
+ * + String 服务器地址 + unsigned short 端口 + VarInt 下一状态。
+ * <p>
+ * 解码直接在客户端最先发送的字节上按绝对下标进行，不移动缓冲区位置，
+ * 读到的字节之后原样（或只改写握手包本身）转发给远程服务器。
+ */
+final class Handshake {
+    static final int STATE_STATUS = 1;
+    static final int STATE_LOGIN = 2;
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_PACKET_LENGTH = 16 * 1024;
+    private static final byte LEGACY_PING = (byte) 0xFE;
+    /**
+     * 1.4 之前的客户端只发送 0xFE，1.4-1.5 只发送 0xFE 0x01，随后都等待应答。
+     * 这两个前缀同时也是一个不完整的 VarInt 长度，只再等这么久，不等满整个握手超时
+     */
+    private static final int LEGACY_PING_WAIT_MILLIS = 200;
+
+    private final int protocolVersion;
+    private final String address;
+    private final int port;
+    private final int nextState;
+    private final int end;
+
+    private Handshake(int protocolVersion, String address, int port, int nextState, int end) {
+        this.protocolVersion = protocolVersion;
+        this.address = address;
+        this.port = port;
+        this.nextState = nextState;
+        this.end = end;
+    }
+
+    /**
+     * 客户端最先发送的数据，以及从中解出的握手包（不是握手包或数据不完整时为 null）
+     */
+    static final class Initial {
+        private final ByteBuffer bytes;
+        private final Handshake handshake;
+
+        Initial(ByteBuffer bytes, Handshake handshake) {
+            this.bytes = bytes;
+            this.handshake = handshake;
+        }
+
+        /**
+         * 已读到的全部字节，处于读取模式
+         */
+        ByteBuffer bytes() {
+            return bytes;
+        }
+
+        Handshake handshake() {
+            return handshake;
+        }
+    }
+
+    /**
+     * 从客户端读取数据直到解出完整的握手包。已读到的字节不像握手包（如 1.6 的 0xFE 0x01 0xFA 旧版 ping）时立即返回，
+     * 不等待更多数据；只读到旧版 ping 的 0xFE 或 0xFE 0x01 时只再短暂等待；超时或客户端提前断开时返回已读到的字节。
+     */
+    static Initial read(Socket client, int timeoutMillis) throws IOException {
+        byte[] data = new byte[INITIAL_CAPACITY];
+        int length = 0;
+        InputStream in = client.getInputStream();
+        int previousTimeout = client.getSoTimeout();
+        client.setSoTimeout(timeoutMillis);
+        boolean shortWait = false;
+        try {
+            while (true) {
+                int n;
+                try {
+                    n = in.read(data, length, data.length - length);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+                ByteBuffer view = ByteBuffer.wrap(data, 0, length);
+                Handshake handshake;
+                try {
+                    handshake = decode(view);
+                } catch (IllegalArgumentException e) {
+                    return new Initial(view, null);
+                }
+                if (handshake != null) {
+                    return new Initial(view, handshake);
+                }
+                boolean legacyPing = isLegacyPingPrefix(data, length);
+                if (legacyPing != shortWait) {
+                    client.setSoTimeout(legacyPing ? Math.min(timeoutMillis, LEGACY_PING_WAIT_MILLIS) : timeoutMillis);
+                    shortWait = legacyPing;
+                }
+                if (length == data.length) {
+                    if (data.length >= MAX_PACKET_LENGTH + 5) {
+                        return new Initial(view, null);
+                    }
+                    byte[] grown = new byte[Math.min(data.length * 2, MAX_PACKET_LENGTH + 5)];
+                    System.arraycopy(data, 0, grown, 0, length);
+                    data = grown;
+                }
+            }
+        } finally {
+            client.setSoTimeout(previousTimeout);
+        }
+        return new Initial(ByteBuffer.wrap(data, 0, length), null);
+    }
+
+    private static boolean isLegacyPingPrefix(byte[] data, int length) {
+        return data[0] == LEGACY_PING && (length == 1 || (length == 2 && data[1] == 0x01));
+    }
+
+    /**
+     * 从 buffer 的 position 开始解码握手包，不改变 buffer 的位置
+     *
+     * @return 数据不完整时返回 null
+     * @throws IllegalArgumentException 数据不是握手包
+     */
+    static Handshake decode(ByteBuffer buffer) {
+        Cursor cursor = new Cursor(buffer);
+        int length = cursor.readVarInt();
+        if (length == Cursor.INCOMPLETE) {
+            return null;
+        }
+        if (length <= 0 || length > MAX_PACKET_LENGTH) {
+            throw new IllegalArgumentException("握手包长度异常: " + length);
+        }
+        int packetStart = cursor.index;
+        if (buffer.limit() - packetStart < length) {
+            // 先检查包 ID，让非握手数据尽早被识别出来
+            if (buffer.limit() > packetStart && buffer.get(packetStart) != 0x00) {
+                throw new IllegalArgumentException("不是握手包");
+            }
+            return null;
+        }
+        cursor.limit = packetStart + length;
+        if (cursor.readVarInt() != 0x00) {
+            throw new IllegalArgumentException("不是握手包");
+        }
+        int protocolVersion = cursor.readVarInt();
+        int addressLength = cursor.readVarInt();
+        if (addressLength < 0 || addressLength > cursor.limit - cursor.index) {
+            throw new IllegalArgumentException("握手包地址长度异常: " + addressLength);
+        }
+        String address = cursor.readString(addressLength);
+        int port = cursor.readUnsignedShort();
+        int nextState = cursor.readVarInt();
+        if (nextState == Cursor.INCOMPLETE || cursor.index != cursor.limit) {
+            throw new IllegalArgumentException("握手包格式错误");
+        }
+        return new Handshake(protocolVersion, address, port, nextState, cursor.limit);
+    }
+
+    int protocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * 握手包中的原始服务器地址，可能带有 Forge 的 "\0FML\0" 等后缀
+     */
+    String address() {
+        return address;
+    }
+
+    /**
+     * 用于路由匹配的主机名：去掉 Forge 后缀和末尾的点，小写
+     */
+    String host() {
+        int nul = address.indexOf('\0');
+        String host = nul >= 0 ? address.substring(0, nul) : address;
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    int port() {
+        return port;
+    }
+
+    int nextState() {
+        return nextState;
+    }
+
+    /**
+     * 握手包在初始数据中的结束下标（相对 buffer 起点）
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * 生成改写了服务器地址和端口的握手包，保留 Forge 后缀；握手包之后的数据不在其中
+     */
+    ByteBuffer rewrite(String newHost, int newPort) {
+        int nul = address.indexOf('\0');
+        String newAddress = nul >= 0 ? newHost + address.substring(nul) : newHost;
+        return encode(protocolVersion, newAddress, newPort, nextState);
+    }
+
+    /**
+     * 编码一个完整的握手包（含长度前缀）
+     */
+    static ByteBuffer encode(int protocolVersion, String address, int port, int nextState) {
+        byte[] addressBytes = address.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = varIntSize(0x00) + varIntSize(protocolVersion)
+                + varIntSize(addressBytes.length) + addressBytes.length + 2 + varIntSize(nextState);
+        ByteBuffer packet = ByteBuffer.allocate(varIntSize(bodyLength) + bodyLength);
+        writeVarInt(packet, bodyLength);
+        writeVarInt(packet, 0x00);
+        writeVarInt(packet, protocolVersion);
+        writeVarInt(packet, addressBytes.length);
+        packet.put(addressBytes);
+        packet.putShort((short) port);
+        writeVarInt(packet, nextState);
+        packet.flip();
+        return packet;
+    }
+
+    static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    @Override
+    public String toString() {
+        return "Handshake{协议=" + protocolVersion + ", 地址=" + host() + ":" + port + ", 下一状态=" + nextState + "}";
+    }
+
+    /**
+     * 按绝对下标读取的游标
+     */
+    private static final class Cursor {
+        static final int INCOMPLETE = Integer.MIN_VALUE;
+
+        private final ByteBuffer buffer;
+        private int index;
+        private int limit;
+
+        Cursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.index = buffer.position();
+            this.limit = buffer.limit();
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (index >= limit) {
+                    return INCOMPLETE;
+                }
+                byte b = buffer.get(index++);
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("VarInt 过长");
+        }
+
+        String readString(int length) {
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + index, length, StandardCharsets.UTF_8);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(index, bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            index += length;
+            return value;
+        }
+
+        int readUnsignedShort() {
+            if (limit - index < 2) {
+                throw new IllegalArgumentException("握手包端口缺失");
+            }
+            int value = buffer.getShort(index) & 0xFFFF;
+            index += 2;
+            return value;
+        }
+    }
+}
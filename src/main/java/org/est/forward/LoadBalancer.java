@@ -0,0 +1,222 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在一个远程分组的多个后端之间选择连接目标。所有查找结构在构建时算好且不可变，
+ * 选择时只读数组和原子计数，接受连接的路径上没有锁。
+ * <ul>
+ *     <li>least-connections：活跃会话数 / 权重最小者，平局时从轮转的起点开始扫描</li>
+ *     <li>round-robin：预先按平滑加权轮询生成调度序列，原子计数取下标</li>
+ *     <li>ip-hash：客户端 IP 在一致性哈希环上查找，同一玩家重连回到同一个后端，增删后端只影响少量玩家</li>
+ * </ul>
+ */
+final class LoadBalancer {
+    private static final int VIRTUAL_NODES_PER_WEIGHT = 160;
+
+    private final AppConfig.Remote group;
+    private final Backend[] backends;
+    private final String strategy;
+    private final AtomicLong cursor = new AtomicLong();
+    private final int[] schedule;
+    private final long[] ringHashes;
+    private final int[] ringOwners;
+
+    private LoadBalancer(AppConfig.Remote group, Backend[] backends, String strategy, long cursor) {
+        this.group = group;
+        this.backends = backends;
+        this.strategy = strategy;
+        this.cursor.set(cursor);
+        this.schedule = AppConfig.Remote.BALANCE_ROUND_ROBIN.equals(strategy) ? buildSchedule(backends) : null;
+        if (AppConfig.Remote.BALANCE_IP_HASH.equals(strategy)) {
+            int total = 0;
+            for (Backend backend : backends) {
+                total += backend.weight() * VIRTUAL_NODES_PER_WEIGHT;
+            }
+            this.ringHashes = new long[total];
+            this.ringOwners = new int[total];
+            buildRing(backends, ringHashes, ringOwners);
+        } else {
+            this.ringHashes = null;
+            this.ringOwners = null;
+        }
+    }
+
+    static LoadBalancer from(AppConfig.Remote group) {
+        return from(group, null);
+    }
+
+    /**
+     * 重新加载配置时由上一份配置中的同一分组生成：host:port 相同的后端沿用活跃会话数和累计统计，
+     * 轮转从原来的位置继续，已有会话仍计入最少连接的比较
+     *
+     * @param previous 上一份配置中的同一分组，没有时为 null
+     */
+    static LoadBalancer from(AppConfig.Remote group, LoadBalancer previous) {
+        Map<String, Backend> carried = new HashMap<>();
+        if (previous != null) {
+            for (Backend backend : previous.backends) {
+                carried.putIfAbsent(backend.key(), backend);
+            }
+        }
+        List<AppConfig.Remote> remotes = group.backends();
+        Backend[] backends = new Backend[remotes.size()];
+        for (int i = 0; i < backends.length; i++) {
+            AppConfig.Remote remote = remotes.get(i);
+            // 同一分组里重复配置的 host:port 只有第一个沿用计数
+            backends[i] = new Backend(remote, carried.remove(remote.host() + ":" + remote.port()));
+        }
+        return new LoadBalancer(group, backends, group.balance(), previous != null ? previous.cursor.get() : 0L);
+    }
+
+    AppConfig.Remote group() {
+        return group;
+    }
+
+    List<Backend> backends() {
+        return Collections.unmodifiableList(Arrays.asList(backends));
+    }
+
+    int size() {
+        return backends.length;
+    }
+
+    Backend select(InetAddress client) {
+        if (backends.length == 1) {
+            return backends[0];
+        }
+        if (schedule != null) {
+            return backends[schedule[(int) Math.floorMod(cursor.getAndIncrement(), (long) schedule.length)]];
+        }
+        if (ringHashes != null) {
+            return backends[ringOwners[ringIndex(hash(client.getAddress()))]];
+        }
+        return leastConnections();
+    }
+
+    /**
+     * 连接失败时的下一个候选后端，按配置顺序依次尝试
+     */
+    Backend next(Backend failed) {
+        for (int i = 0; i < backends.length; i++) {
+            if (backends[i] == failed) {
+                return backends[(i + 1) % backends.length];
+            }
+        }
+        return backends[0];
+    }
+
+    private Backend leastConnections() {
+        int start = (int) Math.floorMod(cursor.getAndIncrement(), (long) backends.length);
+        Backend best = null;
+        long bestActive = 0;
+        int bestWeight = 1;
+        for (int i = 0; i < backends.length; i++) {
+            Backend candidate = backends[(start + i) % backends.length];
+            long active = candidate.activeSessions();
+            // active / weight 比较转成交叉相乘，避免除法和浮点
+            if (best == null || active * bestWeight < bestActive * candidate.weight()) {
+                best = candidate;
+                bestActive = active;
+                bestWeight = candidate.weight();
+            }
+        }
+        return best;
+    }
+
+    private int ringIndex(long hash) {
+        int index = Arrays.binarySearch(ringHashes, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == ringHashes.length ? 0 : index;
+    }
+
+    /**
+     * 平滑加权轮询（同 nginx）：权重 5/1/1 生成 a a b a c a a 而不是 a a a a a b c
+     */
+    private static int[] buildSchedule(Backend[] backends) {
+        int divisor = 0;
+        for (Backend backend : backends) {
+            divisor = gcd(divisor, backend.weight());
+        }
+        int total = 0;
+        int[] weights = new int[backends.length];
+        for (int i = 0; i < backends.length; i++) {
+            weights[i] = backends[i].weight() / divisor;
+            total += weights[i];
+        }
+        int[] current = new int[backends.length];
+        int[] schedule = new int[total];
+        for (int n = 0; n < total; n++) {
+            int best = 0;
+            for (int i = 0; i < backends.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[n] = best;
+        }
+        return schedule;
+    }
+
+    private static void buildRing(Backend[] backends, long[] hashes, int[] owners) {
+        List<long[]> nodes = new ArrayList<>(hashes.length);
+        for (int i = 0; i < backends.length; i++) {
+            AppConfig.Remote remote = backends[i].remote();
+            int count = backends[i].weight() * VIRTUAL_NODES_PER_WEIGHT;
+            for (int v = 0; v < count; v++) {
+                String key = remote.host() + ":" + remote.port() + "#" + v;
+                nodes.add(new long[]{hash(key.getBytes(StandardCharsets.UTF_8)), i});
+            }
+        }
+        nodes.sort((a, b) -> Long.compare(a[0], b[0]));
+        for (int n = 0; n < nodes.size(); n++) {
+            hashes[n] = nodes.get(n)[0];
+            owners[n] = (int) nodes.get(n)[1];
+        }
+    }
+
+    /**
+     * FNV-1a 64 位哈希再做一次 murmur3 的 fmix64 混合，使相邻 IP 也能均匀散开
+     */
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadBalancer{" + strategy + ", " + Arrays.toString(backends) + "}";
+    }
+}
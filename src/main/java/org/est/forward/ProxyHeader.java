@@ -0,0 +1,124 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HAProxy PROXY 协议头：连接远程服务器后最先发送，让 Velocity 等看到玩家的真实地址，
+ * 按 IP 限流和封禁才能生效。
+ * <p>
+ * 头部编码进 {@link BufferPool} 的缓冲区，与最先发送的客户端数据在同一次聚集写出中发出，
+ * 不额外占用一个报文段或一次往返。v2 头可以在自定义 TLV（{@link #TLV_TOKEN}）中携带 credentials.token。
+ * 两个地址的协议族不同时都按 IPv4 映射的 IPv6 地址发送。
+ */
+final class ProxyHeader {
+    /** 携带 token 的 TLV 类型，取自协议为应用保留的 0xE0-0xEF */
+    static final int TLV_TOKEN = 0xE0;
+
+    private static final byte[] V2_SIGNATURE = {
+            0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A};
+    private static final int V2_PROXY = 0x21;
+    private static final int V2_TCP4 = 0x11;
+    private static final int V2_TCP6 = 0x21;
+    /** v1 头最长 107 字节，v2 头不含 TLV 最长 52 字节 */
+    private static final int MAX_FIXED_BYTES = 108;
+    private static final int MAX_TOKEN_BYTES = BufferPool.capacity(BufferPool.largestClass()) - MAX_FIXED_BYTES - 3;
+
+    private ProxyHeader() {
+    }
+
+    /**
+     * 容纳这个远程的头部需要的缓冲区档位
+     */
+    static int sizeClass(AppConfig.Remote remote) {
+        int needed = MAX_FIXED_BYTES + tokenLength(remote);
+        for (int sizeClass = BufferPool.SMALL; sizeClass < BufferPool.largestClass(); sizeClass++) {
+            if (needed <= BufferPool.capacity(sizeClass)) {
+                return sizeClass;
+            }
+        }
+        return BufferPool.largestClass();
+    }
+
+    private static int tokenLength(AppConfig.Remote remote) {
+        return AppConfig.Remote.PROXY_V2.equals(remote.proxyProtocol()) && remote.proxyToken() != null
+                ? 3 + remote.proxyToken().getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    /**
+     * 按远程配置的版本把头部编码进 buffer
+     *
+     * @param source      玩家的地址
+     * @param destination 玩家连接的本机地址
+     * @return 已 flip 的 buffer
+     */
+    static ByteBuffer encode(ByteBuffer buffer, AppConfig.Remote remote, InetSocketAddress source,
+                             InetSocketAddress destination) {
+        buffer.clear();
+        if (AppConfig.Remote.PROXY_V1.equals(remote.proxyProtocol())) {
+            encodeV1(buffer, source, destination);
+        } else {
+            encodeV2(buffer, source, destination, remote.proxyToken());
+        }
+        return buffer.flip();
+    }
+
+    private static void encodeV1(ByteBuffer buffer, InetSocketAddress source, InetSocketAddress destination) {
+        InetAddress from = source.getAddress();
+        InetAddress to = destination.getAddress();
+        boolean ipv4 = from instanceof Inet4Address && to instanceof Inet4Address;
+        String line = "PROXY " + (ipv4 ? "TCP4 " : "TCP6 ") + text(from, ipv4) + " " + text(to, ipv4)
+                + " " + source.getPort() + " " + destination.getPort() + "\r\n";
+        buffer.put(line.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String text(InetAddress address, boolean ipv4) {
+        if (!ipv4 && address instanceof Inet4Address) {
+            return "::ffff:" + address.getHostAddress();
+        }
+        String text = address.getHostAddress();
+        int scope = text.indexOf('%');
+        return scope >= 0 ? text.substring(0, scope) : text;
+    }
+
+    private static void encodeV2(ByteBuffer buffer, InetSocketAddress source, InetSocketAddress destination,
+                                 String token) {
+        InetAddress from = source.getAddress();
+        InetAddress to = destination.getAddress();
+        boolean ipv4 = from instanceof Inet4Address && to instanceof Inet4Address;
+        byte[] tokenBytes = token != null ? token.getBytes(StandardCharsets.UTF_8) : null;
+        if (tokenBytes != null && tokenBytes.length > MAX_TOKEN_BYTES) {
+            throw new IllegalArgumentException("credentials.token 过长，无法放入 PROXY 头");
+        }
+        int addressLength = ipv4 ? 12 : 36;
+        int tlvLength = tokenBytes != null ? 3 + tokenBytes.length : 0;
+        buffer.put(V2_SIGNATURE)
+                .put((byte) V2_PROXY)
+                .put((byte) (ipv4 ? V2_TCP4 : V2_TCP6))
+                .putShort((short) (addressLength + tlvLength))
+                .put(bytes(from, ipv4))
+                .put(bytes(to, ipv4))
+                .putShort((short) source.getPort())
+                .putShort((short) destination.getPort());
+        if (tokenBytes != null) {
+            buffer.put((byte) TLV_TOKEN).putShort((short) tokenBytes.length).put(tokenBytes);
+        }
+    }
+
+    private static byte[] bytes(InetAddress address, boolean ipv4) {
+        byte[] raw = address.getAddress();
+        if (ipv4 || raw.length == 16) {
+            return raw;
+        }
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xFF;
+        mapped[11] = (byte) 0xFF;
+        System.arraycopy(raw, 0, mapped, 12, 4);
+        return mapped;
+    }
+}
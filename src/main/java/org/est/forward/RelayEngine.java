@@ -0,0 +1,141 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.est.tunnel.TunnelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 转发用的线程资源：会话处理线程池、nio 事件循环和连接池的补连线程。
+ * <p>
+ * 同一进程中的多个监听端口（{@link Forwarder}）共用一份，按启动时的 local 配置创建，
+ * 转发引擎、I/O 线程数和虚拟线程之后不再改变。总带宽的令牌桶也放在这里，由所有监听端口共用。
+ * 隧道 client 模式下所有监听端口的会话都经同一个 {@link TunnelClient} 转发。
+ */
+public final class RelayEngine implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RelayEngine.class);
+
+    private final AppConfig.Local config;
+    private final ExecutorService executor;
+    private ScheduledExecutorService poolScheduler;
+    private volatile SelectorRelay selectorRelay;
+    private TrafficShaper.Bucket totalBandwidth;
+    private volatile TunnelClient tunnel;
+    private boolean started;
+
+    public RelayEngine(AppConfig.Local config) {
+        this.config = Objects.requireNonNull(config);
+        this.executor = createExecutor(config);
+    }
+
+    /**
+     * 虚拟线程模式下每个任务一个虚拟线程，阻塞在 socket 读写上时只挂起虚拟线程；
+     * 转发路径上不使用 synchronized，避免把载体线程钉住
+     */
+    private static ExecutorService createExecutor(AppConfig.Local localConfig) {
+        if (localConfig.virtualThreads()) {
+            LOGGER.info("会话处理将运行在虚拟线程上");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("relay-vt-", 0).factory());
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * 启动 nio 事件循环（classic 引擎时什么也不做），重复调用无效
+     */
+    public synchronized void start() throws IOException {
+        if (started) {
+            return;
+        }
+        if (config.nioEngine()) {
+            SelectorRelay relay = new SelectorRelay(config.ioThreads());
+            relay.start();
+            selectorRelay = relay;
+        }
+        started = true;
+    }
+
+    AppConfig.Local config() {
+        return config;
+    }
+
+    ExecutorService executor() {
+        return executor;
+    }
+
+    /**
+     * nio 引擎的事件循环，classic 引擎时为 null
+     */
+    SelectorRelay selectorRelay() {
+        return selectorRelay;
+    }
+
+    /**
+     * 隧道 client 模式下由 Main 在创建监听端口之前设置；隧道的生命周期由 Main 管理，这里只引用
+     */
+    public void setTunnel(TunnelClient tunnel) {
+        this.tunnel = tunnel;
+    }
+
+    /**
+     * 隧道 client，未开启隧道时为 null
+     */
+    TunnelClient tunnel() {
+        return tunnel;
+    }
+
+    /**
+     * 所有连接池共用的后台补连线程池，第一次需要时创建
+     */
+    synchronized ScheduledExecutorService poolScheduler() {
+        if (poolScheduler == null) {
+            poolScheduler = Executors.newScheduledThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "upstream-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return poolScheduler;
+    }
+
+    /**
+     * 所有监听端口共用的总带宽桶，速率未变时沿用同一个；不限制时返回 null
+     */
+    synchronized TrafficShaper.Bucket totalBandwidth(long kilobytesPerSecond) {
+        long rate = TrafficShaper.bytesPerSecond(kilobytesPerSecond);
+        if (rate <= 0) {
+            totalBandwidth = null;
+        } else if (totalBandwidth == null || totalBandwidth.bytesPerSecond() != rate) {
+            totalBandwidth = new TrafficShaper.Bucket(rate);
+        }
+        return totalBandwidth;
+    }
+
+    @Override
+    public synchronized void close() {
+        executor.shutdownNow();
+        if (poolScheduler != null) {
+            poolScheduler.shutdownNow();
+        }
+        if (selectorRelay != null) {
+            selectorRelay.close();
+            selectorRelay = null;
+        }
+        try {
+            // 等待线程池关闭，最多等待 5 秒
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("线程池未能在 5 秒内完全关闭");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("等待线程池关闭时被中断");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.est.forward;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 转发路径的系统调用统计，用于比较不同写出策略下每 MB 数据产生的读写次数；
+ * 按方向分开的字节数同时作为指标接口的数据来源
+ */
+public final class RelayStats {
+    private static final RelayStats SHARED = new RelayStats();
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final LongAdder upstreamBytes = new LongAdder();
+    private final LongAdder downstreamBytes = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+
+    private RelayStats() {
+    }
+
+    public static RelayStats shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param upstream true 表示客户端到远程方向
+     */
+    void recordRead(int n, boolean upstream) {
+        reads.increment();
+        if (n > 0) {
+            (upstream ? upstreamBytes : downstreamBytes).add(n);
+        }
+    }
+
+    void recordWrite() {
+        writes.increment();
+    }
+
+    void recordProbe() {
+        probes.increment();
+    }
+
+    public long bytes() {
+        return upstreamBytes.sum() + downstreamBytes.sum();
+    }
+
+    public long upstreamBytes() {
+        return upstreamBytes.sum();
+    }
+
+    public long downstreamBytes() {
+        return downstreamBytes.sum();
+    }
+
+    public long reads() {
+        return reads.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * coalesce 策略查询输入中已到达字节数（FIONREAD）的次数
+     */
+    public long probes() {
+        return probes.sum();
+    }
+
+    public double writesPerMegabyte() {
+        long total = bytes();
+        return total == 0 ? 0.0 : writes() / (total / MEGABYTE);
+    }
+
+    public double syscallsPerMegabyte() {
+        long total = bytes();
+        return total == 0 ? 0.0 : (reads() + writes() + probes()) / (total / MEGABYTE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RelayStats{字节=%d, 读=%d, 写=%d, 探测=%d, 每MB写=%.1f, 每MB系统调用=%.1f}",
+                bytes(), reads(), writes(), probes(), writesPerMegabyte(), syscallsPerMegabyte());
+    }
+}
@@ -0,0 +1,124 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按握手包中的主机名选择远程分组：先精确匹配，再按最长后缀匹配 "*.example.com"，都不匹配时使用默认远程。
+ * 每个分组编译为一个 {@link LoadBalancer}。
+ */
+final class RouteTable {
+    private final LoadBalancer defaultGroup;
+    private final Map<String, LoadBalancer> exact;
+    private final List<Map.Entry<String, LoadBalancer>> wildcards;
+    private final List<LoadBalancer> groups;
+
+    private RouteTable(LoadBalancer defaultGroup,
+                       Map<String, LoadBalancer> exact,
+                       List<Map.Entry<String, LoadBalancer>> wildcards,
+                       List<LoadBalancer> groups) {
+        this.defaultGroup = defaultGroup;
+        this.exact = exact;
+        this.wildcards = wildcards;
+        this.groups = groups;
+    }
+
+    static RouteTable from(AppConfig.Remote defaultRemote, Map<String, AppConfig.Remote> routes) {
+        return from(defaultRemote, routes, null);
+    }
+
+    /**
+     * 重新加载配置时使用：默认分组和同名路由的分组沿用上一份路由表中后端的计数
+     *
+     * @param previous 上一份路由表，没有时为 null
+     */
+    static RouteTable from(AppConfig.Remote defaultRemote, Map<String, AppConfig.Remote> routes,
+                           RouteTable previous) {
+        LoadBalancer defaultGroup = LoadBalancer.from(defaultRemote,
+                previous != null ? previous.defaultGroup : null);
+        List<LoadBalancer> groups = new ArrayList<>();
+        groups.add(defaultGroup);
+        Map<String, LoadBalancer> exact = new HashMap<>();
+        List<Map.Entry<String, LoadBalancer>> wildcards = new ArrayList<>();
+        for (Map.Entry<String, AppConfig.Remote> entry : routes.entrySet()) {
+            String key = entry.getKey();
+            LoadBalancer group = LoadBalancer.from(entry.getValue(), previous != null ? previous.route(key) : null);
+            groups.add(group);
+            if (key.startsWith("*.")) {
+                // 保留前面的点，避免 "*.example.com" 匹配到 "badexample.com"
+                wildcards.add(Map.entry(key.substring(1), group));
+            } else {
+                exact.put(key, group);
+            }
+        }
+        // 后缀越长越具体，优先匹配
+        wildcards.sort((a, b) -> Integer.compare(b.getKey().length(), a.getKey().length()));
+        return new RouteTable(defaultGroup, exact, Collections.unmodifiableList(wildcards),
+                Collections.unmodifiableList(groups));
+    }
+
+    /**
+     * 是否需要先解析握手包：没有路由、默认远程也不改写地址时直接转发，不等待客户端数据。
+     * 发送 PROXY 头时也先读出握手包，让头部和握手包在同一次写出中发出
+     */
+    boolean needsHandshake() {
+        if (!exact.isEmpty() || !wildcards.isEmpty()) {
+            return true;
+        }
+        for (Backend backend : defaultGroup.backends()) {
+            if (backend.remote().rewriteAddress() != null || backend.remote().proxyProtocol() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    LoadBalancer defaultGroup() {
+        return defaultGroup;
+    }
+
+    /**
+     * 按配置中的路由键（主机名或 "*.example.com"）查找分组，没有这个路由时返回 null
+     */
+    private LoadBalancer route(String key) {
+        if (key.startsWith("*.")) {
+            String suffix = key.substring(1);
+            for (Map.Entry<String, LoadBalancer> wildcard : wildcards) {
+                if (wildcard.getKey().equals(suffix)) {
+                    return wildcard.getValue();
+                }
+            }
+            return null;
+        }
+        return exact.get(key);
+    }
+
+    /**
+     * 全部分组，第一个为默认远程
+     */
+    List<LoadBalancer> groups() {
+        return groups;
+    }
+
+    LoadBalancer select(Handshake handshake) {
+        if (handshake == null) {
+            return defaultGroup;
+        }
+        String host = handshake.host();
+        LoadBalancer group = exact.get(host);
+        if (group != null) {
+            return group;
+        }
+        for (Map.Entry<String, LoadBalancer> wildcard : wildcards) {
+            if (host.endsWith(wildcard.getKey())) {
+                return wildcard.getValue();
+            }
+        }
+        return defaultGroup;
+    }
+}
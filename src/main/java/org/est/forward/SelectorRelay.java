@@ -0,0 +1,402 @@
+package org.est.forward;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于 Selector 的转发引擎：少量事件循环线程按就绪事件搬运所有会话的数据，
+ * 每个会话固定分配给一个事件循环，不再为每个方向占用一个阻塞线程。
+ * <p>
+ * 带宽整形时欠账的方向暂停读事件，放入事件循环的定时队列，select 的超时取最早的恢复时刻，
+ * 不为等待占用线程。开启优先级时，同一轮就绪的会话中上一次读到小包的先处理，大块传输的放到最后。
+ */
+final class SelectorRelay implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorRelay.class);
+
+    /**
+     * 会话结束回调，参数为上行与下行的字节数
+     */
+    interface CloseListener {
+        void onClosed(long upstreamBytes, long downstreamBytes);
+    }
+
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    SelectorRelay(int threads) throws IOException {
+        this.loops = new EventLoop[Math.max(1, threads)];
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    void start() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        LOGGER.info("nio 转发引擎已启动，事件循环数: {}", loops.length);
+    }
+
+    /**
+     * 把已建立的客户端与远程连接交给某个事件循环转发，调用后通道的生命周期由引擎负责
+     */
+    void register(SocketChannel client, SocketChannel remote, FlushPolicy flushPolicy,
+                  TrafficShaper.Lease shaping, CloseListener listener) throws IOException {
+        client.configureBlocking(false);
+        remote.configureBlocking(false);
+        EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        loop.submit(new Session(client, remote, flushPolicy, shaping, listener));
+    }
+
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null && loop.thread.isAlive()) {
+                try {
+                    loop.thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Session> pending = new ConcurrentLinkedQueue<>();
+        /** 因限速暂停读取的方向，按恢复时刻排序，只在事件循环线程上访问 */
+        private final PriorityQueue<Pipe> throttled = new PriorityQueue<>(
+                Comparator.comparingLong((Pipe pipe) -> pipe.resumeAt));
+        private final List<SelectionKey> deferred = new ArrayList<>();
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "relay-io-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void submit(Session session) {
+            pending.add(session);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(resumeThrottled());
+                    registerPending();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Session session = (Session) key.attachment();
+                        if (session.bulk(key)) {
+                            deferred.add(key);
+                        } else {
+                            session.handle(key);
+                        }
+                    }
+                    for (SelectionKey key : deferred) {
+                        ((Session) key.attachment()).handle(key);
+                    }
+                    deferred.clear();
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    LOGGER.error("事件循环 {} 异常退出", thread.getName(), e);
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        void throttle(Pipe pipe) {
+            throttled.add(pipe);
+        }
+
+        /**
+         * 恢复已到期的方向
+         *
+         * @return 距下一个恢复时刻的毫秒数，作为 select 的超时；没有暂停的方向时为 0（一直等待）
+         */
+        private long resumeThrottled() {
+            long now = System.nanoTime();
+            Pipe pipe;
+            while ((pipe = throttled.peek()) != null && pipe.resumeAt - now <= 0) {
+                throttled.poll();
+                pipe.resumeAt = 0;
+                pipe.session.updateInterest();
+            }
+            return pipe == null ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(pipe.resumeAt - now + 999_999));
+        }
+
+        private void registerPending() {
+            Session session;
+            while ((session = pending.poll()) != null) {
+                try {
+                    session.register(this);
+                } catch (IOException e) {
+                    LOGGER.debug("注册会话失败: {}", e.getMessage());
+                    session.close();
+                }
+            }
+        }
+
+        private void closeAll() {
+            Session session;
+            while ((session = pending.poll()) != null) {
+                session.close();
+            }
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    ((Session) key.attachment()).close();
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException ignored) {
+            }
+            LOGGER.debug("事件循环 {} 已退出", thread.getName());
+        }
+    }
+
+    /**
+     * 一个方向的数据流：从 source 读，写入 sink，缓冲区始终处于写入（fill）模式。
+     * 非阻塞读取每次就绪都会读入全部已到达的数据（直到缓冲区满），本身就是合并的，
+     * 因此这里只应用写出策略中的塞住选项。
+     */
+    private static final class Pipe {
+        private final Session session;
+        private final SocketChannel source;
+        private final SocketChannel sink;
+        private final FlushPolicy policy;
+        private final TrafficShaper.Lease shaping;
+        private final boolean upstream;
+        private final AdaptiveBuffer buffer = new AdaptiveBuffer(BufferPool.shared());
+        private final RelayStats stats = RelayStats.shared();
+        private boolean eof;
+        private boolean outputShutdown;
+        private boolean corked;
+        private long bytes;
+        private int lastRead;
+        /** 限速暂停读取时为恢复的时刻（System.nanoTime），否则为 0 */
+        private long resumeAt;
+
+        Pipe(Session session, SocketChannel source, SocketChannel sink, boolean upstream) {
+            this.session = session;
+            this.source = source;
+            this.sink = sink;
+            this.policy = session.flushPolicy;
+            this.shaping = session.shaping;
+            this.upstream = upstream;
+        }
+
+        boolean wantsRead() {
+            return !eof && resumeAt == 0 && buffer.buffer().hasRemaining();
+        }
+
+        /**
+         * 上一次读取是否为大块传输
+         */
+        boolean bulk() {
+            return lastRead >= TrafficShaper.SMALL_READ;
+        }
+
+        boolean hasPending() {
+            return buffer.buffer().position() > 0;
+        }
+
+        boolean done() {
+            return outputShutdown;
+        }
+
+        void read() throws IOException {
+            ByteBuffer data = buffer.buffer();
+            int n = source.read(data);
+            stats.recordRead(n, upstream);
+            if (n < 0) {
+                eof = true;
+            } else {
+                bytes += n;
+                lastRead = n;
+                buffer.record(n);
+                if (shaping != null && n > 0) {
+                    long wait = shaping.charge(n);
+                    if (wait > 0) {
+                        resumeAt = System.nanoTime() + wait;
+                        session.loop.throttle(this);
+                    }
+                }
+            }
+            if (policy.cork()) {
+                boolean bulk = !data.hasRemaining();
+                if (bulk != corked) {
+                    sink.socket().setTcpNoDelay(!bulk);
+                    corked = bulk;
+                }
+            }
+            flush();
+        }
+
+        void flush() throws IOException {
+            if (hasPending()) {
+                ByteBuffer data = buffer.buffer();
+                data.flip();
+                sink.write(data);
+                stats.recordWrite();
+                data.compact();
+                buffer.adapt();
+            }
+            // 对端已关闭写方向且数据已全部写出，把半关闭传递给另一端
+            if (eof && !hasPending() && !outputShutdown) {
+                outputShutdown = true;
+                sink.shutdownOutput();
+            }
+        }
+
+        void release() {
+            buffer.release();
+        }
+    }
+
+    private static final class Session {
+        private final SocketChannel client;
+        private final SocketChannel remote;
+        private final FlushPolicy flushPolicy;
+        private final TrafficShaper.Lease shaping;
+        private final CloseListener listener;
+        private EventLoop loop;
+        private Pipe upstream;
+        private Pipe downstream;
+        private SelectionKey clientKey;
+        private SelectionKey remoteKey;
+        private boolean closed;
+
+        Session(SocketChannel client, SocketChannel remote, FlushPolicy flushPolicy,
+                TrafficShaper.Lease shaping, CloseListener listener) {
+            this.client = client;
+            this.remote = remote;
+            this.flushPolicy = flushPolicy;
+            this.shaping = shaping;
+            this.listener = listener;
+        }
+
+        /**
+         * 在事件循环线程上执行，缓冲区从该线程的本地缓存中取
+         */
+        void register(EventLoop loop) throws IOException {
+            this.loop = loop;
+            upstream = new Pipe(this, client, remote, true);
+            downstream = new Pipe(this, remote, client, false);
+            clientKey = client.register(loop.selector, SelectionKey.OP_READ, this);
+            remoteKey = remote.register(loop.selector, SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * 开启优先级时，这个键对应方向上一次读到的是大块数据，本轮推迟处理
+         */
+        boolean bulk(SelectionKey key) {
+            return shaping != null && shaping.priority() && (key == clientKey ? upstream : downstream).bulk();
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (!key.isValid()) {
+                    close();
+                    return;
+                }
+                boolean isClient = key == clientKey;
+                Pipe in = isClient ? upstream : downstream;
+                Pipe out = isClient ? downstream : upstream;
+                if (key.isWritable()) {
+                    out.flush();
+                }
+                if (key.isReadable()) {
+                    in.read();
+                }
+                if (upstream.done() && downstream.done()) {
+                    close();
+                    return;
+                }
+                updateInterest();
+            } catch (IOException e) {
+                LOGGER.debug("会话数据传输中断: {}", e.getMessage());
+                close();
+            }
+        }
+
+        void updateInterest() {
+            if (closed) {
+                return;
+            }
+            clientKey.interestOps((upstream.wantsRead() ? SelectionKey.OP_READ : 0)
+                    | (downstream.hasPending() ? SelectionKey.OP_WRITE : 0));
+            remoteKey.interestOps((downstream.wantsRead() ? SelectionKey.OP_READ : 0)
+                    | (upstream.hasPending() ? SelectionKey.OP_WRITE : 0));
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(client);
+            closeQuietly(remote);
+            long upstreamBytes = 0;
+            long downstreamBytes = 0;
+            if (upstream != null) {
+                upstreamBytes = upstream.bytes;
+                upstream.release();
+            }
+            if (downstream != null) {
+                downstreamBytes = downstream.bytes;
+                downstream.release();
+            }
+            try {
+                listener.onClosed(upstreamBytes, downstreamBytes);
+            } catch (RuntimeException e) {
+                LOGGER.warn("会话关闭回调异常", e);
+            }
+        }
+
+        private static void closeQuietly(SocketChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
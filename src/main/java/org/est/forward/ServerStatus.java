@@ -0,0 +1,85 @@
+package org.est.forward;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 远程服务器状态响应中供 LAN 广播使用的字段：在线人数、最大人数和版本名
+ */
+public final class ServerStatus {
+    private static final Pattern ONLINE = Pattern.compile("\"online\"\\s*:\\s*(-?\\d+)");
+    private static final Pattern MAX = Pattern.compile("\"max\"\\s*:\\s*(-?\\d+)");
+    private static final Pattern VERSION_NAME =
+            Pattern.compile("\"version\"\\s*:\\s*\\{[^}]*?\"name\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final int online;
+    private final int max;
+    private final String versionName;
+
+    ServerStatus(int online, int max, String versionName) {
+        this.online = online;
+        this.max = max;
+        this.versionName = versionName;
+    }
+
+    /**
+     * 从状态 JSON 中提取字段；只用到几个固定字段，用正则即可，不引入 JSON 库
+     */
+    static ServerStatus parse(String json) {
+        return new ServerStatus(intField(ONLINE, json), intField(MAX, json), stringField(VERSION_NAME, json));
+    }
+
+    public int online() {
+        return online;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    public String versionName() {
+        return versionName;
+    }
+
+    private static int intField(Pattern pattern, String json) {
+        Matcher matcher = pattern.matcher(json);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    private static String stringField(Pattern pattern, String json) {
+        Matcher matcher = pattern.matcher(json);
+        if (!matcher.find()) {
+            return "";
+        }
+        return unescape(matcher.group(1));
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 >= value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            if (next == 'u' && i + 4 < value.length()) {
+                sb.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                i += 4;
+            } else if (next == 'n') {
+                sb.append('\n');
+            } else {
+                sb.append(next);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ServerStatus{" + online + "/" + max + ", " + versionName + "}";
+    }
+}
@@ -0,0 +1,296 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个远程分组的服务器列表状态缓存：客户端刷新多人游戏列表时由转发器直接应答状态和延迟查询，
+ * 不再为每次刷新建立一条到远程服务器的连接。
+ * <p>
+ * 状态响应中的版本号与客户端协议版本有关，因此按协议版本分别缓存。缓存超过刷新间隔后仍先返回旧值，
+ * 同时在后台向远程服务器重新查询；超过 {@value #STALE_FACTOR} 倍刷新间隔或还没有缓存时按原方式转发，
+ * 每个协议版本每个刷新间隔最多一次远程查询。
+ * <p>
+ * 协议版本由客户端填写，不可信：最多缓存 {@value #MAX_PROTOCOLS} 个版本，超出时淘汰最久未使用的；
+ * 还没有缓存的版本每个刷新间隔最多发起 {@value #NEW_PROTOCOL_FETCHES} 次查询，
+ * 轮换版本号的客户端既清不空缓存，也不能成倍增加到远程服务器的连接。
+ */
+final class StatusCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatusCache.class);
+    private static final int STALE_FACTOR = 6;
+    private static final int MAX_PROTOCOLS = 16;
+    private static final int NEW_PROTOCOL_FETCHES = 4;
+    private static final int MAX_RESPONSE_LENGTH = 256 * 1024;
+    private static final int PACKET_STATUS = 0x00;
+    private static final int PACKET_PING = 0x01;
+    private static final int FETCH_TIMEOUT_MS = 5000;
+    /** LAN 广播查询状态时使用的协议版本（1.21） */
+    private static final int DEFAULT_PROTOCOL = 767;
+
+    private final LoadBalancer group;
+    private final long refreshNanos;
+    private final Executor executor;
+    private final Map<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Integer, Boolean> fetching = new ConcurrentHashMap<>();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder fetchFailures = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    /** LAN 广播使用的协议版本：最近一次成功查询的版本，不随任意客户端的查询改变 */
+    private volatile int lastProtocol = DEFAULT_PROTOCOL;
+    private long newProtocolWindowStart;
+    private int newProtocolFetches;
+
+    StatusCache(LoadBalancer group, long refreshMillis, Executor executor) {
+        this.group = group;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        this.executor = executor;
+    }
+
+    /**
+     * 有可用缓存时应答客户端的状态查询和延迟测试并返回 true；返回 false 时由调用方照常转发
+     *
+     * @param initial 已读到的握手包及其之后的数据
+     */
+    boolean serve(Socket client, Handshake.Initial initial, int timeoutMillis) throws IOException {
+        int protocol = initial.handshake().protocolVersion();
+        Snapshot snapshot = usable(protocol);
+        if (snapshot == null) {
+            return false;
+        }
+        ByteBuffer rest = initial.bytes().duplicate();
+        rest.position(initial.handshake().end());
+        byte[] buffered = new byte[rest.remaining()];
+        rest.get(buffered);
+        client.setSoTimeout(timeoutMillis);
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(buffered), client.getInputStream());
+        OutputStream out = client.getOutputStream();
+
+        if (readPacket(in) == null) {
+            return true;
+        }
+        out.write(snapshot.packet);
+        out.flush();
+        served.increment();
+        // 延迟测试：Pong 与 Ping 的格式相同，原样返回即可
+        byte[] ping = readPacket(in);
+        if (ping != null && ping.length == 9 && ping[0] == PACKET_PING) {
+            out.write(frame(ping));
+            out.flush();
+        }
+        return true;
+    }
+
+    /**
+     * LAN 广播使用的状态，同时保持该状态按刷新间隔更新
+     */
+    ServerStatus status() {
+        int protocol = lastProtocol;
+        Snapshot snapshot = snapshots.get(protocol);
+        if (snapshot == null || System.nanoTime() - snapshot.fetchedNanos > refreshNanos) {
+            refreshAsync(protocol);
+        }
+        return snapshot != null ? snapshot.status : null;
+    }
+
+    private Snapshot usable(int protocol) {
+        Snapshot snapshot = snapshots.get(protocol);
+        long now = System.nanoTime();
+        long age = Long.MAX_VALUE;
+        if (snapshot != null) {
+            snapshot.lastUsedNanos = now;
+            age = now - snapshot.fetchedNanos;
+        }
+        if (age > refreshNanos) {
+            refreshAsync(protocol);
+        }
+        return age <= refreshNanos * STALE_FACTOR ? snapshot : null;
+    }
+
+    private void refreshAsync(int protocol) {
+        if (fetching.putIfAbsent(protocol, Boolean.TRUE) != null) {
+            return;
+        }
+        if (!snapshots.containsKey(protocol) && !allowNewProtocolFetch()) {
+            fetching.remove(protocol);
+            throttled.increment();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    fetch(protocol);
+                } finally {
+                    fetching.remove(protocol);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fetching.remove(protocol);
+        }
+    }
+
+    /**
+     * 还没有缓存的协议版本的查询配额，每个刷新间隔重置
+     */
+    private synchronized boolean allowNewProtocolFetch() {
+        long now = System.nanoTime();
+        if (newProtocolFetches == 0 || now - newProtocolWindowStart > refreshNanos) {
+            newProtocolWindowStart = now;
+            newProtocolFetches = 0;
+        }
+        if (newProtocolFetches >= NEW_PROTOCOL_FETCHES) {
+            return false;
+        }
+        newProtocolFetches++;
+        return true;
+    }
+
+    /**
+     * 缓存已满时淘汰最久未被使用的协议版本，而不是清空全部缓存
+     */
+    private void evictLeastRecentlyUsed() {
+        Map.Entry<Integer, Snapshot> eldest = null;
+        for (Map.Entry<Integer, Snapshot> entry : snapshots.entrySet()) {
+            if (eldest == null || entry.getValue().lastUsedNanos - eldest.getValue().lastUsedNanos < 0) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            snapshots.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void fetch(int protocol) {
+        AppConfig.Remote remote = group.select(InetAddress.getLoopbackAddress()).remote();
+        String address = remote.rewriteAddress() != null ? remote.rewriteAddress() : remote.host();
+        long start = System.nanoTime();
+        ByteBuffer proxyHeader = null;
+        try (SocketChannel channel = UpstreamConnector.connect(remote)) {
+            ByteBuffer request = ByteBuffer.wrap(new byte[]{1, PACKET_STATUS});
+            ByteBuffer handshake = Handshake.encode(protocol, address, remote.port(), Handshake.STATE_STATUS);
+            ByteBuffer[] packets = {handshake, request};
+            if (remote.proxyProtocol() != null) {
+                // 远程要求 PROXY 头时查询连接也必须带上，来源就是本机
+                proxyHeader = ProxyHeader.encode(BufferPool.shared().acquire(ProxyHeader.sizeClass(remote)), remote,
+                        (InetSocketAddress) channel.getLocalAddress(), (InetSocketAddress) channel.getRemoteAddress());
+                packets = new ByteBuffer[]{proxyHeader, handshake, request};
+            }
+            while (request.hasRemaining()) {
+                channel.write(packets);
+            }
+            channel.socket().setSoTimeout(FETCH_TIMEOUT_MS);
+            byte[] body = readPacket(channel.socket().getInputStream());
+            if (body == null || body[0] != PACKET_STATUS) {
+                throw new IOException("远程服务器没有返回状态响应");
+            }
+            ByteBuffer view = ByteBuffer.wrap(body, 1, body.length - 1);
+            int jsonLength = readVarInt(view);
+            String json = new String(body, view.position(), jsonLength, StandardCharsets.UTF_8);
+            ServerStatus status = ServerStatus.parse(json);
+            while (snapshots.size() >= MAX_PROTOCOLS && !snapshots.containsKey(protocol)) {
+                evictLeastRecentlyUsed();
+            }
+            snapshots.put(protocol, new Snapshot(frame(body), status, System.nanoTime()));
+            lastProtocol = protocol;
+            fetches.increment();
+            LOGGER.debug("已刷新 {} 的状态缓存（协议 {}，耗时 {} ms）", remote, protocol,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            fetchFailures.increment();
+            LOGGER.debug("刷新 {} 的状态缓存失败: {}", remote, e.getMessage());
+        } finally {
+            BufferPool.shared().release(proxyHeader);
+        }
+    }
+
+    /**
+     * 读一个完整的数据包（不含长度前缀），连接已关闭时返回 null
+     */
+    private static byte[] readPacket(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            if (shift > 28) {
+                throw new IOException("数据包长度格式错误");
+            }
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length <= 0 || length > MAX_RESPONSE_LENGTH) {
+            throw new IOException("数据包长度异常: " + length);
+        }
+        byte[] body = in.readNBytes(length);
+        if (body.length < length) {
+            throw new EOFException("数据包不完整");
+        }
+        return body;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift <= 28; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                break;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt 格式错误");
+    }
+
+    private static byte[] frame(byte[] body) {
+        ByteBuffer packet = ByteBuffer.allocate(Handshake.varIntSize(body.length) + body.length);
+        Handshake.writeVarInt(packet, body.length);
+        packet.put(body);
+        return packet.array();
+    }
+
+    @Override
+    public String toString() {
+        return "StatusCache{" + group.group() + ", 协议版本=" + snapshots.keySet() + ", 缓存应答=" + served.sum()
+                + ", 远程查询=" + fetches.sum() + ", 查询失败=" + fetchFailures.sum() + ", 新版本查询受限=" + throttled.sum()
+                + "}";
+    }
+
+    private static final class Snapshot {
+        private final byte[] packet;
+        private final ServerStatus status;
+        private final long fetchedNanos;
+        private volatile long lastUsedNanos;
+
+        Snapshot(byte[] packet, ServerStatus status, long fetchedNanos) {
+            this.packet = packet;
+            this.status = status;
+            this.fetchedNanos = fetchedNanos;
+            this.lastUsedNanos = fetchedNanos;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.est.metrics.Counter;
+import org.est.metrics.Histogram;
+import org.est.metrics.MetricRegistry;
+import org.est.net.IpWhitelist;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 转发带宽整形：每个会话、每个网段和整个进程各一个令牌桶，会话的上下行都从这三个桶中扣除。
+ * <p>
+ * 数据先转发再扣令牌，令牌不足时桶记下欠账，由转发循环在下一次读取前等待欠账还清：nio 引擎暂停该方向的读事件，
+ * 到期后由事件循环恢复；classic 引擎在欠账超过 {@link #MIN_WAIT_NANOS} 时才挂起一次，零星的小欠账累积到下一次。
+ * 开启优先级后小于 {@link #SMALL_READ} 字节的读取（移动、心跳等）照常扣令牌但从不等待，等待只落在大块传输上。
+ * <p>
+ * 网段指客户端命中的白名单条目，没有白名单时 IPv4 按 /24、IPv6 按 /64 划分。
+ */
+final class TrafficShaper {
+    /** 优先级模式下视为小包的读取字节数 */
+    static final int SMALL_READ = 512;
+    /** 欠账不足 1 毫秒时不等待，留到下一次读取一起计算 */
+    static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int DEFAULT_PREFIX_V4 = 24;
+    private static final int DEFAULT_PREFIX_V6 = 64;
+    /** 桶容量：允许约 0.25 秒的突发，至少 64 KB */
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long MIN_BURST_BYTES = 64 * 1024;
+
+    private static final MetricRegistry METRICS = MetricRegistry.shared();
+    private static final Counter PASSED = decision("pass");
+    private static final Counter PRIORITY = decision("priority");
+    private static final Counter THROTTLED_SESSION = decision("throttle_session");
+    private static final Counter THROTTLED_SUBNET = decision("throttle_subnet");
+    private static final Counter THROTTLED_TOTAL = decision("throttle_total");
+    private static final Histogram THROTTLED_TIME = METRICS.histogram("shaping_throttled_seconds",
+            "限速时转发方向暂停读取的时长", MetricRegistry.LATENCY_BUCKETS);
+
+    private final long sessionRate;
+    private final long subnetRate;
+    private final Bucket total;
+    private final boolean priority;
+    private final Map<InetAddress, Bucket> subnets = new ConcurrentHashMap<>();
+
+    private TrafficShaper(long sessionRate, long subnetRate, Bucket total, boolean priority) {
+        this.sessionRate = sessionRate;
+        this.subnetRate = subnetRate;
+        this.total = total;
+        this.priority = priority;
+    }
+
+    /**
+     * @param total 进程级的桶，多个监听端口共用；不限制总带宽时为 null
+     */
+    static TrafficShaper from(AppConfig.Local local, Bucket total) {
+        return new TrafficShaper(bytesPerSecond(local.bandwidthPerSession()),
+                bytesPerSecond(local.bandwidthPerSubnet()), total, local.trafficPriority());
+    }
+
+    static long bytesPerSecond(long kilobytesPerSecond) {
+        return kilobytesPerSecond * 1024;
+    }
+
+    private static Counter decision(String decision) {
+        return METRICS.counter("shaping_decisions_total", "带宽整形对每次读取的处理",
+                "decision=\"" + decision + "\"");
+    }
+
+    /**
+     * 限速参数是否与配置相同；重新加载配置时参数未变就沿用当前实例，保留网段的桶
+     */
+    boolean matches(AppConfig.Local local, Bucket total) {
+        return sessionRate == bytesPerSecond(local.bandwidthPerSession())
+                && subnetRate == bytesPerSecond(local.bandwidthPerSubnet())
+                && priority == local.trafficPriority() && this.total == total;
+    }
+
+    boolean enabled() {
+        return sessionRate > 0 || subnetRate > 0 || total != null;
+    }
+
+    /**
+     * 为一个会话取得限速句柄，未开启限速时返回 null；会话结束时必须调用 {@link Lease#close()}
+     *
+     * @param whitelist 用于查找客户端所在的网段
+     */
+    Lease open(InetAddress address, IpWhitelist whitelist) {
+        if (!enabled()) {
+            return null;
+        }
+        InetAddress subnet = subnetRate > 0 ? subnetOf(address, whitelist.allowPrefix(address)) : null;
+        Bucket subnetBucket = null;
+        if (subnet != null) {
+            subnetBucket = subnets.compute(subnet, (key, bucket) -> {
+                Bucket result = bucket != null ? bucket : new Bucket(subnetRate);
+                result.sessions++;
+                return result;
+            });
+        }
+        return new Lease(sessionRate > 0 ? new Bucket(sessionRate) : null, subnet, subnetBucket);
+    }
+
+    private static InetAddress subnetOf(InetAddress address, int allowPrefix) {
+        byte[] bytes = address.getAddress();
+        int prefix = allowPrefix >= 0 ? allowPrefix : (bytes.length == 4 ? DEFAULT_PREFIX_V4 : DEFAULT_PREFIX_V6);
+        for (int bit = prefix; bit < bytes.length * 8; bit++) {
+            bytes[bit >>> 3] &= (byte) ~(0x80 >>> (bit & 7));
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficShaper{会话=" + sessionRate / 1024 + "KB/s, 网段=" + subnetRate / 1024 + "KB/s"
+                + ", 总计=" + (total != null ? total.bytesPerSecond / 1024 + "KB/s" : "0KB/s")
+                + (priority ? ", 小包优先" : "") + ", 网段数=" + subnets.size() + "}";
+    }
+
+    /**
+     * 一个会话的限速状态，上下行两个方向共用（classic 引擎下由两个线程同时使用）
+     */
+    final class Lease implements AutoCloseable {
+        private final Bucket session;
+        private final InetAddress subnet;
+        private final Bucket subnetBucket;
+        private boolean closed;
+
+        private Lease(Bucket session, InetAddress subnet, Bucket subnetBucket) {
+            this.session = session;
+            this.subnet = subnet;
+            this.subnetBucket = subnetBucket;
+        }
+
+        boolean priority() {
+            return priority;
+        }
+
+        /**
+         * 扣除已转发的字节数
+         *
+         * @return 下一次读取前需要等待的纳秒数，0 表示不需要等待
+         */
+        long charge(int bytes) {
+            long now = System.nanoTime();
+            long wait = 0;
+            Counter scope = null;
+            if (session != null) {
+                wait = session.take(bytes, now);
+                scope = THROTTLED_SESSION;
+            }
+            if (subnetBucket != null) {
+                long subnetWait = subnetBucket.take(bytes, now);
+                if (subnetWait > wait) {
+                    wait = subnetWait;
+                    scope = THROTTLED_SUBNET;
+                }
+            }
+            if (total != null) {
+                long totalWait = total.take(bytes, now);
+                if (totalWait > wait) {
+                    wait = totalWait;
+                    scope = THROTTLED_TOTAL;
+                }
+            }
+            if (wait < MIN_WAIT_NANOS) {
+                PASSED.increment();
+                return 0;
+            }
+            if (priority && bytes < SMALL_READ) {
+                PRIORITY.increment();
+                return 0;
+            }
+            scope.increment();
+            THROTTLED_TIME.recordNanos(wait);
+            return wait;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (subnet != null) {
+                subnets.computeIfPresent(subnet, (key, bucket) -> --bucket.sessions == 0 ? null : bucket);
+            }
+        }
+    }
+
+    /**
+     * 允许欠账的令牌桶（GCRA）：只记录令牌耗尽的时刻，早于 now - 容量 表示桶是满的；
+     * 扣除令牌就是把这个时刻向后推，推到 now 之后的部分就是欠账，一次 CAS 完成，不加锁
+     */
+    static final class Bucket {
+        private final long bytesPerSecond;
+        private final double nanosPerByte;
+        private final long burstNanos;
+        private final AtomicLong emptyAt;
+        /** 共用这个桶的会话数，只在 subnets.compute 中修改 */
+        private int sessions;
+
+        Bucket(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.nanosPerByte = (double) TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+            this.burstNanos = Math.max(BURST_NANOS, (long) (MIN_BURST_BYTES * nanosPerByte));
+            this.emptyAt = new AtomicLong(System.nanoTime() - burstNanos);
+        }
+
+        long bytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return 扣除后欠账折合的纳秒数
+         */
+        long take(int bytes, long now) {
+            long cost = (long) (bytes * nanosPerByte);
+            while (true) {
+                long current = emptyAt.get();
+                long next = Math.max(current, now - burstNanos) + cost;
+                if (emptyAt.compareAndSet(current, next)) {
+                    return Math.max(0L, next - now);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.est.metrics.Counter;
+import org.est.metrics.Histogram;
+import org.est.metrics.MetricRegistry;
+import org.est.net.CachedResolver;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 建立到远程服务器的阻塞连接，返回的通道处于阻塞模式并已开启 TCP_NODELAY。
+ * 地址取自 {@link CachedResolver} 的缓存，玩家加入时不等待 DNS
+ * <p>
+ * 解析出多个地址时按 RFC 8305（Happy Eyeballs）竞速：两个协议族交替排列，最近连接成功的地址排在最前，
+ * 每隔 {@link #ATTEMPT_DELAY} 或上一个尝试失败时发起下一个非阻塞连接，最先连上的胜出，其余立即关闭。
+ * 某个地址不可达或 IPv6 不通时，玩家只多等一个间隔，而不是整个 {@link #CONNECT_TIMEOUT}。
+ */
+public final class UpstreamConnector {
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    /** RFC 8305 建议的连接尝试间隔 */
+    static final Duration ATTEMPT_DELAY = Duration.ofMillis(250);
+    /** 成功连接的地址在这段时间内优先尝试 */
+    private static final long PREFERENCE_TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+    /** 最多为这么多个地址单独记录耗时，超出的记在 address="other" 下 */
+    private static final int MAX_TRACKED_ADDRESSES = 256;
+
+    private static final MetricRegistry METRICS = MetricRegistry.shared();
+    private static final Counter ATTEMPTS_WON = attempts("won");
+    private static final Counter ATTEMPTS_FAILED = attempts("failed");
+    private static final Counter ATTEMPTS_CANCELLED = attempts("cancelled");
+    private static final Map<InetSocketAddress, Histogram> LATENCY = new ConcurrentHashMap<>();
+    private static final Map<String, Preference> PREFERRED = new ConcurrentHashMap<>();
+
+    private UpstreamConnector() {
+    }
+
+    private static Counter attempts(String result) {
+        return METRICS.counter("upstream_connect_attempts_total", "到远程服务器各个地址的连接尝试",
+                "result=\"" + result + "\"");
+    }
+
+    public static SocketChannel connect(AppConfig.Remote remote) throws IOException {
+        String key = remote.host().toLowerCase(Locale.ROOT) + ":" + remote.port();
+        List<InetSocketAddress> candidates = order(CachedResolver.shared().resolveAll(remote), preferred(key));
+        SocketChannel channel = candidates.size() == 1 ? connectBlocking(candidates.get(0)) : race(candidates);
+        try {
+            channel.socket().setTcpNoDelay(true);
+            InetSocketAddress winner = (InetSocketAddress) channel.getRemoteAddress();
+            PREFERRED.put(key, new Preference(winner, System.nanoTime()));
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static SocketChannel connectBlocking(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        long start = System.nanoTime();
+        try {
+            channel.socket().connect(address, (int) CONNECT_TIMEOUT.toMillis());
+            ATTEMPTS_WON.increment();
+            latency(address).recordNanos(System.nanoTime() - start);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            ATTEMPTS_FAILED.increment();
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 交替排列两个协议族的地址，首选地址（或解析结果中的第一个）所在的协议族先行
+     */
+    static List<InetSocketAddress> order(InetSocketAddress[] addresses, InetSocketAddress preferred) {
+        boolean hasPreferred = false;
+        for (InetSocketAddress address : addresses) {
+            hasPreferred |= address.equals(preferred);
+        }
+        InetSocketAddress leader = hasPreferred ? preferred : addresses[0];
+        boolean leaderIpv4 = leader.getAddress() instanceof Inet4Address;
+        List<InetSocketAddress> same = new ArrayList<>();
+        List<InetSocketAddress> other = new ArrayList<>();
+        same.add(leader);
+        for (InetSocketAddress address : addresses) {
+            if (address.equals(leader)) {
+                continue;
+            }
+            (address.getAddress() instanceof Inet4Address == leaderIpv4 ? same : other).add(address);
+        }
+        List<InetSocketAddress> ordered = new ArrayList<>(addresses.length);
+        for (int i = 0; i < Math.max(same.size(), other.size()); i++) {
+            if (i < same.size()) {
+                ordered.add(same.get(i));
+            }
+            if (i < other.size()) {
+                ordered.add(other.get(i));
+            }
+        }
+        return ordered;
+    }
+
+    private static InetSocketAddress preferred(String key) {
+        Preference preference = PREFERRED.get(key);
+        if (preference == null || System.nanoTime() - preference.nanos > PREFERENCE_TTL_NANOS) {
+            return null;
+        }
+        return preference.address;
+    }
+
+    /**
+     * 错开发起的非阻塞连接竞速，所有尝试都在一个 Selector 上等待
+     */
+    private static SocketChannel race(List<InetSocketAddress> candidates) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + CONNECT_TIMEOUT.toNanos();
+        long nextAttemptAt = start;
+        int next = 0;
+        IOException lastFailure = null;
+        SocketChannel winner = null;
+        List<SocketChannel> pending = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            while (winner == null) {
+                long now = System.nanoTime();
+                if (next < candidates.size() && (now - nextAttemptAt >= 0 || pending.isEmpty())) {
+                    InetSocketAddress address = candidates.get(next++);
+                    nextAttemptAt = now + ATTEMPT_DELAY.toNanos();
+                    SocketChannel channel = SocketChannel.open();
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(address)) {
+                            winner = won(channel, address, now);
+                        } else {
+                            channel.register(selector, SelectionKey.OP_CONNECT, new Attempt(address, now));
+                            pending.add(channel);
+                        }
+                    } catch (IOException e) {
+                        ATTEMPTS_FAILED.increment();
+                        channel.close();
+                        lastFailure = e;
+                        nextAttemptAt = now;
+                    }
+                    continue;
+                }
+                if (pending.isEmpty()) {
+                    throw lastFailure != null ? lastFailure : new ConnectException("没有可用的地址");
+                }
+                if (now - deadline >= 0) {
+                    throw new SocketTimeoutException("连接 " + candidates + " 超时");
+                }
+                long wakeAt = next < candidates.size() && nextAttemptAt - deadline < 0 ? nextAttemptAt : deadline;
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeAt - now)));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext() && winner == null) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    Attempt attempt = (Attempt) key.attachment();
+                    try {
+                        if (channel.finishConnect()) {
+                            key.cancel();
+                            pending.remove(channel);
+                            winner = won(channel, attempt.address, attempt.startNanos);
+                        }
+                    } catch (IOException e) {
+                        // 这个地址失败了，立即发起下一个，不必等满间隔
+                        ATTEMPTS_FAILED.increment();
+                        pending.remove(channel);
+                        channel.close();
+                        lastFailure = e;
+                        nextAttemptAt = System.nanoTime();
+                    }
+                }
+            }
+        } finally {
+            for (SocketChannel loser : pending) {
+                ATTEMPTS_CANCELLED.increment();
+                loser.close();
+            }
+        }
+        // Selector 关闭后通道才能切换回阻塞模式
+        try {
+            winner.configureBlocking(true);
+            return winner;
+        } catch (IOException | RuntimeException e) {
+            winner.close();
+            throw e;
+        }
+    }
+
+    private static SocketChannel won(SocketChannel channel, InetSocketAddress address, long startNanos) {
+        ATTEMPTS_WON.increment();
+        latency(address).recordNanos(System.nanoTime() - startNanos);
+        return channel;
+    }
+
+    private static Histogram latency(InetSocketAddress address) {
+        Histogram histogram = LATENCY.get(address);
+        if (histogram != null) {
+            return histogram;
+        }
+        String label = LATENCY.size() < MAX_TRACKED_ADDRESSES
+                ? address.getAddress().getHostAddress() + ":" + address.getPort() : "other";
+        histogram = METRICS.histogram("upstream_connect_address_seconds", "到远程服务器各个地址的 TCP 建连耗时",
+                "address=\"" + label + "\"", MetricRegistry.LATENCY_BUCKETS);
+        if (!"other".equals(label)) {
+            LATENCY.putIfAbsent(address, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * 各地址的建连耗时分位数，用于关闭时的调试日志
+     */
+    static String summary() {
+        StringBuilder sb = new StringBuilder();
+        LATENCY.forEach((address, histogram) -> sb.append(sb.length() > 0 ? ", " : "")
+                .append(address.getAddress().getHostAddress()).append(':').append(address.getPort())
+                .append(" n=").append(histogram.count())
+                .append(" p50<=").append(histogram.percentileNanos(0.5) / 1_000_000.0).append("ms")
+                .append(" p99<=").append(histogram.percentileNanos(0.99) / 1_000_000.0).append("ms"));
+        return "UpstreamConnector{" + sb + "}";
+    }
+
+    private static final class Attempt {
+        private final InetSocketAddress address;
+        private final long startNanos;
+
+        Attempt(InetSocketAddress address, long startNanos) {
+            this.address = address;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class Preference {
+        private final InetSocketAddress address;
+        private final long nanos;
+
+        Preference(InetSocketAddress address, long nanos) {
+            this.address = address;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预先建立的远程连接池：玩家加入时直接取一个已连接的空闲连接，池子在后台补齐。
+ * <p>
+ * 取用时检查连接年龄和存活状态（非阻塞读返回 -1 说明远程已关闭，读到数据说明连接状态异常），
+ * 超过 maxIdle 的连接丢弃，避免远程服务器因等待握手超时而关闭它们。补连失败时等到下一次维护再重试。
+ */
+final class UpstreamPool implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamPool.class);
+    private static final long MAINTAIN_INTERVAL_MS = 1000L;
+    private static final int STATS_LOG_EVERY = 60;
+    /** 探测空闲连接用的 1 字节缓冲区；各线程用 duplicate() 取独立的位置，不共享 position */
+    private static final ByteBuffer PROBE = ByteBuffer.allocateDirect(1);
+
+    private final AppConfig.Remote remote;
+    private final int size;
+    private final long maxIdleNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Deque<Idle> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger refilling = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+    private final LongAdder refillFailures = new LongAdder();
+    private final LongAdder refillNanos = new LongAdder();
+    private volatile boolean lastRefillFailed;
+    /** 维护任务；调度线程由所有连接池共用，关闭时必须取消，否则重新加载配置后旧池会一直被调度 */
+    private volatile ScheduledFuture<?> maintenance;
+    private int maintainRuns;
+
+    UpstreamPool(AppConfig.Remote remote, ScheduledExecutorService scheduler) {
+        this.remote = remote;
+        this.size = remote.poolSize();
+        this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(remote.poolMaxIdleMs());
+        this.scheduler = scheduler;
+    }
+
+    void start() {
+        maintenance = scheduler.scheduleWithFixedDelay(this::maintain, 0, MAINTAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        LOGGER.info("远程连接池已启动: {}:{}，保持 {} 个空闲连接", remote.host(), remote.port(), size);
+    }
+
+    /**
+     * 取出一个可用的空闲连接，没有时返回 null，由调用方直接建立新连接
+     */
+    SocketChannel take() {
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            if (isUsable(entry)) {
+                hits.increment();
+                scheduleRefill();
+                return entry.channel;
+            }
+            evictions.increment();
+            closeQuietly(entry.channel);
+        }
+        misses.increment();
+        scheduleRefill();
+        return null;
+    }
+
+    private boolean isUsable(Idle entry) {
+        if (System.nanoTime() - entry.createdNanos > maxIdleNanos) {
+            return false;
+        }
+        SocketChannel channel = entry.channel;
+        try {
+            channel.configureBlocking(false);
+            int n = channel.read(PROBE.duplicate());
+            channel.configureBlocking(true);
+            return n == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void scheduleRefill() {
+        if (!closed.get() && !lastRefillFailed) {
+            scheduler.execute(this::refill);
+        }
+    }
+
+    /**
+     * 定期淘汰过期连接并补齐池子；上一次补连失败时也由这里恢复
+     */
+    private void maintain() {
+        int checked = idleCount.get();
+        for (int i = 0; i < checked; i++) {
+            Idle entry = idle.pollFirst();
+            if (entry == null) {
+                break;
+            }
+            if (System.nanoTime() - entry.createdNanos > maxIdleNanos) {
+                idleCount.decrementAndGet();
+                evictions.increment();
+                closeQuietly(entry.channel);
+            } else {
+                idle.offerLast(entry);
+            }
+        }
+        lastRefillFailed = false;
+        refill();
+        if (++maintainRuns % STATS_LOG_EVERY == 0) {
+            LOGGER.debug("{}", this);
+        }
+    }
+
+    private void refill() {
+        while (!closed.get() && reserveRefill()) {
+            long start = System.nanoTime();
+            try {
+                SocketChannel channel = UpstreamConnector.connect(remote);
+                refills.increment();
+                refillNanos.add(System.nanoTime() - start);
+                if (closed.get()) {
+                    closeQuietly(channel);
+                    return;
+                }
+                // 新连接放在队尾，取用时优先使用更早建立、距离过期更近的连接
+                idle.offerLast(new Idle(channel, System.nanoTime()));
+                idleCount.incrementAndGet();
+            } catch (IOException e) {
+                refillFailures.increment();
+                lastRefillFailed = true;
+                LOGGER.debug("连接池补连 {}:{} 失败: {}", remote.host(), remote.port(), e.getMessage());
+                return;
+            } finally {
+                refilling.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 原子地占用一个补连名额：take() 触发的补连与 maintain() 可能同时在两个调度线程上运行，
+     * 先检查再自增会让两边都补到 size 以上
+     */
+    private boolean reserveRefill() {
+        while (true) {
+            int reserved = refilling.get();
+            if (idleCount.get() + reserved >= size) {
+                return false;
+            }
+            if (refilling.compareAndSet(reserved, reserved + 1)) {
+                // 占位期间可能有补连刚完成并计入 idleCount，再核对一次
+                if (idleCount.get() + reserved + 1 > size) {
+                    refilling.decrementAndGet();
+                    return false;
+                }
+                return true;
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long total = hits() + misses();
+        return total == 0 ? 0.0 : (double) hits() / total;
+    }
+
+    public double averageRefillMillis() {
+        long count = refills.sum();
+        return count == 0 ? 0.0 : refillNanos.sum() / (count * 1_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UpstreamPool{%s:%d, 空闲=%d, 命中=%d, 未命中=%d, 命中率=%.1f%%, 淘汰=%d, 补连=%d, 补连失败=%d, 平均补连耗时=%.1fms}",
+                remote.host(), remote.port(), idleCount.get(), hits(), misses(), hitRate() * 100,
+                evictions.sum(), refills.sum(), refillFailures.sum(), averageRefillMillis());
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledFuture<?> task = maintenance;
+        if (task != null) {
+            task.cancel(false);
+        }
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            closeQuietly(entry.channel);
+        }
+        idleCount.set(0);
+        LOGGER.info("远程连接池已关闭: {}", this);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Idle {
+        private final SocketChannel channel;
+        private final long createdNanos;
+
+        Idle(SocketChannel channel, long createdNanos) {
+            this.channel = channel;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
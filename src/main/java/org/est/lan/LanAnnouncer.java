@@ -1,70 +1,296 @@
 package org.est.lan;
 
 import org.est.config.AppConfig;
+import org.est.forward.ServerStatus;
+import org.est.metrics.Counter;
+import org.est.metrics.MetricRegistry;
+import org.est.net.CachedResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+/**
+ * LAN 广播：每个周期把所有条目的数据包发往每个网卡所在网段的广播地址。
+ * <p>
+ * 数据包只在 MOTD 中占位符对应的状态变化时重新生成，广播目标每 {@value #INTERFACE_CHECK_MS} ms
+ * 或发送失败后重新枚举网卡；平时每个周期只是把预先生成的缓冲区依次交给同一个 DatagramChannel。
+ * 重新加载配置时替换整份广播计划，下一个周期按新计划重新生成数据包。
+ */
 public final class LanAnnouncer implements AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger(LanAnnouncer.class);
-    private final AppConfig.Lan lanConfig;
-    private final AppConfig.Local localConfig;
+    private static final long INTERFACE_CHECK_MS = 30_000L;
+    private static final String LIMITED_BROADCAST = "255.255.255.255";
+    private static final Counter SENT = MetricRegistry.shared().counter("lan_announcements_total",
+            "发出的 LAN 广播包数", "result=\"sent\"");
+    private static final Counter FAILED = MetricRegistry.shared().counter("lan_announcements_total",
+            "发出的 LAN 广播包数", "result=\"failed\"");
+
+    private final AtomicReference<Plan> plan = new AtomicReference<>();
+    /** 每个监听端口的远程服务器状态，顺序与 listeners 相同 */
+    private final List<Supplier<ServerStatus>> statuses;
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
     private final AtomicBoolean running = new AtomicBoolean(false);
-    private DatagramSocket socket;
+    private DatagramChannel channel;
+    private ScheduledFuture<?> task;
+
+    // 以下字段只在广播线程上访问
+    private List<InetSocketAddress> targets = Collections.emptyList();
+    private Plan renderedPlan;
+    private ByteBuffer[] payloads;
+    private ServerStatus[] renderedWith;
+    private long nextInterfaceCheck;
+    private boolean lastSendFailed;
+
+    /**
+     * 同一进程的多个监听端口共用一个广播：每个在 LAN 列表中显示的监听端口一个条目，
+     * 广播地址、间隔和额外条目取第一个（顶层配置）的 lan
+     *
+     * @param statuses 每个监听端口的远程服务器状态，顺序与 listeners 相同
+     */
+    public LanAnnouncer(List<AppConfig> listeners, List<Supplier<ServerStatus>> statuses) {
+        this.statuses = List.copyOf(statuses);
+        this.plan.set(new Plan(listeners.get(0).lan(), announcements(listeners, this.statuses)));
+    }
 
-    public LanAnnouncer(AppConfig.Lan lanConfig, AppConfig.Local localConfig) {
-        this.lanConfig = Objects.requireNonNull(lanConfig);
-        this.localConfig = Objects.requireNonNull(localConfig);
+    private static List<Announcement> announcements(List<AppConfig> listeners,
+                                                    List<Supplier<ServerStatus>> statuses) {
+        List<Announcement> announcements = new ArrayList<>();
+        for (int i = 0; i < listeners.size(); i++) {
+            AppConfig listener = listeners.get(i);
+            if (listener.lan().listed()) {
+                announcements.add(new Announcement(listener.lan().motd(), listener.local().listenPort(),
+                        statusOf(statuses, i)));
+            }
+        }
+        for (AppConfig.Lan.Entry entry : listeners.get(0).lan().entries()) {
+            announcements.add(new Announcement(entry.motd(), entry.port(), statusOf(statuses, 0)));
+        }
+        return announcements;
+    }
+
+    private static Supplier<ServerStatus> statusOf(List<Supplier<ServerStatus>> statuses, int index) {
+        return index < statuses.size() ? statuses.get(index) : () -> null;
     }
 
     public void start() throws Exception {
         if (!running.compareAndSet(false, true)) {
             return;
         }
-        this.socket = new DatagramSocket();
-        this.socket.setBroadcast(true);
-        long interval = lanConfig.announceIntervalMillis();
-        scheduler.scheduleAtFixedRate(this::broadcast, 0, interval, TimeUnit.MILLISECONDS);
-        LOGGER.info("LAN 广播线程已启动，每 {} ms 广播一次", interval);
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        this.channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        Plan current = plan.get();
+        schedule(current.lanConfig.announceIntervalMillis());
+        LOGGER.info("LAN 广播线程已启动，每 {} ms 广播 {} 个条目",
+                current.lanConfig.announceIntervalMillis(), current.announcements.size());
+    }
+
+    private synchronized void schedule(long interval) {
+        if (task != null) {
+            task.cancel(false);
+        }
+        task = scheduler.scheduleAtFixedRate(this::broadcast, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 应用重新加载的配置，listeners 与构造时的顺序对应；广播间隔变化时重新安排广播任务
+     */
+    public void reload(List<AppConfig> listeners) {
+        replacePlan(new Plan(listeners.get(0).lan(), announcements(listeners, statuses)));
+    }
+
+    private void replacePlan(Plan next) {
+        AppConfig.Lan lanConfig = next.lanConfig;
+        Plan previous = plan.getAndSet(next);
+        if (running.get() && lanConfig.announceIntervalMillis() != previous.lanConfig.announceIntervalMillis()) {
+            schedule(lanConfig.announceIntervalMillis());
+        }
+        LOGGER.info("LAN 广播配置已更新，每 {} ms 广播 {} 个条目",
+                lanConfig.announceIntervalMillis(), next.announcements.size());
     }
 
     private void broadcast() {
         try {
-            String payload = buildPayload();
-            byte[] data = payload.getBytes(StandardCharsets.UTF_8);
-            InetAddress address = InetAddress.getByName(lanConfig.broadcastAddress());
-            DatagramPacket packet = new DatagramPacket(
-                    data, data.length, address, lanConfig.broadcastPort());
-            socket.send(packet);
-            LOGGER.debug("已广播 LAN 包: {}", payload);
+            Plan current = plan.get();
+            long now = System.currentTimeMillis();
+            if (current != renderedPlan) {
+                renderedPlan = current;
+                payloads = new ByteBuffer[current.announcements.size()];
+                renderedWith = new ServerStatus[current.announcements.size()];
+                nextInterfaceCheck = 0;
+            }
+            if (now >= nextInterfaceCheck || lastSendFailed) {
+                updateTargets(current.lanConfig);
+                nextInterfaceCheck = now + INTERFACE_CHECK_MS;
+            }
+            updatePayloads(current.announcements);
+            int failed = 0;
+            for (InetSocketAddress target : targets) {
+                for (ByteBuffer payload : payloads) {
+                    payload.rewind();
+                    try {
+                        channel.send(payload, target);
+                        SENT.increment();
+                    } catch (IOException e) {
+                        FAILED.increment();
+                        failed++;
+                        LOGGER.debug("向 {} 广播 LAN 包失败: {}", target, e.getMessage());
+                        break;
+                    }
+                }
+            }
+            if (failed > 0 && failed == targets.size() && !lastSendFailed) {
+                LOGGER.error("广播 LAN 包失败，所有广播地址均不可用: {}", targets);
+            }
+            lastSendFailed = failed > 0;
         } catch (Exception e) {
             LOGGER.error("广播 LAN 包失败", e);
         }
     }
 
-    private String buildPayload() {
-        // MOTD 完全由用户配置决定，不自动添加版本等信息
-        return "[MOTD]" + lanConfig.motd() + "[/MOTD][AD]" + localConfig.listenPort() + "[/AD]";
+    /**
+     * 广播目标变化时才替换，未变化时保留原列表
+     */
+    private void updateTargets(AppConfig.Lan lanConfig) throws IOException {
+        List<InetSocketAddress> current = new ArrayList<>();
+        for (InetAddress address : broadcastAddresses(lanConfig)) {
+            current.add(new InetSocketAddress(address, lanConfig.broadcastPort()));
+        }
+        if (!current.equals(targets)) {
+            targets = Collections.unmodifiableList(current);
+            LOGGER.info("LAN 广播地址: {}", current);
+        }
+    }
+
+    private static Set<InetAddress> broadcastAddresses(AppConfig.Lan lanConfig) throws IOException {
+        Set<InetAddress> addresses = new LinkedHashSet<>();
+        if (!lanConfig.broadcastAllInterfaces()) {
+            addresses.add(CachedResolver.shared().resolve(lanConfig.broadcastAddress().trim()));
+            return addresses;
+        }
+        try {
+            for (NetworkInterface nic : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!nic.isUp() || nic.isLoopback() || nic.isPointToPoint()) {
+                    continue;
+                }
+                for (InterfaceAddress address : nic.getInterfaceAddresses()) {
+                    if (address.getBroadcast() != null) {
+                        addresses.add(address.getBroadcast());
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            LOGGER.debug("枚举网卡失败: {}", e.getMessage());
+        }
+        if (addresses.isEmpty()) {
+            // 没有可用的网卡广播地址时退回到受限广播，由系统选择出口
+            addresses.add(InetAddress.getByName(LIMITED_BROADCAST));
+        }
+        return addresses;
+    }
+
+    /**
+     * 只有 MOTD 占位符对应的状态对象变化时才重新生成数据包
+     */
+    private void updatePayloads(List<Announcement> announcements) {
+        for (int i = 0; i < payloads.length; i++) {
+            Announcement announcement = announcements.get(i);
+            ServerStatus status = announcement.hasPlaceholders ? announcement.status.get() : null;
+            if (payloads[i] != null && status == renderedWith[i]) {
+                continue;
+            }
+            payloads[i] = render(announcement, status);
+            renderedWith[i] = status;
+        }
+    }
+
+    /**
+     * 生成一个条目的广播数据包（只读的堆外缓冲区）
+     */
+    static ByteBuffer render(Announcement announcement, ServerStatus status) {
+        byte[] data = buildPayload(announcement, status).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocateDirect(data.length);
+        payload.put(data).flip();
+        return payload.asReadOnlyBuffer();
+    }
+
+    private static String buildPayload(Announcement announcement, ServerStatus status) {
+        // MOTD 完全由用户配置决定，不自动添加版本等信息，只替换用户写入的占位符
+        return "[MOTD]" + applyPlaceholders(announcement.motd, status) + "[/MOTD][AD]" + announcement.port + "[/AD]";
+    }
+
+    private static String applyPlaceholders(String motd, ServerStatus status) {
+        if (motd.indexOf('{') < 0) {
+            return motd;
+        }
+        return motd.replace("{online}", status != null && status.online() >= 0 ? String.valueOf(status.online()) : "?")
+                .replace("{max}", status != null && status.max() >= 0 ? String.valueOf(status.max()) : "?")
+                .replace("{version}", status != null ? status.versionName() : "");
     }
 
     @Override
     public void close() {
         running.set(false);
         scheduler.shutdownNow();
-        if (socket != null) {
-            socket.close();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
         }
         LOGGER.info("LAN 广播已关闭");
     }
-}
 
+    /**
+     * 一份 lan 配置对应的广播计划，创建后不再修改
+     */
+    private static final class Plan {
+        private final AppConfig.Lan lanConfig;
+        private final List<Announcement> announcements;
+
+        Plan(AppConfig.Lan lanConfig, List<Announcement> announcements) {
+            this.lanConfig = lanConfig;
+            this.announcements = Collections.unmodifiableList(new ArrayList<>(announcements));
+        }
+    }
+
+    /**
+     * 一个在 LAN 列表中显示的条目
+     */
+    public static final class Announcement {
+        private final String motd;
+        private final int port;
+        private final Supplier<ServerStatus> status;
+        private final boolean hasPlaceholders;
+
+        public Announcement(String motd, int port, Supplier<ServerStatus> status) {
+            this.motd = Objects.requireNonNull(motd);
+            this.port = port;
+            this.status = Objects.requireNonNull(status);
+            this.hasPlaceholders = motd.indexOf('{') >= 0;
+        }
+    }
+}
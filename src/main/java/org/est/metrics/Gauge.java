@@ -0,0 +1,25 @@
+package org.est.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可增可减的当前值，如活跃会话数
+ */
+public final class Gauge {
+    private final LongAdder value = new LongAdder();
+
+    Gauge() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void decrement() {
+        value.decrement();
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,83 @@
+package org.est.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶的耗时直方图：桶边界在创建时确定，记录时线性查找桶并累加，不分配对象。
+ * 输出时按 Prometheus 约定转换为累积计数，单位为秒。
+ */
+public final class Histogram {
+    private final long[] boundsNanos;
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(double[] boundsSeconds) {
+        this.boundsNanos = new long[boundsSeconds.length];
+        for (int i = 0; i < boundsSeconds.length; i++) {
+            boundsNanos[i] = (long) (boundsSeconds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        this.buckets = new LongAdder[boundsSeconds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        int i = 0;
+        while (i < boundsNanos.length && nanos > boundsNanos[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * 估算分位数：返回累计计数达到 quantile 的桶的上边界（纳秒），落在最后一个桶时返回最大的边界，没有记录时返回 0
+     */
+    public long percentileNanos(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long cumulative = 0;
+        for (int i = 0; i < boundsNanos.length; i++) {
+            cumulative += buckets[i].sum();
+            if (cumulative >= rank) {
+                return boundsNanos[i];
+            }
+        }
+        return boundsNanos.length > 0 ? boundsNanos[boundsNanos.length - 1] : 0;
+    }
+
+    void writeTo(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < boundsNanos.length ? formatSeconds(boundsNanos[i]) : "+Inf";
+            out.append(name).append("_bucket{");
+            if (!labels.isEmpty()) {
+                out.append(labels).append(',');
+            }
+            out.append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ')
+                .append(formatSeconds(sumNanos.sum())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(cumulative).append('\n');
+    }
+
+    private static String formatSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,143 @@
+package org.est.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内的指标注册表，输出 Prometheus 文本格式。
+ * <p>
+ * 注册在启动时完成（加锁），之后热路径上只持有 {@link Counter}、{@link Gauge}、{@link Histogram} 的引用直接记录，
+ * 记录操作都是 LongAdder 累加，不分配对象、不查表。
+ */
+public final class MetricRegistry {
+    private static final MetricRegistry SHARED = new MetricRegistry();
+    private static final String PREFIX = "mclr_";
+
+    /** 上游建连耗时的桶：从连接池取连接约为微秒级，新建连接为毫秒到秒级 */
+    public static final double[] LATENCY_BUCKETS = {0.0005, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    /** 会话时长的桶：状态查询不到一秒，游戏会话为分钟到小时级 */
+    public static final double[] DURATION_BUCKETS = {0.1, 1, 10, 60, 300, 900, 1800, 3600, 7200, 14400};
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public static MetricRegistry shared() {
+        return SHARED;
+    }
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, "");
+    }
+
+    /**
+     * @param labels 形如 reason="whitelist" 的标签，同名指标的不同标签组合共享一个 HELP/TYPE
+     */
+    public synchronized Counter counter(String name, String help, String labels) {
+        Family family = family(name, help, "counter");
+        Series existing = family.find(labels);
+        if (existing != null) {
+            return (Counter) existing.metric;
+        }
+        Counter counter = new Counter();
+        family.series.add(new Series(labels, counter, counter::get));
+        return counter;
+    }
+
+    public synchronized Gauge gauge(String name, String help) {
+        Family family = family(name, help, "gauge");
+        Series existing = family.find("");
+        if (existing != null) {
+            return (Gauge) existing.metric;
+        }
+        Gauge gauge = new Gauge();
+        family.series.add(new Series("", gauge, gauge::get));
+        return gauge;
+    }
+
+    /**
+     * 由已有统计对象提供数值的指标，例如 RelayStats 中的字节数；重复注册时替换
+     */
+    public synchronized void register(String name, String help, String type, String labels, LongSupplier value) {
+        Family family = family(name, help, type);
+        family.series.removeIf(series -> series.labels.equals(labels));
+        family.series.add(new Series(labels, null, value));
+    }
+
+    public Histogram histogram(String name, String help, double[] boundsSeconds) {
+        return histogram(name, help, "", boundsSeconds);
+    }
+
+    /**
+     * @param labels 同 {@link #counter(String, String, String)}，同名直方图的各个标签组合应使用相同的桶边界
+     */
+    public synchronized Histogram histogram(String name, String help, String labels, double[] boundsSeconds) {
+        Family family = family(name, help, "histogram");
+        Series existing = family.find(labels);
+        if (existing != null) {
+            return (Histogram) existing.metric;
+        }
+        Histogram histogram = new Histogram(boundsSeconds);
+        family.series.add(new Series(labels, histogram, null));
+        return histogram;
+    }
+
+    private Family family(String name, String help, String type) {
+        return families.computeIfAbsent(PREFIX + name, key -> new Family(key, help, type));
+    }
+
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Series series : family.series) {
+                if (series.metric instanceof Histogram) {
+                    ((Histogram) series.metric).writeTo(out, family.name, series.labels);
+                    continue;
+                }
+                out.append(family.name);
+                if (!series.labels.isEmpty()) {
+                    out.append('{').append(series.labels).append('}');
+                }
+                out.append(' ').append(series.value.getAsLong()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final List<Series> series = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        Series find(String labels) {
+            for (Series candidate : series) {
+                if (candidate.labels.equals(labels)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Series {
+        private final String labels;
+        private final Object metric;
+        private final LongSupplier value;
+
+        Series(String labels, Object metric, LongSupplier value) {
+            this.labels = labels;
+            this.metric = metric;
+            this.value = value;
+        }
+    }
+}
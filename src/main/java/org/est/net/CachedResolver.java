@@ -0,0 +1,401 @@
+package org.est.net;
+
+import org.est.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带缓存的 DNS 解析：结果按 TTL 缓存，到期前由后台线程刷新，接受连接和 LAN 广播的路径上只读缓存。
+ * <p>
+ * 刷新失败时继续返回上一次成功的结果并按指数退避重试，上游 DNS 变慢或不可用不会影响已经解析过的主机。
+ * 只有从未解析成功过的主机才会在调用线程上同步解析。
+ * <p>
+ * 支持原版客户端的 _minecraft._tcp SRV 查询；配置了 dnsServer 时 A/AAAA 记录也通过该服务器查询，
+ * 便于指定公共 DNS 或在本地用测试 DNS 服务器验证。
+ */
+public final class CachedResolver implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedResolver.class);
+    private static final String SRV_PREFIX = "_minecraft._tcp.";
+    private static final int MAX_CNAME_HOPS = 8;
+    /** 连续这么多个 TTL 没有被使用的记录不再刷新并从缓存移除 */
+    private static final int UNUSED_EVICT_TTLS = 10;
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final SrvTarget NO_SRV = new SrvTarget(null, 0);
+
+    private static volatile CachedResolver shared = new CachedResolver(Duration.ofSeconds(60), null);
+
+    private final long ttlNanos;
+    private final String providerUrl;
+    private final boolean customServer;
+    private final Map<String, Entry<InetAddress[]>> hosts = new ConcurrentHashMap<>();
+    private final Map<String, Entry<SrvTarget>> srvRecords = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    public CachedResolver(Duration ttl, String dnsServer) {
+        this.ttlNanos = ttl.toNanos();
+        this.customServer = dnsServer != null;
+        this.providerUrl = dnsServer != null ? "dns://" + dnsServer : "dns:";
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dns-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000L, ttl.toMillis() / 4);
+        refresher.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public static CachedResolver shared() {
+        return shared;
+    }
+
+    /**
+     * 按 local 配置替换共享实例，旧实例的刷新线程随之停止
+     */
+    public static void configure(AppConfig.Local localConfig) {
+        CachedResolver previous = shared;
+        shared = new CachedResolver(Duration.ofSeconds(localConfig.dnsTtlSeconds()), localConfig.dnsServer());
+        previous.close();
+    }
+
+    /**
+     * 远程服务器的连接地址：开启 srv 时优先使用 SRV 记录中的主机和端口，没有记录或查询失败时回退到配置的 host:port
+     */
+    public InetSocketAddress resolve(AppConfig.Remote remote) throws UnknownHostException {
+        SrvTarget target = target(remote);
+        return new InetSocketAddress(resolve(target.host), target.port);
+    }
+
+    /**
+     * 远程服务器的全部连接地址（A 和 AAAA），顺序与解析结果相同；SRV 的处理与 {@link #resolve(AppConfig.Remote)} 相同
+     */
+    public InetSocketAddress[] resolveAll(AppConfig.Remote remote) throws UnknownHostException {
+        SrvTarget target = target(remote);
+        InetAddress[] addresses = resolveAll(target.host);
+        InetSocketAddress[] result = new InetSocketAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            result[i] = new InetSocketAddress(addresses[i], target.port);
+        }
+        return result;
+    }
+
+    private SrvTarget target(AppConfig.Remote remote) {
+        if (remote.srv() && !isLiteral(remote.host())) {
+            SrvTarget target;
+            try {
+                target = cached(srvRecords, remote.host(), this::lookupSrv);
+            } catch (UnknownHostException e) {
+                target = srvFailed(remote, e);
+            }
+            if (target != NO_SRV) {
+                return target;
+            }
+        }
+        return new SrvTarget(remote.host(), remote.port());
+    }
+
+    /**
+     * SRV 查询超时或 SERVFAIL：与原版客户端一样回退到配置的 host:port。失败也写入缓存并短暂退避，
+     * DNS 不可用期间加入的玩家不会每次都同步等待查询超时，之后由刷新线程在后台重试
+     */
+    private SrvTarget srvFailed(AppConfig.Remote remote, UnknownHostException e) {
+        long now = System.nanoTime();
+        Entry<SrvTarget> failed = new Entry<>(remote.host(), this::lookupSrv, NO_SRV, now + backoffNanos(0), now);
+        failed.failures = 1;
+        if (srvRecords.putIfAbsent(remote.host(), failed) == null) {
+            LOGGER.warn("查询 SRV 记录 {}{} 失败，使用配置的 {}:{}: {}", SRV_PREFIX, remote.host(), remote.host(),
+                    remote.port(), e.getMessage());
+        }
+        return NO_SRV;
+    }
+
+    public InetAddress resolve(String host) throws UnknownHostException {
+        return resolveAll(host)[0];
+    }
+
+    /**
+     * 主机的全部地址，返回的数组为缓存本身，调用方不得修改
+     */
+    public InetAddress[] resolveAll(String host) throws UnknownHostException {
+        if (isLiteral(host)) {
+            return new InetAddress[]{InetAddress.getByName(host)};
+        }
+        return cached(hosts, host.toLowerCase(Locale.ROOT), this::lookupHost);
+    }
+
+    /**
+     * 在后台线程上提前解析，启动时调用，避免第一个玩家加入时同步等待 DNS
+     */
+    public void prefetch(AppConfig.Remote remote) {
+        refresher.execute(() -> {
+            try {
+                InetSocketAddress address = resolve(remote);
+                LOGGER.debug("已预解析 {} -> {}", remote, address);
+            } catch (UnknownHostException e) {
+                LOGGER.warn("预解析远程服务器 {} 失败: {}", remote, e.getMessage());
+            }
+        });
+    }
+
+    private <T> T cached(Map<String, Entry<T>> cache, String name, Lookup<T> lookup) throws UnknownHostException {
+        long now = System.nanoTime();
+        Entry<T> entry = cache.get(name);
+        if (entry != null) {
+            entry.lastUsedNanos = now;
+            if (now - entry.expiresNanos >= 0) {
+                staleServed.increment();
+                refreshAsync(entry);
+            } else {
+                hits.increment();
+            }
+            return entry.value;
+        }
+        misses.increment();
+        T value = lookup.lookup(name);
+        Entry<T> created = new Entry<>(name, lookup, value, now + ttlNanos, now);
+        Entry<T> raced = cache.putIfAbsent(name, created);
+        return raced != null ? raced.value : value;
+    }
+
+    private void refreshAsync(Entry<?> entry) {
+        if (entry.refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> refresh(entry));
+            } catch (RejectedExecutionException e) {
+                entry.refreshing.set(false);
+            }
+        }
+    }
+
+    private <T> void refresh(Entry<T> entry) {
+        try {
+            entry.value = entry.lookup.lookup(entry.name);
+            entry.expiresNanos = System.nanoTime() + ttlNanos;
+            refreshes.increment();
+            if (entry.failures > 0) {
+                LOGGER.info("DNS 解析 {} 已恢复", entry.name);
+            }
+            entry.failures = 0;
+        } catch (UnknownHostException e) {
+            refreshFailures.increment();
+            // 继续使用旧结果，按指数退避重试
+            entry.expiresNanos = System.nanoTime() + backoffNanos(entry.failures);
+            if (entry.failures++ == 0) {
+                LOGGER.warn("刷新 DNS 记录 {} 失败，继续使用上一次的结果: {}", entry.name, e.getMessage());
+            } else {
+                LOGGER.debug("刷新 DNS 记录 {} 第 {} 次失败: {}", entry.name, entry.failures, e.getMessage());
+            }
+        } finally {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private long backoffNanos(int failures) {
+        long backoff = Math.min(MAX_BACKOFF_NANOS, TimeUnit.SECONDS.toNanos(1L << Math.min(failures, 6)));
+        return Math.min(backoff, ttlNanos);
+    }
+
+    /**
+     * 定期在记录到期前提前刷新，并移除长期不用的记录
+     */
+    private void maintain() {
+        long now = System.nanoTime();
+        long refreshAhead = ttlNanos / 4;
+        long evictAfter = ttlNanos * UNUSED_EVICT_TTLS;
+        for (Map<String, ? extends Entry<?>> cache : List.of(hosts, srvRecords)) {
+            for (Entry<?> entry : cache.values()) {
+                if (now - entry.lastUsedNanos > evictAfter) {
+                    cache.remove(entry.name, entry);
+                } else if (now - (entry.expiresNanos - refreshAhead) >= 0
+                        && entry.refreshing.compareAndSet(false, true)) {
+                    refresh(entry);
+                }
+            }
+        }
+    }
+
+    private InetAddress[] lookupHost(String host) throws UnknownHostException {
+        if (!customServer) {
+            return InetAddress.getAllByName(host);
+        }
+        String name = host;
+        try {
+            DirContext context = context();
+            try {
+                for (int hop = 0; hop < MAX_CNAME_HOPS; hop++) {
+                    Attributes attributes = context.getAttributes(name, new String[]{"A", "AAAA", "CNAME"});
+                    List<InetAddress> addresses = new ArrayList<>();
+                    for (String type : new String[]{"A", "AAAA"}) {
+                        for (String literal : values(attributes.get(type))) {
+                            addresses.add(InetAddress.getByAddress(host, InetAddress.getByName(literal).getAddress()));
+                        }
+                    }
+                    if (!addresses.isEmpty()) {
+                        return addresses.toArray(new InetAddress[0]);
+                    }
+                    List<String> cname = values(attributes.get("CNAME"));
+                    if (cname.isEmpty()) {
+                        break;
+                    }
+                    name = cname.get(0);
+                }
+            } finally {
+                context.close();
+            }
+        } catch (NamingException e) {
+            throw unknownHost(host, e);
+        }
+        throw new UnknownHostException(host + ": 没有 A/AAAA 记录");
+    }
+
+    private SrvTarget lookupSrv(String host) throws UnknownHostException {
+        try {
+            DirContext context = context();
+            try {
+                Attributes attributes = context.getAttributes(SRV_PREFIX + host, new String[]{"SRV"});
+                SrvTarget best = NO_SRV;
+                int bestPriority = Integer.MAX_VALUE;
+                int bestWeight = -1;
+                // 记录格式: priority weight port target；取优先级最小、同优先级中权重最大的一条
+                for (String record : values(attributes.get("SRV"))) {
+                    String[] parts = record.trim().split("\\s+");
+                    if (parts.length < 4) {
+                        continue;
+                    }
+                    int priority = Integer.parseInt(parts[0]);
+                    int weight = Integer.parseInt(parts[1]);
+                    if (priority < bestPriority || (priority == bestPriority && weight > bestWeight)) {
+                        String target = parts[3].endsWith(".") ? parts[3].substring(0, parts[3].length() - 1) : parts[3];
+                        best = new SrvTarget(target, Integer.parseInt(parts[2]));
+                        bestPriority = priority;
+                        bestWeight = weight;
+                    }
+                }
+                if (best != NO_SRV) {
+                    LOGGER.debug("SRV {}{} -> {}:{}", SRV_PREFIX, host, best.host, best.port);
+                }
+                return best;
+            } finally {
+                context.close();
+            }
+        } catch (NameNotFoundException e) {
+            return NO_SRV;
+        } catch (NamingException | NumberFormatException e) {
+            throw unknownHost(SRV_PREFIX + host, e);
+        }
+    }
+
+    private DirContext context() throws NamingException {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(DirContext.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        env.put(DirContext.PROVIDER_URL, providerUrl);
+        env.put("com.sun.jndi.dns.timeout.initial", "1000");
+        env.put("com.sun.jndi.dns.timeout.retries", "2");
+        return new InitialDirContext(env);
+    }
+
+    private static List<String> values(Attribute attribute) throws NamingException {
+        List<String> values = new ArrayList<>();
+        if (attribute == null) {
+            return values;
+        }
+        NamingEnumeration<?> all = attribute.getAll();
+        while (all.hasMore()) {
+            values.add(String.valueOf(all.next()));
+        }
+        return values;
+    }
+
+    private static UnknownHostException unknownHost(String name, Exception cause) {
+        UnknownHostException e = new UnknownHostException(name + ": " + cause.getMessage());
+        e.initCause(cause);
+        return e;
+    }
+
+    private static boolean isLiteral(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !host.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "CachedResolver{主机=" + hosts.size() + ", SRV=" + srvRecords.size() + ", 命中=" + hits.sum()
+                + ", 未命中=" + misses.sum() + ", 过期后返回旧值=" + staleServed.sum() + ", 刷新=" + refreshes.sum()
+                + ", 刷新失败=" + refreshFailures.sum() + "}";
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface Lookup<T> {
+        T lookup(String name) throws UnknownHostException;
+    }
+
+    private static final class Entry<T> {
+        private final String name;
+        private final Lookup<T> lookup;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile T value;
+        private volatile long expiresNanos;
+        private volatile long lastUsedNanos;
+        /** 只在刷新线程上读写 */
+        private int failures;
+
+        Entry(String name, Lookup<T> lookup, T value, long expiresNanos, long lastUsedNanos) {
+            this.name = name;
+            this.lookup = lookup;
+            this.value = value;
+            this.expiresNanos = expiresNanos;
+            this.lastUsedNanos = lastUsedNanos;
+        }
+    }
+
+    private static final class SrvTarget {
+        private final String host;
+        private final int port;
+
+        SrvTarget(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+    }
+}
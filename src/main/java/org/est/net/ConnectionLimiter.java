@@ -0,0 +1,320 @@
+package org.est.net;
+
+import org.est.config.AppConfig;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接受连接时的限流：每个 IP 和每个网段各一个令牌桶限制新连接速率，另外限制每个 IP 同时存在的会话数。
+ * <p>
+ * 状态保存在定长的开放寻址表中（AtomicLongArray，每个槽位三个 long：键、令牌桶、活跃会话数），
+ * 所有更新都是 CAS，没有锁，也不为每个 IP 分配对象。IP 和网段各用一张表，大量不同 IP 涌入时不会挤掉网段的桶。
+ * 长时间不活跃且没有会话的槽位会被新键复用；表满时（探测范围内没有可复用的槽位）对该 IP 放行而不是误伤，
+ * 由网段限流兜底。
+ * <p>
+ * 令牌桶打包在一个 long 中：高 40 位为上次更新的毫秒时间，低 24 位为 16 位小数的定点令牌数。
+ */
+public final class ConnectionLimiter {
+    /** 放行但未记录会话数（限流关闭或表满），释放时无需处理 */
+    public static final int UNTRACKED = Integer.MAX_VALUE;
+    public static final int REJECTED_IP_RATE = -1;
+    public static final int REJECTED_SUBNET_RATE = -2;
+    public static final int REJECTED_CONCURRENT = -3;
+
+    private static final int IP_SLOTS = 1 << 16;
+    private static final int SUBNET_SLOTS = 1 << 14;
+    private static final int PROBES = 8;
+    private static final int LONGS_PER_SLOT = 3;
+    private static final int KEY = 0;
+    private static final int BUCKET = 1;
+    private static final int ACTIVE = 2;
+    private static final int TOKEN_SHIFT = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_SHIFT) - 1;
+    private static final long TOKEN_ONE = 1L << 16;
+    private static final int MAX_BURST = (int) (TOKEN_MASK / TOKEN_ONE);
+    private static final long MIN_EXPIRY_MS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final long TAG_IP_V4 = 1L << 61;
+    private static final long TAG_NET_V4 = 2L << 61;
+    private static final long TAG_IP_V6 = 3L << 61;
+    private static final long TAG_NET_V6 = 4L << 61;
+    private static final long VALUE_MASK = (1L << 61) - 1;
+
+    private final boolean enabled;
+    private final Rate ipRate;
+    private final Rate subnetRate;
+    private final int maxSessionsPerIp;
+    private final int maskV4;
+    private final int prefixV6;
+    private final long expiryMillis;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray ips;
+    private final AtomicLongArray subnets;
+    private final LongAdder rejectedIpRate = new LongAdder();
+    private final LongAdder rejectedSubnetRate = new LongAdder();
+    private final LongAdder rejectedConcurrent = new LongAdder();
+    private final LongAdder untracked = new LongAdder();
+
+    private ConnectionLimiter(Rate ipRate, Rate subnetRate, int maxSessionsPerIp, int prefixV4, int prefixV6) {
+        this.ipRate = ipRate;
+        this.subnetRate = subnetRate;
+        this.maxSessionsPerIp = maxSessionsPerIp;
+        this.maskV4 = maskV4(prefixV4);
+        this.prefixV6 = prefixV6;
+        this.enabled = ipRate != null || subnetRate != null || maxSessionsPerIp > 0;
+        long expiry = MIN_EXPIRY_MS;
+        for (Rate rate : new Rate[]{ipRate, subnetRate}) {
+            if (rate != null) {
+                expiry = Math.max(expiry, rate.fillMillis);
+            }
+        }
+        this.expiryMillis = expiry;
+        this.ips = enabled ? new AtomicLongArray(IP_SLOTS * LONGS_PER_SLOT) : null;
+        this.subnets = subnetRate != null ? new AtomicLongArray(SUBNET_SLOTS * LONGS_PER_SLOT) : null;
+    }
+
+    public static ConnectionLimiter from(AppConfig.Security security) {
+        return new ConnectionLimiter(
+                Rate.of(security.connectionRate(), security.connectionBurst()),
+                Rate.of(security.subnetConnectionRate(), security.subnetConnectionBurst()),
+                security.maxSessionsPerIp(), security.subnetPrefix(), security.subnetPrefixV6());
+    }
+
+    public static ConnectionLimiter disabled() {
+        return new ConnectionLimiter(null, null, 0, 0, 0);
+    }
+
+    /**
+     * 限流参数是否与配置相同；重新加载配置时参数未变就沿用当前实例，保留令牌桶和会话计数
+     */
+    public boolean matches(AppConfig.Security security) {
+        return Objects.equals(ipRate, Rate.of(security.connectionRate(), security.connectionBurst()))
+                && Objects.equals(subnetRate, Rate.of(security.subnetConnectionRate(), security.subnetConnectionBurst()))
+                && maxSessionsPerIp == security.maxSessionsPerIp()
+                && (subnetRate == null || (maskV4 == maskV4(security.subnetPrefix())
+                && prefixV6 == security.subnetPrefixV6()));
+    }
+
+    private static int maskV4(int prefix) {
+        return prefix == 0 ? 0 : -1 << (32 - prefix);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * 为一个新连接申请许可：返回值 &gt;= 0 表示放行，会话结束时需传给 {@link #release(int)}；
+     * 负数为拒绝原因 REJECTED_*
+     */
+    public int tryAcquire(InetAddress address) {
+        if (!enabled) {
+            return UNTRACKED;
+        }
+        long ipKey;
+        long subnetKey;
+        if (address instanceof Inet4Address) {
+            int ip = address.hashCode();
+            ipKey = TAG_IP_V4 | (ip & 0xFFFFFFFFL);
+            subnetKey = TAG_NET_V4 | ((ip & maskV4) & 0xFFFFFFFFL);
+        } else {
+            byte[] bytes = address.getAddress();
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < 8; i++) {
+                high = (high << 8) | (bytes[i] & 0xFF);
+                low = (low << 8) | (bytes[i + 8] & 0xFF);
+            }
+            ipKey = TAG_IP_V6 | (mix(high ^ mix(low)) & VALUE_MASK);
+            long maskHigh = prefixV6 >= 64 ? -1L : (prefixV6 == 0 ? 0L : -1L << (64 - prefixV6));
+            long maskLow = prefixV6 <= 64 ? 0L : (prefixV6 == 128 ? -1L : -1L << (128 - prefixV6));
+            subnetKey = TAG_NET_V6 | (mix((high & maskHigh) ^ mix(low & maskLow)) & VALUE_MASK);
+        }
+        long now = nowMillis();
+        int ipSlot = slot(ips, ipKey, now);
+        if (ipSlot >= 0) {
+            if (ipRate != null) {
+                if (!take(ips, ipSlot, ipRate, now)) {
+                    rejectedIpRate.increment();
+                    return REJECTED_IP_RATE;
+                }
+            } else {
+                ips.set(ipSlot * LONGS_PER_SLOT + BUCKET, now << TOKEN_SHIFT);
+            }
+        }
+        if (subnetRate != null) {
+            int subnetSlot = slot(subnets, subnetKey, now);
+            if (subnetSlot >= 0 && !take(subnets, subnetSlot, subnetRate, now)) {
+                rejectedSubnetRate.increment();
+                return REJECTED_SUBNET_RATE;
+            }
+        }
+        if (ipSlot < 0) {
+            untracked.increment();
+            return UNTRACKED;
+        }
+        int activeIndex = ipSlot * LONGS_PER_SLOT + ACTIVE;
+        long active = ips.incrementAndGet(activeIndex);
+        if (maxSessionsPerIp > 0 && active > maxSessionsPerIp) {
+            ips.decrementAndGet(activeIndex);
+            rejectedConcurrent.increment();
+            return REJECTED_CONCURRENT;
+        }
+        return ipSlot;
+    }
+
+    /**
+     * 会话结束时归还许可
+     */
+    public void release(int ticket) {
+        if (ticket >= 0 && ticket != UNTRACKED) {
+            ips.decrementAndGet(ticket * LONGS_PER_SLOT + ACTIVE);
+        }
+    }
+
+    /**
+     * 查找或占用键对应的槽位；探测范围内没有可用槽位时返回 -1
+     */
+    private int slot(AtomicLongArray table, long key, long now) {
+        int slots = table.length() / LONGS_PER_SLOT;
+        int base = (int) mix(key) & (slots - 1);
+        int victim = -1;
+        long victimTime = Long.MAX_VALUE;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (base + i) & (slots - 1);
+            int keyIndex = slot * LONGS_PER_SLOT + KEY;
+            long current = table.get(keyIndex);
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0) {
+                if (table.compareAndSet(keyIndex, 0, key) || table.get(keyIndex) == key) {
+                    return slot;
+                }
+                continue;
+            }
+            long lastUsed = table.get(slot * LONGS_PER_SLOT + BUCKET) >>> TOKEN_SHIFT;
+            if (now - lastUsed > expiryMillis && lastUsed < victimTime
+                    && table.get(slot * LONGS_PER_SLOT + ACTIVE) == 0) {
+                victim = slot;
+                victimTime = lastUsed;
+            }
+        }
+        if (victim >= 0) {
+            int keyIndex = victim * LONGS_PER_SLOT + KEY;
+            long previous = table.get(keyIndex);
+            if (table.compareAndSet(keyIndex, previous, key)) {
+                // 时间为 0 的桶在下一次取令牌时视为满桶
+                table.set(victim * LONGS_PER_SLOT + BUCKET, 0L);
+                return victim;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean take(AtomicLongArray table, int slot, Rate rate, long now) {
+        int index = slot * LONGS_PER_SLOT + BUCKET;
+        while (true) {
+            long bucket = table.get(index);
+            long last = bucket >>> TOKEN_SHIFT;
+            long tokens;
+            long elapsed = now - last;
+            if (last == 0 || elapsed >= rate.fillMillis) {
+                tokens = rate.capacity;
+            } else {
+                tokens = Math.min(rate.capacity, (bucket & TOKEN_MASK) + Math.max(0, elapsed) * rate.tokensPerMilli);
+            }
+            if (tokens < TOKEN_ONE) {
+                return false;
+            }
+            long updated = (now << TOKEN_SHIFT) | (tokens - TOKEN_ONE);
+            if (table.compareAndSet(index, bucket, updated)) {
+                return true;
+            }
+        }
+    }
+
+    private long nowMillis() {
+        // 从 1 开始，0 留给“从未使用”的桶
+        return (System.nanoTime() - startNanos) / 1_000_000L + 1;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public long rejectedIpRate() {
+        return rejectedIpRate.sum();
+    }
+
+    public long rejectedSubnetRate() {
+        return rejectedSubnetRate.sum();
+    }
+
+    public long rejectedConcurrent() {
+        return rejectedConcurrent.sum();
+    }
+
+    public static String reason(int result) {
+        switch (result) {
+            case REJECTED_IP_RATE:
+                return "单 IP 新连接过快";
+            case REJECTED_SUBNET_RATE:
+                return "网段新连接过快";
+            case REJECTED_CONCURRENT:
+                return "单 IP 会话数超限";
+            default:
+                return "放行";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionLimiter{IP限速拒绝=" + rejectedIpRate() + ", 网段限速拒绝=" + rejectedSubnetRate()
+                + ", 会话数拒绝=" + rejectedConcurrent() + ", 未跟踪=" + untracked.sum() + "}";
+    }
+
+    private static final class Rate {
+        private final long capacity;
+        private final long tokensPerMilli;
+        private final long fillMillis;
+
+        private Rate(long capacity, long tokensPerMilli) {
+            this.capacity = capacity;
+            this.tokensPerMilli = Math.max(1, tokensPerMilli);
+            this.fillMillis = capacity / this.tokensPerMilli + 1;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Rate)) {
+                return false;
+            }
+            Rate rate = (Rate) other;
+            return capacity == rate.capacity && tokensPerMilli == rate.tokensPerMilli;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(capacity) * 31 + Long.hashCode(tokensPerMilli);
+        }
+
+        static Rate of(double perSecond, int burst) {
+            if (perSecond <= 0) {
+                return null;
+            }
+            long capacity = Math.min(burst, MAX_BURST) * TOKEN_ONE;
+            return new Rate(capacity, (long) (perSecond * TOKEN_ONE / 1000.0));
+        }
+    }
+}
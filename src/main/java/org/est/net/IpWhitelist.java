@@ -1,108 +1,447 @@
 package org.est.net;
 
+import org.est.config.AppConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 
+/**
+ * IP 地址段访问控制：白名单（允许）和黑名单（拒绝）编译为一棵二进制前缀树，IPv4 和 IPv6 各有一个根。
+ * <p>
+ * 查找时按地址位从高到低走树，记录途中最后一个带标记的节点，即最长前缀匹配；同一前缀同时允许和拒绝时拒绝优先。
+ * 没有匹配时：配置了白名单则拒绝，否则允许。
+ * <p>
+ * 节点存放在一个 int 数组中，每个节点三个 int：两个子节点下标和标记，查找只读数组不分配对象。
+ * 编译结果可以写入文件，下次启动来源未变化时直接内存映射，不再解析十几万行 CIDR。
+ */
 public final class IpWhitelist {
     private static final Logger LOGGER = LoggerFactory.getLogger(IpWhitelist.class);
-    private final List<Subnet> subnets;
 
-    private IpWhitelist(List<Subnet> subnets) {
-        this.subnets = Collections.unmodifiableList(new ArrayList<Subnet>(subnets));
+    private static final int NODE_INTS = 3;
+    private static final int ROOT_V4 = 0;
+    private static final int ROOT_V6 = 1;
+    private static final int NONE = 0;
+    private static final int ALLOW = 1;
+    private static final int DENY = 2;
+
+    private static final int MAGIC = 0x45535457;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private final IntBuffer nodes;
+    private final boolean hasAllow;
+    private final int entries;
+
+    private IpWhitelist(IntBuffer nodes, boolean hasAllow, int entries) {
+        this.nodes = nodes;
+        this.hasAllow = hasAllow;
+        this.entries = entries;
     }
 
     public static IpWhitelist from(List<String> cidrBlocks) {
-        if (cidrBlocks == null || cidrBlocks.isEmpty()) {
-            return new IpWhitelist(Collections.<Subnet>emptyList());
-        }
-        List<Subnet> subnets = new ArrayList<>();
-        for (String cidr : cidrBlocks) {
-            if (cidr == null || cidr.trim().isEmpty()) {
-                continue;
+        Builder builder = new Builder();
+        if (cidrBlocks != null) {
+            for (String cidr : cidrBlocks) {
+                addEntry(builder, cidr, ALLOW);
             }
-            String normalized = cidr.trim().toLowerCase(Locale.ROOT);
-            if ("any".equals(normalized) || "*".equals(normalized)) {
-                return new IpWhitelist(Collections.<Subnet>emptyList());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 按 security 配置构建：白名单、黑名单和黑名单文件；配置了 compiledCache 时优先映射缓存文件
+     */
+    public static IpWhitelist from(AppConfig.Security security) {
+        long fingerprint = fingerprint(security);
+        Path cache = security.compiledCache() != null ? Paths.get(security.compiledCache()) : null;
+        if (cache != null && Files.isRegularFile(cache)) {
+            try {
+                IpWhitelist mapped = map(cache, fingerprint);
+                if (mapped != null) {
+                    LOGGER.info("已从 {} 载入编译好的地址段列表（{} 条）", cache, mapped.entries);
+                    return mapped;
+                }
+                LOGGER.info("地址段列表已变化，重新编译");
+            } catch (IOException e) {
+                LOGGER.warn("读取地址段缓存 {} 失败，重新编译: {}", cache, e.getMessage());
             }
+        }
+
+        long start = System.nanoTime();
+        Builder builder = new Builder();
+        for (String cidr : security.whitelist()) {
+            addEntry(builder, cidr, ALLOW);
+        }
+        for (String cidr : security.blocklist()) {
+            addEntry(builder, cidr, DENY);
+        }
+        for (String file : security.blocklistFiles()) {
+            addFile(builder, file);
+        }
+        IpWhitelist compiled = builder.build();
+        LOGGER.debug("编译地址段列表 {} 条，{} 个节点，耗时 {} ms", compiled.entries, compiled.nodeCount(),
+                (System.nanoTime() - start) / 1_000_000);
+        if (cache != null) {
             try {
-                subnets.add(Subnet.parse(normalized));
-            } catch (Exception ex) {
-                LOGGER.warn("无法解析白名单条目: {}", cidr, ex);
+                compiled.writeTo(cache, fingerprint);
+            } catch (IOException e) {
+                LOGGER.warn("写入地址段缓存 {} 失败: {}", cache, e.getMessage());
+            }
+        }
+        return compiled;
+    }
+
+    private static void addEntry(Builder builder, String cidr, int mark) {
+        try {
+            builder.add(cidr, mark);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("无法解析地址段条目: {} - {}", cidr, e.getMessage());
+        }
+    }
+
+    /**
+     * 黑名单文件可能有几万行，无法解析的行只汇总记录一次，不逐行输出
+     */
+    private static void addFile(Builder builder, String file) {
+        int invalid = 0;
+        String firstInvalid = null;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                try {
+                    builder.add(comment >= 0 ? line.substring(0, comment) : line, DENY);
+                } catch (IllegalArgumentException e) {
+                    if (invalid++ == 0) {
+                        firstInvalid = "第 " + number + " 行 " + line.trim() + " - " + e.getMessage();
+                    }
+                }
             }
+        } catch (IOException e) {
+            LOGGER.warn("无法读取黑名单文件 {}: {}", file, e.getMessage());
+        }
+        if (invalid > 0) {
+            LOGGER.warn("黑名单文件 {} 中有 {} 行无法解析，已忽略，第一处: {}", file, invalid, firstInvalid);
         }
-        return new IpWhitelist(subnets);
     }
 
     public boolean isAllowed(InetAddress address) {
         Objects.requireNonNull(address, "address");
-        if (subnets.isEmpty()) {
-            return true;
+        if (address instanceof Inet4Address) {
+            // Inet4Address 的 hashCode 就是地址本身，避免 getAddress() 复制数组
+            return isAllowed(address.hashCode());
         }
-        for (Subnet subnet : subnets) {
-            if (subnet.matches(address)) {
-                return true;
+        byte[] bytes = address.getAddress();
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFF);
+            low = (low << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return isAllowed(high, low);
+    }
+
+    /**
+     * IPv4 地址按大端序组成的 int
+     */
+    public boolean isAllowed(int ipv4) {
+        int node = ROOT_V4;
+        int verdict = nodes.get(ROOT_V4 * NODE_INTS + 2);
+        for (int bit = 31; bit >= 0; bit--) {
+            node = nodes.get(node * NODE_INTS + ((ipv4 >>> bit) & 1));
+            if (node == 0) {
+                break;
+            }
+            int mark = nodes.get(node * NODE_INTS + 2);
+            if (mark != NONE) {
+                verdict = mark;
             }
         }
-        return false;
+        return decide(verdict);
     }
 
-    private static final class Subnet {
-        private final byte[] baseAddress;
-        private final byte[] mask;
+    public boolean isAllowed(long high, long low) {
+        int node = ROOT_V6;
+        int verdict = nodes.get(ROOT_V6 * NODE_INTS + 2);
+        for (int i = 0; i < 128; i++) {
+            long word = i < 64 ? high : low;
+            node = nodes.get(node * NODE_INTS + (int) ((word >>> (63 - (i & 63))) & 1));
+            if (node == 0) {
+                break;
+            }
+            int mark = nodes.get(node * NODE_INTS + 2);
+            if (mark != NONE) {
+                verdict = mark;
+            }
+        }
+        return decide(verdict);
+    }
 
-        private Subnet(byte[] baseAddress, byte[] mask) {
-            this.baseAddress = baseAddress;
-            this.mask = mask;
+    private boolean decide(int verdict) {
+        if (verdict == NONE) {
+            return !hasAllow;
         }
+        return verdict == ALLOW;
+    }
 
-        static Subnet parse(String cidr) throws UnknownHostException {
-            String[] parts = cidr.split("/");
-            if (parts.length != 2) {
-                throw new IllegalArgumentException("CIDR格式错误: " + cidr);
+    /**
+     * 地址命中的最长白名单条目的前缀长度，用于把同一条目下的客户端归为一个网段；没有命中白名单条目时返回 -1
+     */
+    public int allowPrefix(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        int node = bytes.length == 4 ? ROOT_V4 : ROOT_V6;
+        int prefix = nodes.get(node * NODE_INTS + 2) == ALLOW ? 0 : -1;
+        for (int bit = 0; bit < bytes.length * 8; bit++) {
+            node = nodes.get(node * NODE_INTS + ((bytes[bit >>> 3] >>> (7 - (bit & 7))) & 1));
+            if (node == 0) {
+                break;
+            }
+            if (nodes.get(node * NODE_INTS + 2) == ALLOW) {
+                prefix = bit + 1;
             }
-            InetAddress base = InetAddress.getByName(parts[0]);
-            int prefix = Integer.parseInt(parts[1]);
-            byte[] addressBytes = base.getAddress();
-            byte[] mask = buildMask(addressBytes.length, prefix);
-            return new Subnet(addressBytes, mask);
         }
+        return prefix;
+    }
+
+    /**
+     * 编译后的条目数
+     */
+    public int size() {
+        return entries;
+    }
+
+    public int nodeCount() {
+        return nodes.limit() / NODE_INTS;
+    }
 
-        boolean matches(InetAddress address) {
-            byte[] addr = address.getAddress();
-            if (addr.length != baseAddress.length) {
-                return false;
+    /**
+     * 写入缓存文件：先写临时文件再原子替换，避免其他实例映射到写了一半的文件
+     */
+    private void writeTo(Path file, long fingerprint) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(fingerprint)
+                .putInt(hasAllow ? 1 : 0).putInt(entries).putInt(nodes.limit()).putInt(0);
+        header.flip();
+        ByteBuffer body = ByteBuffer.allocate(nodes.limit() * 4).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer source = nodes.duplicate();
+        source.clear();
+        body.asIntBuffer().put(source);
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
             }
-            for (int i = 0; i < addr.length; i++) {
-                if ((addr[i] & mask[i]) != (baseAddress[i] & mask[i])) {
-                    return false;
-                }
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 映射缓存文件；指纹不一致（来源已变化）时返回 null
+     */
+    private static IpWhitelist map(Path file, long fingerprint) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("文件过短");
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("文件格式不匹配");
+            }
+            if (mapped.getLong(8) != fingerprint) {
+                return null;
+            }
+            boolean hasAllow = mapped.getInt(16) != 0;
+            int entries = mapped.getInt(20);
+            int ints = mapped.getInt(24);
+            if ((long) HEADER_BYTES + ints * 4L != channel.size()) {
+                throw new IOException("文件长度与头部不一致");
+            }
+            mapped.position(HEADER_BYTES);
+            IntBuffer nodes = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            return new IpWhitelist(nodes, hasAllow, entries);
+        }
+    }
+
+    /**
+     * 配置来源的指纹：条目内容，以及黑名单文件的路径、大小和修改时间（不读取文件内容）
+     */
+    private static long fingerprint(AppConfig.Security security) {
+        long hash = 0xcbf29ce484222325L;
+        for (List<String> list : Arrays.asList(security.whitelist(), Collections.singletonList("|"),
+                security.blocklist(), Collections.singletonList("|"), security.blocklistFiles())) {
+            for (String item : list) {
+                hash = fnv(hash, String.valueOf(item));
+                hash = fnv(hash, "\n");
             }
-            return true;
         }
+        for (String file : security.blocklistFiles()) {
+            try {
+                Path path = Paths.get(file);
+                hash = fnv(hash, Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis());
+            } catch (IOException e) {
+                hash = fnv(hash, "missing");
+            }
+        }
+        return hash;
+    }
 
-        private static byte[] buildMask(int length, int prefix) {
-            if (prefix < 0 || prefix > length * 8) {
+    private static long fnv(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 构建期使用的可增长节点数组，构建完成后不再修改
+     */
+    private static final class Builder {
+        private int[] nodes = new int[NODE_INTS * 1024];
+        private int count = 2;
+        private boolean hasAllow;
+        private int entries;
+
+        /**
+         * @throws IllegalArgumentException 不是 IPv4/IPv6 地址字面量或前缀无效
+         */
+        void add(String cidr, int mark) {
+            if (cidr == null || cidr.trim().isEmpty()) {
+                return;
+            }
+            String normalized = cidr.trim().toLowerCase(Locale.ROOT);
+            if ("any".equals(normalized) || "*".equals(normalized)) {
+                insert(ROOT_V4, new byte[4], 0, mark);
+                insert(ROOT_V6, new byte[16], 0, mark);
+                return;
+            }
+            String[] parts = normalized.split("/", -1);
+            if (parts.length > 2) {
+                throw new IllegalArgumentException("CIDR格式错误");
+            }
+            byte[] address = parseLiteral(parts[0].trim());
+            int prefix;
+            try {
+                prefix = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : address.length * 8;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("前缀不是数字: " + parts[1].trim());
+            }
+            if (prefix < 0 || prefix > address.length * 8) {
                 throw new IllegalArgumentException("前缀超出范围: " + prefix);
             }
-            byte[] mask = new byte[length];
-            int fullBytes = prefix / 8;
-            int remainder = prefix % 8;
-            for (int i = 0; i < fullBytes; i++) {
-                mask[i] = (byte) 0xFF;
+            insert(address.length == 4 ? ROOT_V4 : ROOT_V6, address, prefix, mark);
+        }
+
+        /**
+         * 只接受地址字面量：IPv4 为四段十进制，IPv6 只含十六进制数字、冒号和内嵌 IPv4 的点。
+         * 主机名和拼写错误在这里被拒绝，不会交给 InetAddress.getByName 触发阻塞的 DNS 查询
+         */
+        private static byte[] parseLiteral(String text) {
+            if (text.indexOf(':') < 0) {
+                byte[] address = parseIpv4(text);
+                if (address == null) {
+                    throw new IllegalArgumentException("不是 IPv4/IPv6 地址");
+                }
+                return address;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c != ':' && Character.digit(c, 16) < 0 && (c != '.' || i == 0)) {
+                    throw new IllegalArgumentException("不是 IPv6 地址");
+                }
+            }
+            try {
+                // 以十六进制数字或冒号开头、含冒号的字面量解析失败时直接抛出异常，不会查询 DNS；
+                // "::ffff:1.2.3.4" 得到的是 IPv4 地址，与之前一样按 IPv4 插入
+                return InetAddress.getByName(text).getAddress();
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("不是 IPv6 地址");
+            }
+        }
+
+        private static byte[] parseIpv4(String text) {
+            byte[] address = new byte[4];
+            int octet = 0;
+            int value = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                char c = i < text.length() ? text.charAt(i) : '.';
+                if (c == '.') {
+                    if (value < 0 || octet == 4) {
+                        return null;
+                    }
+                    address[octet++] = (byte) value;
+                    value = -1;
+                } else if (c >= '0' && c <= '9') {
+                    value = value < 0 ? c - '0' : value * 10 + (c - '0');
+                    if (value > 255) {
+                        return null;
+                    }
+                } else {
+                    return null;
+                }
+            }
+            return octet == 4 ? address : null;
+        }
+
+        private void insert(int root, byte[] address, int prefix, int mark) {
+            int node = root;
+            for (int i = 0; i < prefix; i++) {
+                int bit = (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+                int child = nodes[node * NODE_INTS + bit];
+                if (child == 0) {
+                    child = allocate();
+                    nodes[node * NODE_INTS + bit] = child;
+                }
+                node = child;
             }
-            if (remainder > 0 && fullBytes < mask.length) {
-                mask[fullBytes] = (byte) (0xFF << (8 - remainder));
+            int slot = node * NODE_INTS + 2;
+            if (nodes[slot] == NONE) {
+                entries++;
+            }
+            // 同一前缀同时出现在白名单和黑名单时拒绝优先
+            if (nodes[slot] != DENY) {
+                nodes[slot] = mark;
+            }
+            if (mark == ALLOW) {
+                hasAllow = true;
             }
-            return mask;
+        }
+
+        private int allocate() {
+            if ((count + 1) * NODE_INTS > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            return count++;
+        }
+
+        IpWhitelist build() {
+            return new IpWhitelist(IntBuffer.wrap(Arrays.copyOf(nodes, count * NODE_INTS)).asReadOnlyBuffer(),
+                    hasAllow, entries);
         }
     }
 }
-
@@ -0,0 +1,154 @@
+package org.est.tunnel;
+
+import org.est.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 隧道 client 端：保持若干条到 server 端的长连接，玩家会话作为流复用在这些连接上，
+ * 不再为每个玩家单独跨公网建立 TCP 连接、重新经历握手和慢启动。
+ * <p>
+ * 新流放在当前流最少的连接上；连接断开后按 1 秒到 30 秒的指数退避重连，断开的连接上的会话随之结束。
+ */
+public final class TunnelClient implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TunnelClient.class);
+    private static final long MIN_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final long PING_INTERVAL_MS = 15_000;
+
+    private final AppConfig.Tunnel config;
+    private final String token;
+    private final AtomicReferenceArray<TunnelConnection> connections;
+    private final long[] nextAttempt;
+    private final long[] backoff;
+    private final ScheduledExecutorService scheduler;
+    private final TunnelConnection.Listener listener = new TunnelConnection.Listener() {
+        @Override
+        public void onOpen(TunnelStream stream, String host, int port, String clientAddress) {
+            // server 端不会向 client 端打开流
+            stream.reset();
+        }
+
+        @Override
+        public void onClosed(TunnelConnection connection) {
+            LOGGER.info("隧道连接 {} 已关闭，稍后重连", connection.remote());
+        }
+    };
+    private volatile boolean closed;
+
+    public TunnelClient(AppConfig.Tunnel config, AppConfig.Credentials credentials) {
+        if (config.host() == null || config.host().trim().isEmpty()) {
+            throw new IllegalStateException("隧道 client 模式需要配置 tunnel.host");
+        }
+        this.config = config;
+        this.token = TunnelServer.requireToken(credentials);
+        this.connections = new AtomicReferenceArray<>(config.connections());
+        this.nextAttempt = new long[config.connections()];
+        this.backoff = new long[config.connections()];
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tunnel-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 先同步建立一次连接（失败只记录日志，之后在后台重试），再开始后台维护和心跳
+     */
+    public void start() {
+        maintain();
+        scheduler.scheduleWithFixedDelay(this::maintain, MIN_BACKOFF_MS, MIN_BACKOFF_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::ping, PING_INTERVAL_MS, PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < connections.length() && !closed; i++) {
+            TunnelConnection current = connections.get(i);
+            if ((current != null && current.isOpen()) || now < nextAttempt[i]) {
+                continue;
+            }
+            try {
+                TunnelConnection connection = TunnelConnection.connect(config.host(), config.port(), token,
+                        config.compression(), listener);
+                connections.set(i, connection);
+                backoff[i] = 0;
+                LOGGER.info("隧道连接 #{} 已建立: {}{}", i, connection.remote(),
+                        connection.compression() ? "（压缩）" : "");
+            } catch (IOException e) {
+                backoff[i] = backoff[i] == 0 ? MIN_BACKOFF_MS : Math.min(MAX_BACKOFF_MS, backoff[i] * 2);
+                nextAttempt[i] = System.currentTimeMillis() + backoff[i];
+                LOGGER.warn("隧道连接 #{} 到 {}:{} 失败，{} 秒后重试: {}", i, config.host(), config.port(),
+                        backoff[i] / 1000, e.getMessage());
+            }
+        }
+    }
+
+    private void ping() {
+        for (int i = 0; i < connections.length(); i++) {
+            TunnelConnection connection = connections.get(i);
+            if (connection != null && connection.isOpen()) {
+                connection.ping();
+            }
+        }
+    }
+
+    /**
+     * 在流最少的连接上打开一个到 host:port 的流
+     *
+     * @param client 玩家的地址，传给 server 端用于日志
+     * @throws IOException 没有可用的隧道连接
+     */
+    public TunnelStream open(String host, int port, InetSocketAddress client) throws IOException {
+        TunnelConnection best = null;
+        for (int i = 0; i < connections.length(); i++) {
+            TunnelConnection connection = connections.get(i);
+            if (connection != null && connection.isOpen()
+                    && (best == null || connection.streamCount() < best.streamCount())) {
+                best = connection;
+            }
+        }
+        if (best == null) {
+            throw new IOException("隧道未连接到 " + config.host() + ":" + config.port());
+        }
+        return best.openStream(host, port, client.getAddress().getHostAddress() + ":" + client.getPort());
+    }
+
+    /**
+     * 当前可用的连接数
+     */
+    public int connected() {
+        int count = 0;
+        for (int i = 0; i < connections.length(); i++) {
+            TunnelConnection connection = connections.get(i);
+            if (connection != null && connection.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (int i = 0; i < connections.length(); i++) {
+            TunnelConnection connection = connections.getAndSet(i, null);
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TunnelClient{" + config + ", 已连接=" + connected() + "}";
+    }
+}
@@ -0,0 +1,409 @@
+package org.est.tunnel;
+
+import org.est.metrics.Counter;
+import org.est.metrics.Gauge;
+import org.est.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 一条隧道连接：一个 TCP 连接上承载多个流，每帧为 类型(1) 流编号(4) 长度(2) 数据。
+ * <p>
+ * 握手：server 端发送 magic、版本和 32 字节随机数，client 端回复 magic、版本、标志位和
+ * HMAC-SHA256(token, 随机数)，server 端校验后回复协商结果。只做认证不加密。
+ * 协商压缩后两个方向各是一个连续的 deflate 流，每帧以 SYNC_FLUSH 结束，前后帧共享字典。
+ * <p>
+ * 一个线程负责读取，收到的数据交给对应的流后立即继续读，不会因为某个流的消费者慢而阻塞其他流；
+ * 流量控制由 {@link TunnelStream} 的窗口保证。写入用 ReentrantLock 串行化，
+ * 有其他线程在排队时不 flush，由最后一个写入者一起 flush。
+ */
+final class TunnelConnection implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TunnelConnection.class);
+
+    static final int OPEN = 1;
+    static final int DATA = 2;
+    static final int WINDOW = 3;
+    static final int CLOSE = 4;
+    static final int RESET = 5;
+    static final int PING = 6;
+    static final int PONG = 7;
+
+    /** DATA 帧的最大长度 */
+    static final int MAX_PAYLOAD = 16 * 1024;
+    static final int CONNECT_TIMEOUT_MS = 10_000;
+    /** 超过这个时间没有收到任何帧视为连接已断开，client 端每 15 秒发送一次 PING */
+    static final int READ_TIMEOUT_MS = 45_000;
+
+    private static final byte[] MAGIC = {'M', 'C', 'L', 'T'};
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSION = 1;
+    private static final int NONCE_BYTES = 32;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final MetricRegistry METRICS = MetricRegistry.shared();
+    private static final Gauge CONNECTIONS = METRICS.gauge("tunnel_connections", "已建立的隧道连接数");
+    private static final Gauge STREAMS = METRICS.gauge("tunnel_streams", "隧道上正在转发的流");
+    private static final Counter AUTH_FAILURES = METRICS.counter("tunnel_auth_failures_total", "隧道握手失败次数");
+
+    /**
+     * 连接上的事件，在读取线程上调用，不能阻塞
+     */
+    interface Listener {
+        /**
+         * 对端请求打开一个流（只有 server 端会收到）
+         */
+        void onOpen(TunnelStream stream, String host, int port, String clientAddress);
+
+        void onClosed(TunnelConnection connection);
+    }
+
+    private final Socket socket;
+    private final SocketAddress remote;
+    private final boolean compression;
+    private final Listener listener;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<Integer, TunnelStream> streams = new ConcurrentHashMap<>();
+    /** client 端分配奇数编号 */
+    private final AtomicInteger nextStreamId = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private TunnelConnection(Socket socket, boolean compression, Listener listener) throws IOException {
+        this.socket = socket;
+        this.remote = socket.getRemoteSocketAddress();
+        this.compression = compression;
+        this.listener = listener;
+        InputStream rawIn = socket.getInputStream();
+        OutputStream rawOut = socket.getOutputStream();
+        if (compression) {
+            rawIn = new InflaterInputStream(rawIn, new Inflater(), BUFFER_BYTES);
+            rawOut = new DeflaterOutputStream(rawOut, new Deflater(Deflater.BEST_SPEED), BUFFER_BYTES, true);
+        }
+        this.in = new DataInputStream(new BufferedInputStream(rawIn, BUFFER_BYTES));
+        this.out = new DataOutputStream(new BufferedOutputStream(rawOut, BUFFER_BYTES));
+        socket.setSoTimeout(READ_TIMEOUT_MS);
+    }
+
+    /**
+     * client 端：连接 server 端并完成认证
+     */
+    static TunnelConnection connect(String host, int port, String token, boolean compression, Listener listener)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            // 握手阶段不经过缓冲，之后的字节可能已经是压缩数据
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            byte[] nonce = readHello(in);
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            reply.write(MAGIC);
+            reply.write(VERSION);
+            reply.write(compression ? FLAG_COMPRESSION : 0);
+            reply.write(sign(token, nonce));
+            out.write(reply.toByteArray());
+            out.flush();
+            int accepted = in.read();
+            if (accepted < 0) {
+                throw new IOException("隧道服务端拒绝了认证，请检查两端的 credentials.token");
+            }
+            TunnelConnection connection = new TunnelConnection(socket, (accepted & FLAG_COMPRESSION) != 0, listener);
+            connection.startReader();
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * server 端：对接受的连接完成认证，失败时关闭连接并抛出异常
+     */
+    static TunnelConnection accept(Socket socket, String token, Listener listener) throws IOException {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            byte[] nonce = new byte[NONCE_BYTES];
+            RANDOM.nextBytes(nonce);
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.write(nonce);
+            out.flush();
+
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            int version = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            byte[] signature = new byte[32];
+            in.readFully(signature);
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("不是隧道客户端或版本不一致");
+            }
+            if (!MessageDigest.isEqual(signature, sign(token, nonce))) {
+                throw new IOException("隧道认证失败");
+            }
+            int accepted = flags & FLAG_COMPRESSION;
+            out.write(accepted);
+            out.flush();
+            TunnelConnection connection = new TunnelConnection(socket, accepted != 0, listener);
+            connection.startReader();
+            return connection;
+        } catch (IOException e) {
+            AUTH_FAILURES.increment();
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static byte[] readHello(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        int version = in.readUnsignedByte();
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("对端不是隧道服务端");
+        }
+        if (version != VERSION) {
+            throw new IOException("隧道协议版本不一致: " + version);
+        }
+        byte[] nonce = new byte[NONCE_BYTES];
+        in.readFully(nonce);
+        return nonce;
+    }
+
+    private static byte[] sign(String token, byte[] nonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(token.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update(MAGIC);
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("无法计算隧道认证签名", e);
+        }
+    }
+
+    private void startReader() {
+        CONNECTIONS.increment();
+        Thread reader = new Thread(this::readLoop, "tunnel-reader-" + remote);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    SocketAddress remote() {
+        return remote;
+    }
+
+    boolean compression() {
+        return compression;
+    }
+
+    boolean isOpen() {
+        return !closed.get();
+    }
+
+    int streamCount() {
+        return streams.size();
+    }
+
+    /**
+     * client 端：打开一个到 host:port 的流，OPEN 帧发出后立即返回，不等待 server 端连接目标
+     */
+    TunnelStream openStream(String host, int port, String clientAddress) throws IOException {
+        if (closed.get()) {
+            throw new IOException("隧道连接已关闭");
+        }
+        int id = nextStreamId.getAndAdd(2);
+        TunnelStream stream = register(id);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeUTF(host);
+        data.writeShort(port);
+        data.writeUTF(clientAddress);
+        try {
+            send(OPEN, id, payload.toByteArray(), 0, payload.size());
+        } catch (IOException e) {
+            remove(id);
+            throw e;
+        }
+        return stream;
+    }
+
+    private TunnelStream register(int id) {
+        TunnelStream stream = new TunnelStream(this, id);
+        streams.put(id, stream);
+        STREAMS.increment();
+        return stream;
+    }
+
+    void remove(int id) {
+        if (streams.remove(id) != null) {
+            STREAMS.decrement();
+        }
+    }
+
+    void send(int type, int streamId, byte[] payload, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            out.writeByte(type);
+            out.writeInt(streamId);
+            out.writeShort(length);
+            out.write(payload, offset, length);
+            if (!writeLock.hasQueuedThreads()) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void sendInt(int type, int streamId, int value) throws IOException {
+        byte[] payload = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        send(type, streamId, payload, 0, payload.length);
+    }
+
+    void sendEmpty(int type, int streamId) throws IOException {
+        send(type, streamId, EMPTY, 0, 0);
+    }
+
+    /**
+     * 发送心跳；失败时连接已被关闭，由调用方重连
+     */
+    void ping() {
+        try {
+            sendEmpty(PING, 0);
+        } catch (IOException e) {
+            LOGGER.debug("隧道连接 {} 心跳失败: {}", remote, e.getMessage());
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed.get()) {
+                int type = in.readUnsignedByte();
+                int id = in.readInt();
+                int length = in.readUnsignedShort();
+                if (length > MAX_PAYLOAD) {
+                    throw new IOException("帧长度超出限制: " + length);
+                }
+                byte[] payload = length > 0 ? new byte[length] : EMPTY;
+                in.readFully(payload);
+                dispatch(type, id, payload);
+            }
+        } catch (IOException e) {
+            if (!closed.get()) {
+                LOGGER.warn("隧道连接 {} 已断开: {}", remote, e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void dispatch(int type, int id, byte[] payload) throws IOException {
+        switch (type) {
+            case OPEN -> {
+                if ((id & 1) == 0 || streams.containsKey(id)) {
+                    throw new IOException("非法的流编号: " + id);
+                }
+                DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+                String host = data.readUTF();
+                int port = data.readUnsignedShort();
+                String clientAddress = data.readUTF();
+                listener.onOpen(register(id), host, port, clientAddress);
+            }
+            case DATA -> {
+                TunnelStream stream = streams.get(id);
+                // 流已被本端重置时对端可能还有数据在路上，直接丢弃
+                if (stream != null && !stream.receive(payload)) {
+                    LOGGER.warn("隧道流 {} 超出接收窗口，已重置", id);
+                    stream.reset();
+                }
+            }
+            case WINDOW -> {
+                TunnelStream stream = streams.get(id);
+                if (stream != null && payload.length == 4) {
+                    stream.grant(((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16)
+                            | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF));
+                }
+            }
+            case CLOSE -> {
+                TunnelStream stream = streams.get(id);
+                if (stream != null) {
+                    stream.remoteClosed();
+                }
+            }
+            case RESET -> {
+                TunnelStream stream = streams.get(id);
+                if (stream != null) {
+                    stream.remoteReset();
+                }
+            }
+            case PING -> sendEmpty(PONG, 0);
+            case PONG -> {
+                // 收到任何帧都会重置读取超时，不需要额外处理
+            }
+            default -> throw new IOException("未知的帧类型: " + type);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        CONNECTIONS.decrement();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("关闭隧道连接时出错", e);
+        }
+        for (TunnelStream stream : streams.values()) {
+            stream.remoteReset();
+        }
+        listener.onClosed(this);
+    }
+
+    @Override
+    public String toString() {
+        return "TunnelConnection{" + remote + ", 流=" + streams.size() + (compression ? ", 压缩" : "") + "}";
+    }
+}
@@ -0,0 +1,203 @@
+package org.est.tunnel;
+
+import org.est.config.AppConfig;
+import org.est.forward.UpstreamConnector;
+import org.est.metrics.Counter;
+import org.est.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 隧道 server 端：部署在远程服务器附近，接受 client 端的隧道连接，替每个流连接远程服务器并双向转发。
+ * <p>
+ * 只连接本实例 remote、routes 和 mappings 中配置过的后端（按 host:port 匹配），
+ * 持有 token 的 client 也不能借隧道访问任意地址。
+ */
+public final class TunnelServer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TunnelServer.class);
+
+    private static final MetricRegistry METRICS = MetricRegistry.shared();
+    private static final Counter STREAMS_OPENED = streams("opened");
+    private static final Counter STREAMS_REJECTED = streams("rejected");
+
+    private final AppConfig config;
+    private final String token;
+    private final Map<String, AppConfig.Remote> targets;
+    private final ExecutorService executor;
+    private final Set<TunnelConnection> connections = ConcurrentHashMap.newKeySet();
+    private final TunnelConnection.Listener listener = new TunnelConnection.Listener() {
+        @Override
+        public void onOpen(TunnelStream stream, String host, int port, String clientAddress) {
+            executor.execute(() -> relay(stream, host, port, clientAddress));
+        }
+
+        @Override
+        public void onClosed(TunnelConnection connection) {
+            connections.remove(connection);
+            LOGGER.info("隧道连接 {} 已关闭", connection.remote());
+        }
+    };
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    public TunnelServer(AppConfig config) {
+        this.config = config;
+        this.token = requireToken(config.credentials());
+        this.targets = allowedTargets(config);
+        this.executor = config.local().virtualThreads()
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tunnel-vt-", 0).factory())
+                : Executors.newCachedThreadPool();
+    }
+
+    private static Counter streams(String result) {
+        return METRICS.counter("tunnel_streams_total", "隧道 server 端收到的流", "result=\"" + result + "\"");
+    }
+
+    /**
+     * 隧道两端都用 credentials.token 认证，没有启用时拒绝启动
+     */
+    static String requireToken(AppConfig.Credentials credentials) {
+        if (credentials == null || !credentials.enabled() || credentials.token() == null
+                || credentials.token().isEmpty()) {
+            throw new IllegalStateException("隧道模式需要启用 credentials 并配置 token（两端相同）");
+        }
+        return credentials.token();
+    }
+
+    private static Map<String, AppConfig.Remote> allowedTargets(AppConfig config) {
+        Map<String, AppConfig.Remote> targets = new HashMap<>();
+        for (AppConfig listener : config.listeners()) {
+            addBackends(targets, listener.remote());
+            for (AppConfig.Remote route : listener.routes().values()) {
+                addBackends(targets, route);
+            }
+        }
+        return targets;
+    }
+
+    private static void addBackends(Map<String, AppConfig.Remote> targets, AppConfig.Remote remote) {
+        for (AppConfig.Remote backend : remote.backends()) {
+            targets.putIfAbsent(key(backend.host(), backend.port()), backend);
+        }
+    }
+
+    private static String key(String host, int port) {
+        return String.valueOf(host).toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    public void start() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        String bindAddress = config.local().bindAddress();
+        int port = config.tunnel().listenPort();
+        socket.bind(bindAddress != null ? new InetSocketAddress(bindAddress, port) : new InetSocketAddress(port));
+        serverSocket = socket;
+        Thread acceptor = new Thread(this::acceptLoop, "tunnel-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("隧道服务端监听 {}，允许的目标: {}", socket.getLocalSocketAddress(), targets.keySet());
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("接受隧道连接失败: {}", e.getMessage());
+                }
+                continue;
+            }
+            // 握手最多等待 10 秒，放到线程池中，避免慢连接挡住后面的连接
+            executor.execute(() -> authenticate(socket));
+        }
+    }
+
+    private void authenticate(Socket socket) {
+        try {
+            TunnelConnection connection = TunnelConnection.accept(socket, token, listener);
+            connections.add(connection);
+            if (closed) {
+                connection.close();
+                return;
+            }
+            if (!connection.isOpen()) {
+                // 认证后立即断开，onClosed 可能早于 add
+                connections.remove(connection);
+                return;
+            }
+            LOGGER.info("隧道连接 {} 已通过认证{}", connection.remote(), connection.compression() ? "（压缩）" : "");
+        } catch (IOException e) {
+            LOGGER.warn("拒绝隧道连接 {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        }
+    }
+
+    private void relay(TunnelStream stream, String host, int port, String clientAddress) {
+        AppConfig.Remote target = targets.get(key(host, port));
+        if (target == null) {
+            STREAMS_REJECTED.increment();
+            LOGGER.warn("隧道请求的目标 {}:{} 不在本实例的 remote/routes 中，已拒绝（玩家 {}）", host, port, clientAddress);
+            stream.reset();
+            return;
+        }
+        SocketChannel backend;
+        try {
+            backend = UpstreamConnector.connect(target);
+        } catch (IOException | RuntimeException e) {
+            STREAMS_REJECTED.increment();
+            LOGGER.warn("隧道流连接 {} 失败（玩家 {}）: {}", target, clientAddress, e.getMessage());
+            stream.reset();
+            return;
+        }
+        STREAMS_OPENED.increment();
+        LOGGER.debug("隧道流 {} 已连接 {}（玩家 {}）", stream, target, clientAddress);
+        try (SocketChannel channel = backend) {
+            CompletableFuture<Long> upstream = CompletableFuture.supplyAsync(() -> stream.pumpTo(channel), executor);
+            long downstream = stream.pumpFrom(channel);
+            long up = upstream.join();
+            LOGGER.debug("隧道流 {} 结束：上行 {} 字节，下行 {} 字节", stream, up, downstream);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("隧道流 {} 异常结束: {}", stream, e.getMessage());
+            stream.reset();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOGGER.debug("关闭隧道监听时出错", e);
+            }
+        }
+        for (TunnelConnection connection : connections) {
+            connection.close();
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("隧道线程池未能在 5 秒内完全关闭");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
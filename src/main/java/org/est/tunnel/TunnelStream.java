@@ -0,0 +1,321 @@
+package org.est.tunnel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 隧道上的一个流，对应一个玩家会话。
+ * <p>
+ * 流量控制：每个方向的接收端最多缓存 {@link #WINDOW} 字节，发送端用完窗口后等待对端的 WINDOW 帧，
+ * 接收端每写出半个窗口归还一次。一个玩家的客户端读得慢只会让它自己的流停下，不影响同一连接上的其他流。
+ * <p>
+ * 两个方向分别由一个线程调用 {@link #pumpFrom} 和 {@link #pumpTo}；状态由 ReentrantLock 保护，
+ * 持有锁时不调用连接的 send，避免与读取线程互相等待。
+ */
+public final class TunnelStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TunnelStream.class);
+
+    /** 每个方向的接收窗口 */
+    static final int WINDOW = 256 * 1024;
+
+    private final TunnelConnection connection;
+    private final int id;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+    private final ArrayDeque<byte[]> inbound = new ArrayDeque<>();
+    private int queued;
+    private int sendWindow = WINDOW;
+    /** 对端已发送 CLOSE，不会再有数据 */
+    private boolean remoteClosed;
+    /** 本端已发送 CLOSE */
+    private boolean localClosed;
+    private boolean reset;
+
+    TunnelStream(TunnelConnection connection, int id) {
+        this.connection = connection;
+        this.id = id;
+    }
+
+    int id() {
+        return id;
+    }
+
+    /**
+     * 读取线程收到数据；超出接收窗口时返回 false
+     */
+    boolean receive(byte[] data) {
+        lock.lock();
+        try {
+            if (reset) {
+                return true;
+            }
+            if (queued + data.length > WINDOW) {
+                return false;
+            }
+            inbound.add(data);
+            queued += data.length;
+            readable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void grant(int bytes) {
+        lock.lock();
+        try {
+            sendWindow += bytes;
+            writable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remoteClosed() {
+        boolean finished;
+        lock.lock();
+        try {
+            remoteClosed = true;
+            finished = localClosed;
+            readable.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (finished) {
+            connection.remove(id);
+        }
+    }
+
+    /**
+     * 对端重置或连接断开：唤醒两个方向，由 {@link #pumpTo} 关闭本地连接
+     */
+    void remoteReset() {
+        lock.lock();
+        try {
+            reset = true;
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        connection.remove(id);
+    }
+
+    /**
+     * 放弃这个流并通知对端；两个方向都已正常结束时什么也不做
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            if (reset || (localClosed && remoteClosed)) {
+                return;
+            }
+            reset = true;
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        connection.remove(id);
+        try {
+            connection.sendEmpty(TunnelConnection.RESET, id);
+        } catch (IOException e) {
+            LOGGER.debug("发送流 {} 的 RESET 失败: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * 等待发送窗口，返回本次最多可发送的字节数；流已重置时返回 -1
+     */
+    private int awaitCredit() throws InterruptedException {
+        lock.lock();
+        try {
+            while (sendWindow <= 0 && !reset) {
+                writable.await();
+            }
+            return reset ? -1 : Math.min(sendWindow, TunnelConnection.MAX_PAYLOAD);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void consumeCredit(int bytes) {
+        lock.lock();
+        try {
+            sendWindow -= bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把已经从客户端读出的数据（PROXY 头、握手重放）发往对端；多个缓冲区合并进同一个 DATA 帧，
+     * server 端一次写给远程服务器
+     *
+     * @return 发送的字节数
+     */
+    public long write(ByteBuffer[] buffers) throws IOException {
+        long total = 0;
+        byte[] chunk = new byte[TunnelConnection.MAX_PAYLOAD];
+        // 按剩余字节总数判断是否发完：最后一个缓冲区可能本来就是空的（握手包之后没有数据）
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        try {
+            while (total < remaining) {
+                int credit = awaitCredit();
+                if (credit < 0) {
+                    throw new IOException("隧道流已被重置");
+                }
+                int length = 0;
+                for (ByteBuffer buffer : buffers) {
+                    int n = Math.min(credit - length, buffer.remaining());
+                    buffer.get(chunk, length, n);
+                    length += n;
+                }
+                consumeCredit(length);
+                connection.send(TunnelConnection.DATA, id, chunk, 0, length);
+                total += length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("发送被中断", e);
+        }
+        return total;
+    }
+
+    /**
+     * 把 source 读到的数据发往对端，直到 source 读到 EOF（随后通知对端半关闭）或流被重置
+     *
+     * @return 发送的字节数
+     */
+    public long pumpFrom(SocketChannel source) {
+        ByteBuffer buffer = ByteBuffer.allocate(TunnelConnection.MAX_PAYLOAD);
+        long total = 0;
+        try {
+            while (true) {
+                // 先等窗口再读取，窗口用完时数据留在 TCP 接收缓冲区里，由 TCP 向客户端施加背压
+                int credit = awaitCredit();
+                if (credit < 0) {
+                    break;
+                }
+                buffer.clear().limit(credit);
+                int read = source.read(buffer);
+                if (read < 0) {
+                    finishSending();
+                    break;
+                }
+                if (read == 0) {
+                    continue;
+                }
+                consumeCredit(read);
+                connection.send(TunnelConnection.DATA, id, buffer.array(), 0, read);
+                total += read;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("流 {} 读取本地连接结束: {}", id, e.getMessage());
+            reset();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reset();
+        }
+        return total;
+    }
+
+    private void finishSending() throws IOException {
+        boolean finished;
+        lock.lock();
+        try {
+            if (reset || localClosed) {
+                return;
+            }
+            localClosed = true;
+            finished = remoteClosed;
+        } finally {
+            lock.unlock();
+        }
+        connection.sendEmpty(TunnelConnection.CLOSE, id);
+        if (finished) {
+            connection.remove(id);
+        }
+    }
+
+    /**
+     * 把对端发来的数据写入 target，对端半关闭时关闭 target 的输出；流被重置时关闭 target，
+     * 使另一个方向阻塞在 target 上的读取立即返回
+     *
+     * @return 写入的字节数
+     */
+    public long pumpTo(SocketChannel target) {
+        long total = 0;
+        int unacknowledged = 0;
+        try {
+            while (true) {
+                byte[] data;
+                boolean aborted;
+                lock.lock();
+                try {
+                    while (inbound.isEmpty() && !remoteClosed && !reset) {
+                        readable.await();
+                    }
+                    aborted = reset;
+                    data = aborted ? null : inbound.poll();
+                    if (data != null) {
+                        queued -= data.length;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (aborted) {
+                    closeQuietly(target);
+                    break;
+                }
+                if (data == null) {
+                    target.shutdownOutput();
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                total += data.length;
+                unacknowledged += data.length;
+                if (unacknowledged >= WINDOW / 2) {
+                    connection.sendInt(TunnelConnection.WINDOW, id, unacknowledged);
+                    unacknowledged = 0;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("流 {} 写入本地连接结束: {}", id, e.getMessage());
+            reset();
+            closeQuietly(target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reset();
+            closeQuietly(target);
+        }
+        return total;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TunnelStream{" + id + " @ " + connection.remote() + "}";
+    }
+}
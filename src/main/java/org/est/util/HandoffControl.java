@@ -0,0 +1,191 @@
+package org.est.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 新旧实例之间的本地控制通道（Unix 域套接字，位于临时目录，按监听端口区分）。
+ * <p>
+ * 运行中的实例在通道上等待；新实例启动时发送交接请求，旧实例应答后关闭通道并执行交接回调：
+ * 停止接受连接，等待已有会话结束后退出。新实例在旧实例应答之后再开始监听通道，供下一次重启使用。
+ */
+public final class HandoffControl implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HandoffControl.class);
+    private static final String REQUEST = "HANDOFF\n";
+    private static final String REPLY = "OK\n";
+    private static final int REPLY_TIMEOUT_MS = 3000;
+
+    private final Path path;
+    private final ServerSocketChannel server;
+    private final Runnable onHandoff;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private HandoffControl(Path path, ServerSocketChannel server, Runnable onHandoff) {
+        this.path = path;
+        this.server = server;
+        this.onHandoff = onHandoff;
+    }
+
+    static Path socketPath(int port) {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "minecraft-lan-redirect-" + port + ".sock");
+    }
+
+    /**
+     * 请求监听同一端口的旧实例交出端口：旧实例应答表示它已停止（或即将停止）接受新连接
+     *
+     * @return 是否有旧实例应答
+     */
+    public static boolean requestHandoff(int port) {
+        Path path = socketPath(port);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(path));
+            channel.write(ByteBuffer.wrap(REQUEST.getBytes(StandardCharsets.US_ASCII)));
+            String reply = readLine(channel, REPLY_TIMEOUT_MS);
+            if (REPLY.trim().equals(reply)) {
+                LOGGER.info("旧实例已确认交接，将在已有会话结束后退出");
+                return true;
+            }
+            LOGGER.warn("旧实例对交接请求的应答无效: {}", reply);
+        } catch (IOException e) {
+            LOGGER.debug("连接旧实例的控制通道失败: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 开始在控制通道上等待交接请求，收到后在新线程上执行 onHandoff
+     */
+    public static HandoffControl listen(int port, Runnable onHandoff) throws IOException {
+        Path path = socketPath(port);
+        if (Files.exists(path)) {
+            // 没有进程在监听的残留文件（上次异常退出）直接删除；仍有实例在监听时不抢占
+            if (isListening(path)) {
+                throw new IOException("控制通道 " + path + " 已被另一个实例占用");
+            }
+            Files.deleteIfExists(path);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(path));
+            restrictToOwner(path);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        HandoffControl control = new HandoffControl(path, server, onHandoff);
+        Thread thread = new Thread(control::acceptLoop, "handoff-control");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.debug("交接控制通道: {}", path);
+        return control;
+    }
+
+    private static boolean isListening(Path path) {
+        try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(UnixDomainSocketAddress.of(path));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void restrictToOwner(Path path) {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            LOGGER.debug("无法限制控制通道的访问权限: {}", e.getMessage());
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed.get()) {
+            try (SocketChannel channel = server.accept()) {
+                String request = readLine(channel, REPLY_TIMEOUT_MS);
+                if (!REQUEST.trim().equals(request)) {
+                    LOGGER.warn("控制通道收到未知请求: {}", request);
+                    continue;
+                }
+                // 先删除通道文件再应答：新实例收到应答后会监听同一个控制通道
+                close();
+                channel.write(ByteBuffer.wrap(REPLY.getBytes(StandardCharsets.US_ASCII)));
+                Thread thread = new Thread(onHandoff, "handoff-drain");
+                thread.start();
+                return;
+            } catch (IOException e) {
+                if (!closed.get()) {
+                    LOGGER.debug("控制通道连接出错: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 读一行 ASCII 文本（不含换行），最多等待 timeoutMillis
+     */
+    private static String readLine(SocketChannel channel, int timeoutMillis) throws IOException {
+        // Unix 域套接字不支持 SO_TIMEOUT，用 Selector 实现超时
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            while (buffer.hasRemaining()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                if (selector.select(remaining) == 0) {
+                    continue;
+                }
+                selector.selectedKeys().clear();
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+                for (int i = 0; i < buffer.position(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        return new String(buffer.array(), 0, i, StandardCharsets.US_ASCII);
+                    }
+                }
+            }
+        } finally {
+            if (channel.isOpen()) {
+                channel.configureBlocking(true);
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -4,18 +4,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 进程管理工具：检测端口占用并杀死同名进程
+ * <p>
+ * Linux 上直接读取 /proc/net/tcp、/proc/net/tcp6 和 /proc/[pid]/fd 查找监听端口的进程，不启动外部命令；
+ * 其他系统使用 lsof 或 netstat。进程信息与终止都通过 {@link ProcessHandle}。
  */
 public final class ProcessKiller {
     private static final Logger LOGGER = LoggerFactory.getLogger(ProcessKiller.class);
     private static final boolean IS_WINDOWS = System.getProperty("os.name").toLowerCase().contains("windows");
+    private static final Path PROC = Paths.get("/proc");
+    private static final String[] PROC_NET_TCP = {"/proc/net/tcp", "/proc/net/tcp6"};
+    /** /proc/net/tcp 中 LISTEN 状态的编码 */
+    private static final String TCP_LISTEN = "0A";
+    private static final Duration EXIT_TIMEOUT = Duration.ofSeconds(5);
 
     /**
      * 尝试杀死占用指定端口的同名进程
@@ -27,15 +46,19 @@ public final class ProcessKiller {
         LOGGER.info("开始检测端口 {} 的占用情况...", port);
         Optional<Long> pidOpt = findProcessIdByPort(port);
         if (pidOpt.isEmpty()) {
-            // 如果 netstat 检测不到，但端口确实被占用，可能是 TIME_WAIT 状态
+            // 如果检测不到占用进程，但端口确实被占用，可能是 TIME_WAIT 状态
             // 这种情况下无法通过终止进程来解决，需要等待
-            LOGGER.info("端口 {} 未被 netstat 检测到占用进程", port);
+            LOGGER.info("端口 {} 未检测到占用进程", port);
             LOGGER.debug("如果端口确实被占用，可能是 TIME_WAIT 状态，需要等待自动释放");
             return false;
         }
 
         long pid = pidOpt.get();
         LOGGER.info("检测到端口 {} 被进程 PID {} 占用", port, pid);
+        if (pid == ProcessHandle.current().pid()) {
+            LOGGER.warn("端口 {} 被本进程的另一个监听占用，请检查 listenPort 与 mappings 是否重复", port);
+            return false;
+        }
 
         ProcessInfo info = getProcessInfo(pid);
         if (info == null) {
@@ -50,12 +73,6 @@ public final class ProcessKiller {
             LOGGER.info("检测到同名进程占用端口，正在终止进程 PID {}...", pid);
             if (killProcess(pid)) {
                 LOGGER.info("成功终止进程 PID {}", pid);
-                // 等待进程完全退出
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
                 return true;
             } else {
                 LOGGER.warn("终止进程 PID {} 失败，可能需要管理员权限", pid);
@@ -71,6 +88,103 @@ public final class ProcessKiller {
      * 通过端口号查找进程ID
      */
     private static Optional<Long> findProcessIdByPort(int port) {
+        if (!IS_WINDOWS && Files.isReadable(Paths.get(PROC_NET_TCP[0]))) {
+            return findProcessIdInProc(port);
+        }
+        return findProcessIdByCommand(port);
+    }
+
+    /**
+     * Linux：在 /proc/net/tcp(6) 中找到监听该端口的套接字 inode，再在各进程的 fd 中找到持有它的进程
+     */
+    static Optional<Long> findProcessIdInProc(int port) {
+        Set<Long> inodes = listeningInodes(port);
+        if (inodes.isEmpty()) {
+            return Optional.empty();
+        }
+        try (DirectoryStream<Path> processes = Files.newDirectoryStream(PROC, ProcessKiller::isPidDirectory)) {
+            for (Path process : processes) {
+                if (holdsAnySocket(process.resolve("fd"), inodes)) {
+                    return Optional.of(Long.parseLong(process.getFileName().toString()));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("读取 /proc 失败: {}", e.getMessage());
+        }
+        // 套接字属于其他用户的进程时无权读取它的 fd
+        LOGGER.info("端口 {} 有监听套接字，但找不到所属进程（可能属于其他用户）", port);
+        return Optional.empty();
+    }
+
+    /**
+     * /proc/net/tcp 每行：sl local_address rem_address st ... uid timeout inode，地址为 十六进制IP:十六进制端口
+     */
+    static Set<Long> listeningInodes(int port) {
+        Set<Long> inodes = new HashSet<>();
+        for (String file : PROC_NET_TCP) {
+            Path path = Paths.get(file);
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+                reader.readLine(); // 表头
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length < 10 || !TCP_LISTEN.equals(fields[3])) {
+                        continue;
+                    }
+                    String local = fields[1];
+                    int localPort = Integer.parseInt(local.substring(local.indexOf(':') + 1), 16);
+                    long inode = Long.parseLong(fields[9]);
+                    if (localPort == port && inode != 0) {
+                        inodes.add(inode);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("解析 {} 失败: {}", file, e.getMessage());
+            }
+        }
+        return inodes;
+    }
+
+    private static boolean isPidDirectory(Path path) {
+        String name = path.getFileName().toString();
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+
+    /**
+     * fd 目录中的套接字是指向 socket:[inode] 的符号链接
+     */
+    private static boolean holdsAnySocket(Path fdDirectory, Set<Long> inodes) {
+        try (DirectoryStream<Path> fds = Files.newDirectoryStream(fdDirectory)) {
+            for (Path fd : fds) {
+                String target;
+                try {
+                    target = Files.readSymbolicLink(fd).toString();
+                } catch (IOException e) {
+                    continue; // fd 在遍历期间被关闭
+                }
+                if (target.startsWith("socket:[") && target.endsWith("]")
+                        && inodes.contains(Long.parseLong(target.substring(8, target.length() - 1)))) {
+                    return true;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 进程已退出或无权访问
+        }
+        return false;
+    }
+
+    /**
+     * 其他系统：解析 lsof 或 netstat 的输出
+     */
+    private static Optional<Long> findProcessIdByCommand(int port) {
         try {
             Process process;
             if (IS_WINDOWS) {
@@ -163,9 +277,24 @@ public final class ProcessKiller {
     }
 
     /**
-     * 获取进程信息
+     * 获取进程信息：优先使用 ProcessHandle；拿不到命令行时（Windows 不提供其他进程的参数）再调用 wmic 或 ps
      */
     private static ProcessInfo getProcessInfo(long pid) {
+        Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (handle.isEmpty()) {
+            return null;
+        }
+        ProcessHandle.Info info = handle.get().info();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+        if (command.isPresent() && arguments.isPresent()) {
+            String name = Paths.get(command.get()).getFileName().toString();
+            return new ProcessInfo(name, command.get() + " " + String.join(" ", arguments.get()));
+        }
+        return getProcessInfoByCommand(pid);
+    }
+
+    private static ProcessInfo getProcessInfoByCommand(long pid) {
         try {
             Process process;
             if (IS_WINDOWS) {
@@ -252,33 +381,30 @@ public final class ProcessKiller {
     }
 
     /**
-     * 杀死进程
+     * 强制终止进程并等待它退出，最多等待 {@link #EXIT_TIMEOUT}
      */
     private static boolean killProcess(long pid) {
+        Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (handle.isEmpty()) {
+            // 查找之后已经自行退出
+            return true;
+        }
+        ProcessHandle process = handle.get();
         try {
-            Process process;
-            if (IS_WINDOWS) {
-                process = new ProcessBuilder("taskkill", "/F", "/PID", String.valueOf(pid)).start();
-            } else {
-                process = new ProcessBuilder("kill", "-9", String.valueOf(pid)).start();
-            }
-
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                return true;
-            } else {
-                // 读取错误输出
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
-                    String error = reader.readLine();
-                    if (error != null) {
-                        LOGGER.debug("终止进程失败: {}", error);
-                    }
-                }
+            if (!process.destroyForcibly()) {
+                LOGGER.debug("终止进程 PID {} 的请求被拒绝", pid);
                 return false;
             }
-        } catch (Exception e) {
-            LOGGER.warn("终止进程 PID {} 时出错", pid, e);
+            process.onExit().get(EXIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            LOGGER.warn("进程 PID {} 在 {} 秒内未退出", pid, EXIT_TIMEOUT.getSeconds());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (SecurityException | ExecutionException e) {
+            LOGGER.warn("终止进程 PID {} 时出错: {}", pid, e.getMessage());
             return false;
         }
     }
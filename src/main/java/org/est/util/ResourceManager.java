@@ -4,13 +4,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 资源管理工具：安全地管理 ServerSocket 生命周期
  */
 public final class ResourceManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(ResourceManager.class);
+    private static final long BACKOFF_INITIAL_MS = 10L;
+    private static final long BACKOFF_MAX_MS = 500L;
 
     /**
      * 安全地关闭 ServerSocket
@@ -28,16 +36,49 @@ public final class ResourceManager {
 
     /**
      * 安全地创建 ServerSocket，失败时自动清理
+     * <p>
+     * 底层通过 ServerSocketChannel 打开，既可以按传统方式阻塞 accept，
+     * 接受到的连接也都带有 SocketChannel，供 nio 引擎注册到 Selector。
      */
     public static ServerSocket createServerSocket(int port) throws IOException {
-        ServerSocket socket = null;
+        return createServerSocket(port, false);
+    }
+
+    /**
+     * @param reusePort 设置 SO_REUSEPORT，允许另一个同样设置了该选项的进程同时监听这个端口（用于无缝重启）；
+     *                  系统不支持时忽略
+     */
+    public static ServerSocket createServerSocket(int port, boolean reusePort) throws IOException {
+        return createServerSocket(null, port, reusePort);
+    }
+
+    /**
+     * @param bindAddress 监听的本机地址，null 表示所有地址
+     */
+    public static ServerSocket createServerSocket(String bindAddress, int port, boolean reusePort)
+            throws IOException {
+        ServerSocketChannel channel = null;
         try {
-            socket = new ServerSocket(port);
-            LOGGER.debug("成功创建 ServerSocket，端口: {}", port);
+            channel = ServerSocketChannel.open();
+            if (reusePort) {
+                if (channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                } else {
+                    LOGGER.debug("当前系统不支持 SO_REUSEPORT");
+                }
+            }
+            ServerSocket socket = channel.socket();
+            socket.bind(bindAddress != null ? new InetSocketAddress(bindAddress, port) : new InetSocketAddress(port));
+            LOGGER.debug("成功创建 ServerSocket，地址: {}，端口: {}", bindAddress != null ? bindAddress : "*", port);
             return socket;
         } catch (IOException e) {
-            // 如果创建失败，socket 应该是 null，但为了安全还是尝试关闭
-            closeSocket(socket, "创建失败时");
+            // 绑定失败时关闭已打开的通道，避免文件描述符泄漏
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
             throw e;
         }
     }
@@ -77,5 +118,63 @@ public final class ResourceManager {
         }
         return null;
     }
+
+    /**
+     * 反复尝试绑定端口直到成功或超过 maxWait，间隔从 10 ms 开始倍增，最长 500 ms。
+     * 用于等待刚退出的进程释放端口：端口通常几毫秒内就能绑定，不必固定等待数秒
+     *
+     * @return 成功创建的 ServerSocket，超时返回 null
+     */
+    public static ServerSocket bindWithBackoff(String bindAddress, int port, Duration maxWait, boolean reusePort) {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        long delayMs = BACKOFF_INITIAL_MS;
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            try {
+                ServerSocket socket = createServerSocket(bindAddress, port, reusePort);
+                LOGGER.info("成功绑定端口 {}（第 {} 次尝试）", port, attempts);
+                return socket;
+            } catch (IOException e) {
+                LOGGER.debug("绑定端口 {} 失败 (尝试 {}): {}", port, attempts, e.getMessage());
+            }
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                LOGGER.warn("等待 {} ms 后端口 {} 仍无法绑定", maxWait.toMillis(), port);
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(delayMs, remainingMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("重试等待被中断");
+                return null;
+            }
+            delayMs = Math.min(delayMs * 2, BACKOFF_MAX_MS);
+        }
+    }
+
+    /**
+     * 启动本进程的一方（systemd 套接字激活、inetd 等）传入的监听套接字；没有或端口不符时返回 null
+     */
+    public static ServerSocket inheritedServerSocket(int port) {
+        Channel channel;
+        try {
+            channel = System.inheritedChannel();
+        } catch (IOException | SecurityException e) {
+            LOGGER.debug("读取继承的通道失败: {}", e.getMessage());
+            return null;
+        }
+        if (!(channel instanceof ServerSocketChannel)) {
+            return null;
+        }
+        ServerSocket socket = ((ServerSocketChannel) channel).socket();
+        if (socket.getLocalPort() != port) {
+            LOGGER.warn("继承的监听套接字端口 {} 与配置的端口 {} 不一致，忽略", socket.getLocalPort(), port);
+            return null;
+        }
+        LOGGER.info("使用继承的监听套接字，端口 {}", port);
+        return socket;
+    }
 }
 
@@ -0,0 +1,33 @@
+package org.est.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 日志采样：每个时间窗口只放行一条日志，其余只计数，下一条放行的日志附带被省略的条数。
+ * 用于拒绝连接等在攻击下可能每秒成千上万次的事件。
+ */
+public final class SampledLog {
+    private final long intervalNanos;
+    private final AtomicLong nextLogNanos;
+    private final LongAdder suppressed = new LongAdder();
+
+    public SampledLog(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+        this.nextLogNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 本次是否应该记录日志：返回 -1 表示不记录；否则返回上一条日志以来被省略的次数
+     */
+    public long sample() {
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next >= 0 && nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+            return suppressed.sumThenReset();
+        }
+        suppressed.increment();
+        return -1;
+    }
+}
@@ -0,0 +1,316 @@
+package org.est.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SimpleYamlParser 与 SnakeYAML 的对照：每个输入要么解析出与 SnakeYAML 相同的树（值的类型也相同），
+ * 要么抛出 UnsupportedException 交给 SnakeYAML。修改解析器后这里的任何不一致都说明两条路径读出的配置不同。
+ */
+class SimpleYamlParserTest {
+
+    /** 普通标量和引号标量，分别放在映射值和序列项的位置上对照 */
+    private static final String[] SCALARS = {
+            // null
+            "~", "null", "Null", "NULL", "nULL", "", "~x", "null x",
+            // 布尔
+            "yes", "Yes", "YES", "yEs", "no", "No", "NO", "true", "True", "TRUE", "tRUE", "false", "False", "FALSE",
+            "on", "On", "ON", "oN", "off", "Off", "OFF", "y", "Y", "n", "N", "yes please", "truex",
+            // 整数
+            "0", "1", "-1", "+1", "42", "-0", "+0", "25565", "2147483647", "2147483648", "-2147483648",
+            "-2147483649", "9223372036854775807", "9223372036854775808", "-9223372036854775808",
+            "99999999999999999999999", "007", "08", "0o17", "0b101", "-0b101", "0x1F", "0x_1F", "0xg",
+            "1_000", "1__0", "_1", "1_", "190:20:30", "1:30", "1:60", "01:30", "+12:30", "1:2:3:4",
+            // 浮点数
+            "1.0", "-1.5", "+2.5", ".5", "-.5", "1.", "1e3", "1E3", "1.0e3", "1.0E+3", "1.0e-3", "1e", "e3",
+            "1.2.3", "1_000.5", "1.5_0", ".inf", "-.inf", "+.inf", ".Inf", ".INF", ".nan", ".NaN", ".NAN",
+            "inf", "nan", "1.0f", "0.1d", "3.14159265358979323846264338327950288",
+            // 时间戳
+            "2001-12-14", "2001-12-14t21:59:43.10-05:00", "2001-1-1", "2001-12-14 21:59:43.10 -5", "20011214",
+            // 字符串
+            "hello", "hello world", "localhost", "127.0.0.1", "::1", "fe80::1", "192.168.1.0/24", "2001:db8::/32",
+            "play.example.com", "*.example.com", "http://127.0.0.1:9100/metrics", "C:\\server\\mc", "a:b",
+            "a :b", "key=value", "=", "<<", "<<x", "a#b", "a #b", "a # comment", "value # comment", "v1", "v2",
+            "least-connections", "round-robin", "ip-hash", "-x", "--", "-", "?", "?x", "? x", ".", "..", "...",
+            "a,b", "a]", "a}", "100%", "$HOME", "~/mc", "中文", "服务器 1", "über", "emoji 🎮", "tab\there",
+            "trailing   ", "a\\nb", "'", "\"",
+            // 单引号
+            "'single'", "''", "'it''s'", "'  padded  '", "'yes'", "'123'", "'null'", "'a: b'", "'#'",
+            "'x' # comment", "'x' y", "'unterminated", "'中文'",
+            // 双引号
+            "\"double\"", "\"\"", "\"yes\"", "\"123\"", "\"a\\\"b\"", "\"a\\\\b\"", "\"a\\nb\"", "\"a\\tb\"",
+            "\"a\\rb\"", "\"a\\0b\"", "\"a\\/b\"", "\"\\x41\"", "\"\\u4e2d\"", "\"\\U0001F3AE\"", "\"\\x4\"",
+            "\"\\u12\"", "\"\\q\"", "\"\\e\"", "\"\\a\"", "\"\\ \"", "\"\\N\"", "\"x\" # comment", "\"x\" y",
+            "\"unterminated", "\"a: b\"", "\"#\"",
+            // 其他写法，应当交给 SnakeYAML
+            "[1, 2]", "[]", "{a: 1}", "{}", "&anchor x", "*alias", "!tag x", "!!str 1", "!!int \"1\"", "|", ">",
+            "|-", ">-", "%x", "@x", "`x`", "a: b", "a:", "x: ", "'a': b",
+    };
+
+    /** 结构上的写法：缩进、序列、注释、空值等 */
+    private static final String[] DOCUMENTS = {
+            "",
+            "# only a comment\n",
+            "\n\n   \n",
+            "a: 1\nb: 2\n",
+            "a: 1\r\nb: 2\r\n",
+            "\uFEFFa: 1\n",
+            "a: 1\n  \nb: 2",
+            "a:\n  b:\n    c: 1\n  d: 2\ne: 3\n",
+            "a:\n    b: 1\n    c: 2\n",
+            "a:\n  b: 1\n   c: 2\n",
+            "a:\n  b: 1\n c: 2\n",
+            "a:\n\tb: 1\n",
+            "a:\n",
+            "a:\nb:\n",
+            "a: # comment\n  b: 1\n",
+            "a:   # comment\nb: 1\n",
+            "a: 1 # comment\n# comment\nb: 2 # comment\n",
+            "list:\n  - 1\n  - two\n  - 3.0\n",
+            "list:\n- 1\n- 2\nnext: 3\n",
+            "list:\n  -\n  - 2\n",
+            "list:\n  -\n    a: 1\n  - 2\n",
+            "list:\n  - a: 1\n    b: 2\n  - a: 3\n",
+            "list:\n  -   a: 1\n      b: 2\n",
+            "list:\n  - a: 1\n   b: 2\n",
+            "list:\n  - - 1\n    - 2\n",
+            "list:\n  - a:\n      - x\n      - y\n    b: z\n",
+            "- 1\n- 2\n",
+            "- a: 1\n- b: 2\n",
+            "plain\n",
+            "42\n",
+            "a: 1\na: 2\n",
+            "'quoted key': 1\n\"double key\": 2\n",
+            "'a: b': 1\n",
+            "1: one\n",
+            "true: yes\n",
+            "null: x\n",
+            "~: x\n",
+            "key with spaces: value\n",
+            "a:b: c\n",
+            "a: b\n  c: d\n",
+            "a: |\n  text\n",
+            "a: >\n  folded\n",
+            "a: 'multi\n  line'\n",
+            "a: \"multi\n  line\"\n",
+            "a: plain\n  continued\n",
+            "---\na: 1\n",
+            "a: 1\n...\n",
+            "%YAML 1.1\n---\na: 1\n",
+            "a: 1\n---\nb: 2\n",
+            "? a\n: b\n",
+            "a: &x 1\nb: *x\n",
+            "base: &b\n  x: 1\nderived:\n  <<: *b\n",
+            "a: [1, 2]\n",
+            "a: {b: 1}\n",
+            "a:\n  - [1]\n",
+            "a: !!str 1\n",
+            "a: 1\n b: 2\n",
+            "  a: 1\n  b: 2\n",
+            "  a: 1\nb: 2\n",
+            "a:\n- 1\n  - 2\n",
+            "routes:\n  play.example.com:\n    host: 10.0.0.1\n    port: 25565\n  \"*.example.com\":\n    host: h\n",
+    };
+
+    static Stream<String> scalarsAsValues() {
+        return Stream.of(SCALARS).map(scalar -> "key: " + scalar + "\n");
+    }
+
+    static Stream<String> scalarsAsItems() {
+        return Stream.of(SCALARS).map(scalar -> "- " + scalar + "\n");
+    }
+
+    static Stream<String> documents() {
+        return Stream.of(DOCUMENTS);
+    }
+
+    @ParameterizedTest
+    @MethodSource({"scalarsAsValues", "scalarsAsItems", "documents"})
+    void matchesSnakeYamlOrFallsBack(String yaml) {
+        assertSameAsSnakeYamlOrUnsupported(yaml);
+    }
+
+    @Test
+    void shippedTemplateIsParsedWithoutFallback() throws Exception {
+        String template = resource("/config.yaml");
+        Object parsed = SimpleYamlParser.parse(template);
+        assertNotNull(parsed);
+        assertSameTree(new Yaml().load(template), parsed, "$");
+    }
+
+    @Test
+    void configUsingEverySectionIsParsedWithoutFallback() throws Exception {
+        String config = String.join("\n",
+                "remote:",
+                "  host: mc.example.com",
+                "  port: 25565",
+                "  srv: yes",
+                "  rewriteAddress: true",
+                "  proxyProtocol: v2",
+                "  poolSize: 4",
+                "  poolMaxIdleMs: 15000",
+                "  balance: least-connections",
+                "  backends:",
+                "    - host: 10.0.0.1",
+                "      port: 25565",
+                "      weight: 3",
+                "    - host: 10.0.0.2   # 备用",
+                "      port: 25565",
+                "routes:",
+                "  lobby.example.com:",
+                "    host: 10.0.0.3",
+                "    port: 25570",
+                "  '*.example.com':",
+                "    host: 10.0.0.4",
+                "local:",
+                "  listenPort: 25566",
+                "  bindAddress: 0.0.0.0",
+                "  engine: nio",
+                "  ioThreads: 2",
+                "  virtualThreads: false",
+                "  flushPolicy: adaptive",
+                "  flushMaxDelayMicros: 500",
+                "  corkBulk: true",
+                "  statusCacheMs: 2000",
+                "  handoff: true",
+                "  maxSessions: 0",
+                "  bandwidthPerSession: 1024",
+                "  bandwidthPerSubnet: 4096",
+                "  bandwidthTotal: 0",
+                "  trafficPriority: false",
+                "  dnsTtlSeconds: 60",
+                "  dnsServer: 223.5.5.5",
+                "  drainTimeoutSeconds: 300",
+                "mappings:",
+                "  - listenPort: 25567",
+                "    motd: 备用入口",
+                "    remote:",
+                "      host: 10.0.0.5",
+                "      port: 25565",
+                "lan:",
+                "  motd: \"§a局域网 \\u00a7 服务器\"",
+                "  announceIntervalMs: 1000",
+                "  broadcastPort: 4445",
+                "  broadcastAddress: 255.255.255.255",
+                "security:",
+                "  whitelist:",
+                "    - 127.0.0.1",
+                "    - 192.168.0.0/16",
+                "    - fd00::/8",
+                "  blocklist:",
+                "    - \"192.168.5.0/24\"",
+                "  blocklistFiles:",
+                "    - blocklist.txt",
+                "  compiledCache: ipfilter.bin",
+                "  connectionRate: 5.5",
+                "  connectionBurst: 10",
+                "  subnetConnectionRate: 0",
+                "  subnetConnectionBurst: 50",
+                "  subnetPrefix: 24",
+                "  subnetPrefixV6: 48",
+                "  maxSessionsPerIp: 0",
+                "credentials:",
+                "  enabled: on",
+                "  token: 's3cr3t'",
+                "tunnel:",
+                "  mode: \"off\"",
+                "  host: \"\"",
+                "  port: 25600",
+                "  listenPort: 25600",
+                "  connections: 2",
+                "  compression: false",
+                "logging:",
+                "  level: INFO",
+                "metrics:",
+                "  enabled: false",
+                "  bind: 127.0.0.1",
+                "  port: 9225",
+                "");
+        Object parsed = SimpleYamlParser.parse(config);
+        assertInstanceOf(Map.class, parsed);
+        assertSameTree(new Yaml().load(config), parsed, "$");
+    }
+
+    @Test
+    void unsupportedInputReportsLineNumber() {
+        SimpleYamlParser.UnsupportedException e = assertThrows(SimpleYamlParser.UnsupportedException.class,
+                () -> SimpleYamlParser.parse("a: 1\nb: [1, 2]\n"));
+        assertTrue(e.getMessage().startsWith("第 2 行"), e.getMessage());
+    }
+
+    private static void assertSameAsSnakeYamlOrUnsupported(String yaml) {
+        Object parsed;
+        try {
+            parsed = SimpleYamlParser.parse(yaml);
+        } catch (SimpleYamlParser.UnsupportedException e) {
+            // 回退到 SnakeYAML，结果自然一致
+            return;
+        }
+        Object expected;
+        try {
+            expected = new Yaml().load(yaml);
+        } catch (RuntimeException e) {
+            throw new AssertionError("SnakeYAML 拒绝的输入被解析为 " + parsed + ": " + quote(yaml), e);
+        }
+        assertSameTree(expected, parsed, quote(yaml));
+    }
+
+    private static void assertSameTree(Object expected, Object actual, String path) {
+        if (expected == null || actual == null) {
+            assertEquals(expected, actual, path);
+            return;
+        }
+        if (expected instanceof Map) {
+            assertInstanceOf(Map.class, actual, path);
+            Map<?, ?> expectedMap = (Map<?, ?>) expected;
+            Map<?, ?> actualMap = (Map<?, ?>) actual;
+            assertEquals(new ArrayList<>(expectedMap.keySet()), new ArrayList<>(actualMap.keySet()), path);
+            for (Map.Entry<?, ?> entry : expectedMap.entrySet()) {
+                assertSameTree(entry.getValue(), actualMap.get(entry.getKey()), path + "." + entry.getKey());
+            }
+            return;
+        }
+        if (expected instanceof List) {
+            assertInstanceOf(List.class, actual, path);
+            List<?> expectedList = (List<?>) expected;
+            List<?> actualList = (List<?>) actual;
+            assertEquals(expectedList.size(), actualList.size(), path);
+            Iterator<?> it = actualList.iterator();
+            int i = 0;
+            for (Object item : expectedList) {
+                assertSameTree(item, it.next(), path + "[" + i++ + "]");
+            }
+            return;
+        }
+        assertEquals(expected.getClass(), actual.getClass(), path);
+        assertEquals(expected, actual, path);
+    }
+
+    private static String quote(String yaml) {
+        return "\"" + yaml.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + "\"";
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = SimpleYamlParserTest.class.getResourceAsStream(name)) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BlockingPipeTest {
+    private ServerSocketChannel server;
+    private SocketChannel player;
+    private SocketChannel pipeIn;
+    private SocketChannel pipeOut;
+    private SocketChannel remote;
+
+    @BeforeEach
+    void connect() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        player = SocketChannel.open(server.getLocalAddress());
+        pipeIn = server.accept();
+        pipeOut = SocketChannel.open(server.getLocalAddress());
+        remote = server.accept();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        player.close();
+        pipeIn.close();
+        pipeOut.close();
+        remote.close();
+        server.close();
+    }
+
+    @Test
+    void coalescingPipeForwardsBurstEndingOnFullBuffer() throws Exception {
+        AppConfig.Local local = new AppConfig.Local(25565);
+        local.setFlushPolicy(AppConfig.Local.FLUSH_COALESCE);
+        local.setFlushMaxDelayMicros(1000);
+        CompletableFuture<Long> relayed = CompletableFuture.supplyAsync(
+                () -> new BlockingPipe(pipeIn, pipeOut, FlushPolicy.from(local), null, true).run());
+
+        // 恰好填满第一次读取所用的缓冲区，之后在 maxDelay 内不再有数据
+        byte[] burst = new byte[BufferPool.capacity(BufferPool.SMALL)];
+        for (int i = 0; i < burst.length; i++) {
+            burst[i] = (byte) (i * 31);
+        }
+        ByteBuffer source = ByteBuffer.wrap(burst);
+        while (source.hasRemaining()) {
+            player.write(source);
+        }
+
+        // 玩家保持连接不再发送，这批数据必须在等待期结束后写出，而不是等到连接关闭
+        ByteBuffer received = ByteBuffer.allocate(burst.length);
+        remote.socket().setSoTimeout(2000);
+        int n;
+        while (received.hasRemaining()
+                && (n = remote.socket().getInputStream().read(received.array(), received.position(),
+                received.remaining())) > 0) {
+            received.position(received.position() + n);
+        }
+        assertArrayEquals(burst, received.array());
+
+        player.shutdownOutput();
+        assertEquals(burst.length, relayed.get(5, TimeUnit.SECONDS));
+        assertEquals(-1, remote.socket().getInputStream().read());
+    }
+}
@@ -0,0 +1,90 @@
+package org.est.forward;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HandshakeTest {
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private ServerSocket server;
+    private Socket player;
+    private Socket accepted;
+
+    @BeforeEach
+    void connect() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        player = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        accepted = server.accept();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        player.close();
+        accepted.close();
+        server.close();
+    }
+
+    @Test
+    void lonePreNettyPingDoesNotWaitForHandshakeTimeout() throws IOException {
+        player.getOutputStream().write(0xFE);
+
+        long start = System.nanoTime();
+        Handshake.Initial initial = Handshake.read(accepted, TIMEOUT_MILLIS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertNull(initial.handshake());
+        assertEquals(1, initial.bytes().remaining());
+        assertEquals((byte) 0xFE, initial.bytes().get(0));
+        assertTrue(elapsedMillis < TIMEOUT_MILLIS / 2, "等待了 " + elapsedMillis + "ms");
+        assertEquals(0, accepted.getSoTimeout());
+    }
+
+    @Test
+    void legacyPingWithPayloadIsDetectedWithoutWaiting() throws IOException {
+        player.getOutputStream().write(new byte[]{(byte) 0xFE, 0x01, (byte) 0xFA});
+
+        Handshake.Initial initial = Handshake.read(accepted, TIMEOUT_MILLIS);
+
+        assertNull(initial.handshake());
+        assertEquals(3, initial.bytes().remaining());
+    }
+
+    @Test
+    void handshakeSplitAcrossSegmentsIsDecoded() throws Exception {
+        ByteBuffer packet = Handshake.encode(765, "play.example.com", 25565, Handshake.STATE_LOGIN);
+        byte[] bytes = new byte[packet.remaining()];
+        packet.get(bytes);
+        OutputStream out = player.getOutputStream();
+        out.write(bytes, 0, 3);
+        out.flush();
+        Thread sender = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                out.write(bytes, 3, bytes.length - 3);
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+        sender.start();
+
+        Handshake.Initial initial = Handshake.read(accepted, TIMEOUT_MILLIS);
+        sender.join();
+
+        assertNotNull(initial.handshake());
+        assertEquals("play.example.com", initial.handshake().host());
+        assertEquals(bytes.length, initial.handshake().end());
+    }
+}
@@ -0,0 +1,119 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 握手包重放：改写地址后的握手包（以及之后已读到的数据）必须完整写给远程服务器
+ */
+class ReplayBytesTest {
+    private ServerSocketChannel server;
+    private SocketChannel writer;
+    private SocketChannel reader;
+
+    @BeforeEach
+    void connect() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        writer = SocketChannel.open(server.getLocalAddress());
+        reader = server.accept();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        writer.close();
+        reader.close();
+        server.close();
+    }
+
+    @Test
+    void rewrittenHandshakeIsSentWhenNothingFollowsIt() throws IOException {
+        ByteBuffer initial = Handshake.encode(765, "play.example.com", 25565, Handshake.STATE_LOGIN);
+        ByteBuffer[] replay = Forwarder.replayBytes(new Handshake.Initial(initial, Handshake.decode(initial)),
+                rewritingRemote());
+
+        long written = Forwarder.writeFully(writer, replay);
+
+        ByteBuffer expected = Handshake.encode(765, "backend.local", 25566, Handshake.STATE_LOGIN);
+        assertEquals(expected.remaining(), written);
+        Handshake received = Handshake.decode(readExactly((int) written));
+        assertNotNull(received);
+        assertEquals("backend.local", received.host());
+        assertEquals(25566, received.port());
+    }
+
+    @Test
+    void bytesAfterHandshakeFollowRewrittenHandshake() throws IOException {
+        ByteBuffer handshake = Handshake.encode(765, "play.example.com", 25565, Handshake.STATE_LOGIN);
+        byte[] loginStart = {3, 0x00, 1, 'a'};
+        ByteBuffer initial = ByteBuffer.allocate(handshake.remaining() + loginStart.length);
+        initial.put(handshake).put(loginStart).flip();
+        ByteBuffer[] replay = Forwarder.replayBytes(new Handshake.Initial(initial, Handshake.decode(initial)),
+                rewritingRemote());
+
+        long written = Forwarder.writeFully(writer, replay);
+
+        int rewrittenLength = Handshake.encode(765, "backend.local", 25566, Handshake.STATE_LOGIN).remaining();
+        assertEquals(rewrittenLength + loginStart.length, written);
+        ByteBuffer received = readExactly((int) written);
+        assertEquals("backend.local", Handshake.decode(received).host());
+        received.position(rewrittenLength);
+        byte[] rest = new byte[received.remaining()];
+        received.get(rest);
+        assertEquals(ByteBuffer.wrap(loginStart), ByteBuffer.wrap(rest));
+    }
+
+    @Test
+    void proxyHeaderAndRewrittenHandshakeAreSentWhenNothingFollows() throws IOException {
+        AppConfig.Remote target = rewritingRemote();
+        target.setProxyProtocol(AppConfig.Remote.PROXY_V1);
+        ByteBuffer initial = Handshake.encode(765, "play.example.com", 25565, Handshake.STATE_LOGIN);
+        ByteBuffer header = ProxyHeader.encode(ByteBuffer.allocate(BufferPool.capacity(ProxyHeader.sizeClass(target))),
+                target, new InetSocketAddress("203.0.113.7", 51234), new InetSocketAddress("192.0.2.1", 25565));
+        byte[] headerBytes = new byte[header.remaining()];
+        header.duplicate().get(headerBytes);
+        ByteBuffer[] replay = Forwarder.prepend(header,
+                Forwarder.replayBytes(new Handshake.Initial(initial, Handshake.decode(initial)), target));
+
+        long written = Forwarder.writeFully(writer, replay);
+
+        int rewrittenLength = Handshake.encode(765, "backend.local", 25566, Handshake.STATE_LOGIN).remaining();
+        assertEquals(headerBytes.length + rewrittenLength, written);
+        ByteBuffer received = readExactly((int) written);
+        byte[] receivedHeader = new byte[headerBytes.length];
+        received.get(receivedHeader);
+        assertEquals("PROXY TCP4 203.0.113.7 192.0.2.1 51234 25565\r\n",
+                new String(receivedHeader, StandardCharsets.US_ASCII));
+        Handshake handshake = Handshake.decode(received);
+        assertNotNull(handshake);
+        assertEquals("backend.local", handshake.host());
+    }
+
+    private static AppConfig.Remote rewritingRemote() {
+        AppConfig.Remote remote = new AppConfig.Remote("backend.local", 25566);
+        remote.setRewriteAddress("true");
+        return remote;
+    }
+
+    private ByteBuffer readExactly(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (reader.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+}
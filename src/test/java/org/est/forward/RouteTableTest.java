@@ -0,0 +1,64 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RouteTableTest {
+
+    @Test
+    void reloadKeepsBackendCountersForUnchangedHosts() {
+        RouteTable before = RouteTable.from(group("a.local", "b.local"), Map.of("*.example.com", group("c.local")));
+        Backend a = before.defaultGroup().backends().get(0);
+        a.sessionOpened();
+        a.sessionOpened();
+        Backend c = before.groups().get(1).backends().get(0);
+        c.sessionOpened();
+
+        RouteTable after = RouteTable.from(group("a.local", "b.local", "d.local"),
+                Map.of("*.example.com", group("c.local")), before);
+
+        List<Backend> backends = after.defaultGroup().backends();
+        assertEquals(2, backends.get(0).activeSessions());
+        assertEquals(2, backends.get(0).totalSessions());
+        assertEquals(0, backends.get(2).activeSessions());
+        assertEquals(1, after.groups().get(1).backends().get(0).activeSessions());
+
+        // 旧快照上的会话结束时计入新配置中的同一后端
+        a.sessionClosed(100, 200);
+        assertEquals(1, backends.get(0).activeSessions());
+        assertEquals(100, backends.get(0).upstreamBytes());
+        assertEquals(200, backends.get(0).downstreamBytes());
+    }
+
+    @Test
+    void leastConnectionsSeesSessionsFromBeforeReload() throws Exception {
+        RouteTable before = RouteTable.from(group("a.local", "b.local"), Map.of());
+        before.defaultGroup().backends().get(0).sessionOpened();
+
+        RouteTable after = RouteTable.from(group("a.local", "b.local"), Map.of(), before);
+
+        InetAddress client = InetAddress.getByName("203.0.113.7");
+        for (int i = 0; i < 4; i++) {
+            assertSame(after.defaultGroup().backends().get(1), after.defaultGroup().select(client));
+        }
+    }
+
+    private static AppConfig.Remote group(String... hosts) {
+        AppConfig.Remote group = new AppConfig.Remote(hosts[0], 25565);
+        if (hosts.length > 1) {
+            AppConfig.Remote[] backends = new AppConfig.Remote[hosts.length];
+            for (int i = 0; i < hosts.length; i++) {
+                backends[i] = new AppConfig.Remote(hosts[i], 25565);
+            }
+            group.setBackends(List.of(backends));
+        }
+        return group;
+    }
+}
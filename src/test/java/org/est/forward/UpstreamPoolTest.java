@@ -0,0 +1,37 @@
+package org.est.forward;
+
+import org.est.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamPoolTest {
+
+    @Test
+    void closeCancelsMaintenanceOnSharedScheduler() throws IOException, InterruptedException {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try (ServerSocketChannel server = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            AppConfig.Remote remote = new AppConfig.Remote(InetAddress.getLoopbackAddress().getHostAddress(),
+                    ((InetSocketAddress) server.getLocalAddress()).getPort());
+            remote.setPoolSize(1);
+            UpstreamPool pool = new UpstreamPool(remote, scheduler);
+            pool.start();
+
+            pool.close();
+            // 没有取消的周期任务在一个维护间隔之内会重新回到队列
+            Thread.sleep(1500);
+
+            assertTrue(scheduler.getQueue().stream().allMatch(task -> ((Future<?>) task).isCancelled()));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.est.net;
+
+import org.est.config.AppConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IpWhitelistTest {
+
+    @Test
+    void acceptsAddressLiterals() throws IOException {
+        IpWhitelist whitelist = IpWhitelist.from(List.of(
+                "192.168.0.0/24", "10.1.2.3", " 172.16.0.0/12 ", "fd00::/8", "::1", "::ffff:100.64.0.1"));
+
+        assertEquals(6, whitelist.size());
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("192.168.0.77")));
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("10.1.2.3")));
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("172.31.255.255")));
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("fd12::1")));
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("::1")));
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("100.64.0.1")));
+        assertFalse(whitelist.isAllowed(InetAddress.getByName("192.168.1.1")));
+    }
+
+    @Test
+    void rejectsHostnamesAndTyposWithoutResolving() {
+        IpWhitelist whitelist = IpWhitelist.from(List.of(
+                "localhost", "mc.example.com", "10.0.0", "10.0.0.256", "1.2.3.4.5", "10..0.1", "1.2.3.4/33",
+                "1.2.3.4/x", "1.2.3.4/", "1.2.3.4/8/8", "10/8", "0x7f.0.0.1", "::g", "fe80::1%eth0", "[::1]",
+                ".1:2", "fd00::/129", "abc"));
+
+        assertEquals(0, whitelist.size());
+    }
+
+    @Test
+    void invalidLinesInBlocklistFileAreSkipped(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("blocklist.txt");
+        Files.write(file, List.of(
+                "# 机房地址段",
+                "203.0.113.0/24",
+                "not-an-ip.example",
+                "",
+                "198.51.100.7 # 单个地址",
+                "2001:db8::/32",
+                "300.1.1.1"), StandardCharsets.UTF_8);
+        AppConfig.Security security = new AppConfig.Security();
+        security.setBlocklistFiles(List.of(file.toString()));
+
+        IpWhitelist whitelist = IpWhitelist.from(security);
+
+        assertEquals(3, whitelist.size());
+        assertFalse(whitelist.isAllowed(InetAddress.getByName("203.0.113.9")));
+        assertFalse(whitelist.isAllowed(InetAddress.getByName("198.51.100.7")));
+        assertFalse(whitelist.isAllowed(InetAddress.getByName("2001:db8::1")));
+        assertTrue(whitelist.isAllowed(InetAddress.getByName("198.51.100.8")));
+    }
+}